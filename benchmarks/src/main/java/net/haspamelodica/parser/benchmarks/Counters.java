@@ -0,0 +1,55 @@
+package net.haspamelodica.parser.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counters of the units a benchmark processes. JMH reports them per second next to the operations per second.
+ */
+public class Counters
+{
+	private Counters()
+	{}
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Chars
+	{
+		public long chars;
+
+		@Setup(Level.Iteration)
+		public void reset()
+		{
+			chars = 0;
+		}
+	}
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Tokens
+	{
+		public long tokens;
+
+		@Setup(Level.Iteration)
+		public void reset()
+		{
+			tokens = 0;
+		}
+	}
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Nodes
+	{
+		public long nodes;
+
+		@Setup(Level.Iteration)
+		public void reset()
+		{
+			nodes = 0;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package net.haspamelodica.parser.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.haspamelodica.parser.ast.InnerNode;
+import net.haspamelodica.parser.parser.ParseException;
+
+/**
+ * Measures the tokenizer, the LR parser and the L-attributed evaluator on an {@link ExpressionWorkload}.
+ * Besides operations per second, each benchmark counts the chars, tokens or nodes it processes,
+ * which JMH reports as chars/s, tokens/s or nodes/s.
+ * Run with <code>-prof gc</code> to also get the bytes allocated per operation (gc.alloc.rate.norm).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+// the evaluator recurses once per tree level, and the generated input results in deep trees
+@Fork(value = 1, jvmArgsAppend = "-Xss256m")
+public class ExpressionBenchmark
+{
+	// enough to make the per-invocation setup of UnevaluatedTrees negligible, few enough to keep the trees of the corpus in memory
+	private static final int TREES_PER_INVOCATION = 16;
+
+	@Benchmark
+	public int tokenize(ExpressionWorkload workload, Counters.Chars counters) throws ParseException
+	{
+		counters.chars += workload.input.length();
+		return Workloads.tokenize(workload.tokenizer, workload.input).size();
+	}
+
+	@Benchmark
+	public InnerNode parse(ExpressionWorkload workload, Counters.Tokens counters) throws ParseException
+	{
+		counters.tokens += workload.tokens.size();
+		return workload.example.parser.parse(Workloads.listStream(workload.tokens));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TREES_PER_INVOCATION)
+	public int evaluate(ExpressionWorkload workload, UnevaluatedTrees trees, Counters.Nodes counters)
+	{
+		int result = 0;
+		for(InnerNode tree : trees.trees)
+		{
+			counters.nodes += workload.nodeCount;
+			workload.example.attributeEvaluator.evaluate(tree, workload.rootInheritedValues);
+			result += tree.getValueForAttribute(workload.example.valueAttrib);
+		}
+		return result;
+	}
+
+	/**
+	 * Evaluating stores attribute values in the tree, so each evaluation needs a new tree.
+	 * Parsing them isn't measured, but its allocations are included in the results of <code>-prof gc</code>.
+	 * Trees can't be evaluated twice, so they can't be set up once per iteration. Instead, each invocation evaluates
+	 * a batch of trees, which spreads JMH's overhead of setting up per invocation over the batch.
+	 */
+	@State(Scope.Thread)
+	public static class UnevaluatedTrees
+	{
+		public InnerNode[] trees;
+
+		@Setup(Level.Invocation)
+		public void setUp(ExpressionWorkload workload) throws ParseException
+		{
+			trees = new InnerNode[TREES_PER_INVOCATION];
+			for(int i = 0; i < TREES_PER_INVOCATION; i ++)
+				trees[i] = workload.example.parser.parse(Workloads.listStream(workload.tokens));
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package net.haspamelodica.parser.benchmarks;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import net.haspamelodica.parser.ShortParserExample;
+import net.haspamelodica.parser.ShortParserExample.ExampleParserResult;
+import net.haspamelodica.parser.ShortParserWithTokenizerExample;
+import net.haspamelodica.parser.ShortTokenizerExample;
+import net.haspamelodica.parser.ast.Token;
+import net.haspamelodica.parser.grammar.attributes.AttributeValue;
+import net.haspamelodica.parser.parser.ParseException;
+import net.haspamelodica.parser.tokenizer.CharReader;
+import net.haspamelodica.parser.tokenizer.CharString;
+import net.haspamelodica.parser.tokenizer.Tokenizer;
+
+/**
+ * The expression grammar of {@link ShortParserWithTokenizerExample},
+ * either with its example input or with a large generated input.
+ */
+@State(Scope.Benchmark)
+public class ExpressionWorkload
+{
+	@Param({"example", "corpus"})
+	public String workload;
+
+	public Tokenizer<CharReader>			tokenizer;
+	public ExampleParserResult<CharString>	example;
+	public Set<AttributeValue<?>>			rootInheritedValues;
+
+	public String			input;
+	public List<Token<?>>	tokens;
+	public int				nodeCount;
+
+	@Setup
+	public void setUp() throws ParseException
+	{
+		tokenizer = ShortTokenizerExample.createTokenizer();
+		example = ShortParserExample.createExampleParser(tokenizer.allTerminals(),
+				CharString.class, CharString.class, s -> Integer.parseInt(s.toStringNoEscaping()));
+		Map<CharString, Integer> variableValues = new HashMap<>();
+		variableValues.put(CharString.ofString("somename"), 789);
+		for(int i = 0; i < 10; i ++)
+			variableValues.put(CharString.ofString("x" + i), i);
+		rootInheritedValues = Set.of(new AttributeValue<>(example.varValuesAttrib, variableValues));
+
+		input = switch(workload)
+		{
+			case "example" -> "somename * 123 + 456";
+			case "corpus" -> Workloads.generateExpressionCorpus(20_000, new Random(0));
+			default -> throw new IllegalArgumentException("Unknown workload: " + workload);
+		};
+		tokens = Workloads.tokenize(tokenizer, input);
+		nodeCount = Workloads.countNodes(example.parser.parse(Workloads.listStream(tokens)));
+	}
+}
@@ -0,0 +1,64 @@
+package net.haspamelodica.parser.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.haspamelodica.parser.grammar.ContextFreeGrammar;
+import net.haspamelodica.parser.grammar.Terminal;
+import net.haspamelodica.parser.grammar.parser.GrammarParser;
+import net.haspamelodica.parser.parser.ParseException;
+import net.haspamelodica.parser.tokenizer.CharReader;
+
+/**
+ * Measures {@link GrammarParser} on generated grammars, reported as chars/s.
+ * The tokenizer, parser and evaluator of GrammarParser aren't accessible, so grammars are only measured as a whole.
+ * Run with <code>-prof gc</code> to also get the bytes allocated per operation (gc.alloc.rate.norm).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GrammarParserBenchmark
+{
+	@Param({"grammar", "grammar-corpus"})
+	public String workload;
+
+	private String				input;
+	private Set<Terminal<?>>	terminals;
+
+	@Setup
+	public void setUp()
+	{
+		Map<String, Terminal<?>> terminalsByName = new HashMap<>();
+		input = switch(workload)
+		{
+			case "grammar" -> Workloads.generateGrammar(3, terminalsByName);
+			case "grammar-corpus" -> Workloads.generateGrammar(300, terminalsByName);
+			default -> throw new IllegalArgumentException("Unknown workload: " + workload);
+		};
+		terminals = Set.copyOf(terminalsByName.values());
+	}
+
+	@Benchmark
+	public ContextFreeGrammar parseGrammar(Counters.Chars counters) throws ParseException
+	{
+		counters.chars += input.length();
+		return GrammarParser.parseGrammar(CharReader.readString(input), terminals);
+	}
+}
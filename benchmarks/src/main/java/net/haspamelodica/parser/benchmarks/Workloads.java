@@ -0,0 +1,109 @@
+package net.haspamelodica.parser.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.haspamelodica.parser.ShortParserExample;
+import net.haspamelodica.parser.ast.ASTNode;
+import net.haspamelodica.parser.ast.ASTNode.ASTNodeType;
+import net.haspamelodica.parser.ast.InnerNode;
+import net.haspamelodica.parser.ast.Token;
+import net.haspamelodica.parser.grammar.Terminal;
+import net.haspamelodica.parser.parser.ParseException;
+import net.haspamelodica.parser.tokenizer.CharReader;
+import net.haspamelodica.parser.tokenizer.TokenStream;
+import net.haspamelodica.parser.tokenizer.Tokenizer;
+
+/**
+ * Generates the inputs of the benchmarks.
+ */
+public class Workloads
+{
+	private Workloads()
+	{}
+
+	public static List<Token<?>> tokenize(Tokenizer<CharReader> tokenizer, String input) throws ParseException
+	{
+		List<Token<?>> tokens = new ArrayList<>();
+		TokenStream tokenStream = tokenizer.tokenize(CharReader.readString(input));
+		for(Token<?> token = tokenStream.nextToken(); token != null; token = tokenStream.nextToken())
+			tokens.add(token);
+		return tokens;
+	}
+
+	public static TokenStream listStream(List<Token<?>> tokens)
+	{
+		Iterator<Token<?>> iterator = tokens.iterator();
+		return () -> iterator.hasNext() ? iterator.next() : null;
+	}
+
+	public static int countNodes(ASTNode<?> node)
+	{
+		if(node.getType() != ASTNodeType.INNER_NODE)
+			return 1;
+		int count = 1;
+		for(ASTNode<?> child : ((InnerNode) node).getChildren())
+			count += countNodes(child);
+		return count;
+	}
+
+	/**
+	 * Generates an expression with the given number of operands for the grammar of {@link ShortParserExample},
+	 * using the variables <code>x0</code> to <code>x9</code>.
+	 */
+	public static String generateExpressionCorpus(int operands, Random random)
+	{
+		StringBuilder result = new StringBuilder();
+		int openParentheses = 0;
+		for(int i = 0; i < operands; i ++)
+		{
+			if(i > 0)
+				result.append(random.nextInt(3) == 0 ? " * " : " + ");
+			while(random.nextInt(8) == 0)
+			{
+				result.append('(');
+				openParentheses ++;
+			}
+			if(random.nextBoolean())
+				result.append('x').append(random.nextInt(10));
+			else
+				result.append(random.nextInt(1000));
+			while(openParentheses > 0 && random.nextInt(4) == 0)
+			{
+				result.append(')');
+				openParentheses --;
+			}
+		}
+		result.append(")".repeat(openParentheses));
+		return result.toString();
+	}
+
+	/**
+	 * Generates a grammar for statements and expressions with the given number of precedence levels,
+	 * and adds all terminals it uses to the given map if they aren't in it already.
+	 */
+	public static String generateGrammar(int levels, Map<String, Terminal<?>> terminals)
+	{
+		StringBuilder result = new StringBuilder();
+		result.append("Prog -> | Prog Stmt;\n");
+		result.append("Stmt -> 'name' '=' E0 ';' | 'if' '(' E0 ')' Block | 'if' '(' E0 ')' Block 'else' Block | 'while' '(' E0 ')' Block | Block;\n");
+		result.append("Block -> '{' Prog '}';\n");
+		for(String terminal : new String[] {"name", "int", "=", ";", "if", "else", "while", "(", ")", "{", "}"})
+			terminals.computeIfAbsent(terminal, Terminal::new);
+		for(int i = 0; i < levels; i ++)
+		{
+			result.append("E").append(i).append(" -> E").append(i + 1);
+			for(String operator : new String[] {"op" + i + "a", "op" + i + "b"})
+			{
+				result.append(" | E").append(i).append(" '").append(operator).append("' E").append(i + 1);
+				terminals.computeIfAbsent(operator, Terminal::new);
+			}
+			result.append(";\n");
+		}
+		result.append("E").append(levels).append(" -> '(' E0 ')' | 'name' | 'int';\n");
+		return result.toString();
+	}
+}
@@ -1,8 +1,11 @@
 package net.haspamelodica.parser.ast;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 import net.haspamelodica.parser.grammar.Nonterminal;
 import net.haspamelodica.parser.grammar.Production;
@@ -11,17 +14,18 @@ import net.haspamelodica.parser.grammar.attributes.AttributeValue;
 
 public class InnerNode implements ASTNode<Nonterminal>
 {
-	private final Production		production;
-	private final List<ASTNode<?>>	children;
+	private final Production	production;
+	private final ASTNode<?>[]	children;
 
-	private final Map<Attribute<?>, AttributeValue<?>> attributeValues;
+	private List<ASTNode<?>>					childrenView;
+	private Map<Attribute<?>, AttributeValue<?>>	attributeValues;
 
 	public InnerNode(Production production, List<ASTNode<?>> children)
 	{
 		this.production = production;
-		this.children = List.copyOf(children);
-
-		this.attributeValues = new HashMap<>();
+		this.children = children.toArray(new ASTNode<?>[children.size()]);
+		for(ASTNode<?> child : this.children)
+			Objects.requireNonNull(child);
 	}
 
 	public Production getProduction()
@@ -30,7 +34,9 @@ public class InnerNode implements ASTNode<Nonterminal>
 	}
 	public List<ASTNode<?>> getChildren()
 	{
-		return children;
+		if(childrenView == null)
+			childrenView = Collections.unmodifiableList(Arrays.asList(children));
+		return childrenView;
 	}
 
 	public <V> void setAttributeValue(Attribute<V> attribute, V value)
@@ -41,14 +47,16 @@ public class InnerNode implements ASTNode<Nonterminal>
 	public <V> void setAttributeValue(AttributeValue<V> value)
 	{
 		Attribute<V> attribute = value.getAttribute();
-		if(attributeValues.containsKey(attribute))
+		if(attributeValues == null)
+			attributeValues = new HashMap<>();
+		else if(attributeValues.containsKey(attribute))
 			throw new IllegalStateException("This node already has a value for " + attribute);
 		attributeValues.put(attribute, value);
 	}
 	@SuppressWarnings("unchecked")
 	public <V> AttributeValue<V> getAttributeValue(Attribute<V> attribute)
 	{
-		if(!attributeValues.containsKey(attribute))
+		if(attributeValues == null || !attributeValues.containsKey(attribute))
 			throw new IllegalStateException("This node has no value for " + attribute);
 		return (AttributeValue<V>) attributeValues.get(attribute);
 	}
@@ -93,7 +101,7 @@ public class InnerNode implements ASTNode<Nonterminal>
 	{
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + ((children == null) ? 0 : children.hashCode());
+		result = prime * result + Arrays.hashCode(children);
 		result = prime * result + ((production == null) ? 0 : production.hashCode());
 		return result;
 	}
@@ -107,11 +115,7 @@ public class InnerNode implements ASTNode<Nonterminal>
 		if(getClass() != obj.getClass())
 			return false;
 		InnerNode other = (InnerNode) obj;
-		if(children == null)
-		{
-			if(other.children != null)
-				return false;
-		} else if(!children.equals(other.children))
+		if(!Arrays.equals(children, other.children))
 			return false;
 		if(production == null)
 		{
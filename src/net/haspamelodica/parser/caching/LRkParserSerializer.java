@@ -37,7 +37,7 @@ import net.haspamelodica.parser.parser.lrk.action.ShiftAction;
 
 public class LRkParserSerializer
 {
-	private static final int PARSER_VERSION_MAGIC = 0xd1d7df10;
+	private static final int PARSER_VERSION_MAGIC = 0xd1d7df11;
 
 	public static <STATE> void serialize(GenericLRkParser<STATE> parser,
 			IOBiConsumer<Terminal<?>, DataOutputStream> serializeTerminal,
@@ -126,6 +126,25 @@ public class LRkParserSerializer
 				throw new IllegalArgumentException("Map isn't sane");
 		}
 
+		// productions; actions refer to them by ID because each production is reduced for many states and lookaheads
+		Map<Production, Integer> idsByProduction = new HashMap<>();
+		List<Production> productionsById = new ArrayList<>();
+		for(STATE state : statesById)
+			for(Action action : parser.getActionTable().getOrDefault(state, Map.of()).values())
+			{
+				Production production = switch(action.getType())
+				{
+					case SHIFT, ERROR -> null;
+					case FINISH -> ((FinishAction) action).getProduction();
+					case REDUCE -> ((ReduceAction) action).getProduction();
+				};
+				if(production != null && idsByProduction.putIfAbsent(production, productionsById.size()) == null)
+					productionsById.add(production);
+			}
+		out.writeInt(productionsById.size());
+		for(Production production : productionsById)
+			serializeProduction(production, idsBySymbol, idsByNonterminal, out);
+
 		// action table
 		for(STATE state : statesById)
 		{
@@ -146,10 +165,10 @@ public class LRkParserSerializer
 					case FINISH ->
 					{
 						FinishAction entryCasted = (FinishAction) entry.getValue();
-						serializeProduction(entryCasted.getProduction(), idsBySymbol, idsByNonterminal, out);
+						out.writeInt(idsByProduction.get(entryCasted.getProduction()));
 						out.writeBoolean(entryCasted.dontIncludeStartSymbol());
 					}
-					case REDUCE -> serializeProduction(((ReduceAction) entry.getValue()).getProduction(), idsBySymbol, idsByNonterminal, out);
+					case REDUCE -> out.writeInt(idsByProduction.get(((ReduceAction) entry.getValue()).getProduction()));
 				}
 				i ++;
 			}
@@ -207,6 +226,16 @@ public class LRkParserSerializer
 			gotoTable.put(gotoEntryI, Map.copyOf(gotoEntry));
 		}
 
+		int productionCount = in.readInt();
+		List<Production> productionsById = new ArrayList<>(productionCount);
+		List<ReduceAction> reduceActionsById = new ArrayList<>(productionCount);
+		for(int i = 0; i < productionCount; i ++)
+		{
+			Production production = deserializeProduction(symbolsById, nonterminalsById, in);
+			productionsById.add(production);
+			reduceActionsById.add(new ReduceAction(production));
+		}
+
 		Map<Integer, Map<Word, Action>> actionTable = new HashMap<>();
 		for(int actionEntryI = 0; actionEntryI < stateCount; actionEntryI ++)
 		{
@@ -218,10 +247,10 @@ public class LRkParserSerializer
 				actionEntry.put(word, switch(ActionType.values()[in.readInt()])
 				{
 					case SHIFT -> ShiftAction.INSTANCE;
-					case REDUCE -> new ReduceAction(deserializeProduction(symbolsById, nonterminalsById, in));
+					case REDUCE -> reduceActionsById.get(in.readInt());
 					case FINISH ->
 					{
-						Production production = deserializeProduction(symbolsById, nonterminalsById, in);
+						Production production = productionsById.get(in.readInt());
 						yield new FinishAction(production, in.readBoolean());
 					}
 					case ERROR -> ErrorAction.INSTANCE;
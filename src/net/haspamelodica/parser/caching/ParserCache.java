@@ -0,0 +1,259 @@
+package net.haspamelodica.parser.caching;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+import net.haspamelodica.parser.grammar.ContextFreeGrammar;
+import net.haspamelodica.parser.grammar.Nonterminal;
+import net.haspamelodica.parser.grammar.Production;
+import net.haspamelodica.parser.grammar.Symbol;
+import net.haspamelodica.parser.grammar.Terminal;
+import net.haspamelodica.parser.parser.lrk.AutomatonType;
+import net.haspamelodica.parser.parser.lrk.GenericLRkParser;
+import net.haspamelodica.parser.parser.lrk.LRkParserGenerator;
+
+/**
+ * Caches LR parsers generated by {@link LRkParserGenerator#generate(ContextFreeGrammar, int, AutomatonType)} in a directory,
+ * so that they don't have to be regenerated every time a program starts.
+ * <p>
+ * Entries are addressed by a digest of the normalized grammar, the lookahead size, the automaton type and {@link LRkParserGenerator#GENERATOR_VERSION}.
+ * Each entry stores a digest of the serialized parser, which is verified on load.
+ * Entries which are missing, truncated, corrupted or written by an incompatible version are regenerated and overwritten.
+ * New entries are written to a temporary file first and then moved to their final name,
+ * so that other processes using the same directory never see partially written entries.
+ * <p>
+ * Terminals and nonterminals are stored by name, so names of terminals and of nonterminals have to be unique in a grammar.
+ * Loaded parsers use the terminal and nonterminal objects of the given grammar.
+ */
+public class ParserCache
+{
+	private static final int	CACHE_ENTRY_VERSION_MAGIC	= 0x7a3c51e2;
+	private static final String	DIGEST_ALGORITHM			= "SHA-256";
+	private static final String	FILE_EXTENSION				= ".lrk";
+
+	private static final int	SYMBOL_TERMINAL					= 0;
+	private static final int	SYMBOL_NONTERMINAL				= 1;
+	private static final int	SYMBOL_GENERATED_START_SYMBOL	= 2;
+
+	private final Path cacheDirectory;
+
+	public ParserCache(Path cacheDirectory)
+	{
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	public GenericLRkParser<?> getOrGenerate(ContextFreeGrammar grammar, int lookaheadSize) throws IOException
+	{
+		return getOrGenerate(grammar, lookaheadSize, AutomatonType.CANONICAL_LR);
+	}
+	/**
+	 * Returns the cached parser for the given grammar if there is a valid one,
+	 * or otherwise generates the parser and stores it in the cache.
+	 * Throws {@link IllegalArgumentException} like {@link LRkParserGenerator#generate(ContextFreeGrammar, int, AutomatonType)},
+	 * and {@link IOException} if a new entry can't be written.
+	 */
+	public GenericLRkParser<?> getOrGenerate(ContextFreeGrammar grammar, int lookaheadSize, AutomatonType automatonType) throws IOException
+	{
+		Map<String, Terminal<?>> terminalsByName = new HashMap<>();
+		for(Terminal<?> terminal : grammar.getAllTerminals())
+			if(terminalsByName.put(terminal.getName(), terminal) != null)
+				throw new IllegalArgumentException("Grammar contains multiple terminals named " + terminal.getName());
+		Map<String, Nonterminal> nonterminalsByName = new HashMap<>();
+		for(Nonterminal nonterminal : grammar.getAllNonterminals())
+			if(nonterminalsByName.put(nonterminal.getName(), nonterminal) != null)
+				throw new IllegalArgumentException("Grammar contains multiple nonterminals named " + nonterminal.getName());
+
+		byte[] key = calculateKey(grammar, lookaheadSize, automatonType);
+		Path entry = cacheDirectory.resolve(HexFormat.of().formatHex(key) + FILE_EXTENSION);
+
+		GenericLRkParser<?> cachedParser = load(entry, key, terminalsByName, nonterminalsByName);
+		if(cachedParser != null)
+			return cachedParser;
+
+		GenericLRkParser<?> parser = LRkParserGenerator.generate(grammar, lookaheadSize, automatonType);
+		store(entry, key, parser);
+		return parser;
+	}
+
+	/**
+	 * Returns <code>null</code> if there is no valid entry.
+	 */
+	private static GenericLRkParser<?> load(Path entry, byte[] key, Map<String, Terminal<?>> terminalsByName, Map<String, Nonterminal> nonterminalsByName)
+	{
+		byte[] payload;
+		try(InputStream fileIn = Files.newInputStream(entry))
+		{
+			long maxPayloadLength = Files.size(entry);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(fileIn));
+			if(in.readInt() != CACHE_ENTRY_VERSION_MAGIC || !Arrays.equals(in.readNBytes(key.length), key))
+				return null;
+			int payloadLength = in.readInt();
+			if(payloadLength < 0 || payloadLength > maxPayloadLength)
+				return null;
+			DigestingInputStream payloadIn = new DigestingInputStream(in, newDigest());
+			payload = payloadIn.readNBytes(payloadLength);
+			byte[] expectedDigest = payloadIn.digest();
+			if(payload.length != payloadLength || !MessageDigest.isEqual(in.readNBytes(expectedDigest.length), expectedDigest) || in.read() >= 0)
+				return null;
+		} catch(IOException e)
+		{
+			// missing and unreadable entries are treated like corrupted ones: the parser is regenerated,
+			// and writing the new entry reports persistent problems
+			return null;
+		}
+
+		// the payload is known to be what was written, so failing to deserialize it means it was written by an incompatible version
+		try
+		{
+			return LRkParserSerializer.deserialize(new ByteArrayInputStream(payload),
+					in -> lookupSymbol(terminalsByName, in.readUTF()),
+					in -> lookupSymbol(nonterminalsByName, in.readUTF()));
+		} catch(IOException | VersionMagicMismatchException e)
+		{
+			return null;
+		}
+	}
+
+	private static <S extends Symbol> S lookupSymbol(Map<String, S> symbolsByName, String name) throws IOException
+	{
+		S symbol = symbolsByName.get(name);
+		if(symbol == null)
+			throw new IOException("Unknown symbol: " + name);
+		return symbol;
+	}
+
+	private void store(Path entry, byte[] key, GenericLRkParser<?> parser) throws IOException
+	{
+		ByteArrayOutputStream payloadOut = new ByteArrayOutputStream();
+		LRkParserSerializer.serialize(parser,
+				(terminal, out) -> out.writeUTF(terminal.getName()),
+				(nonterminal, out) -> out.writeUTF(nonterminal.getName()),
+				payloadOut);
+		byte[] payload = payloadOut.toByteArray();
+
+		Files.createDirectories(cacheDirectory);
+		Path tempFile = Files.createTempFile(cacheDirectory, entry.getFileName().toString(), ".tmp");
+		try
+		{
+			try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile))))
+			{
+				out.writeInt(CACHE_ENTRY_VERSION_MAGIC);
+				out.write(key);
+				out.writeInt(payload.length);
+				out.write(payload);
+				out.write(newDigest().digest(payload));
+			}
+			try
+			{
+				Files.move(tempFile, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch(AtomicMoveNotSupportedException e)
+			{
+				Files.move(tempFile, entry, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally
+		{
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	/**
+	 * Digests the normalized grammar independently of the order of its productions.
+	 * Each production is encoded unambiguously on its own; the encodings are sorted before digesting them.
+	 */
+	private static byte[] calculateKey(ContextFreeGrammar grammar, int lookaheadSize, AutomatonType automatonType)
+	{
+		ContextFreeGrammar normalizedGrammar = grammar.normalize();
+		Nonterminal generatedStartSymbol = grammar.isNormalized() ? null : normalizedGrammar.getStartSymbol();
+
+		List<byte[]> encodedProductions = new ArrayList<>();
+		for(Production production : normalizedGrammar.getProductions())
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			try
+			{
+				writeSymbol(production.getLhs(), generatedStartSymbol, out);
+				List<Symbol> rhs = production.getRhs().getSymbols();
+				out.writeInt(rhs.size());
+				for(Symbol symbol : rhs)
+					writeSymbol(symbol, generatedStartSymbol, out);
+			} catch(IOException e)
+			{
+				// can't happen for a ByteArrayOutputStream
+				throw new IllegalStateException(e);
+			}
+			encodedProductions.add(bytes.toByteArray());
+		}
+		encodedProductions.sort(Arrays::compare);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try
+		{
+			out.writeInt(LRkParserGenerator.GENERATOR_VERSION);
+			out.writeInt(lookaheadSize);
+			out.writeUTF(automatonType.name());
+			writeSymbol(normalizedGrammar.getStartSymbol(), generatedStartSymbol, out);
+			out.writeInt(encodedProductions.size());
+			for(byte[] encodedProduction : encodedProductions)
+			{
+				out.writeInt(encodedProduction.length);
+				out.write(encodedProduction);
+			}
+		} catch(IOException e)
+		{
+			throw new IllegalStateException(e);
+		}
+		return newDigest().digest(bytes.toByteArray());
+	}
+
+	private static void writeSymbol(Symbol symbol, Nonterminal generatedStartSymbol, DataOutputStream out) throws IOException
+	{
+		if(symbol == generatedStartSymbol)
+			out.writeByte(SYMBOL_GENERATED_START_SYMBOL);
+		else
+			switch(symbol.getType())
+			{
+				case TERMINAL ->
+				{
+					out.writeByte(SYMBOL_TERMINAL);
+					out.writeUTF(((Terminal<?>) symbol).getName());
+				}
+				case NONTERMINAL ->
+				{
+					out.writeByte(SYMBOL_NONTERMINAL);
+					out.writeUTF(((Nonterminal) symbol).getName());
+				}
+			}
+	}
+
+	private static MessageDigest newDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch(NoSuchAlgorithmException e)
+		{
+			// every Java platform has to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+}
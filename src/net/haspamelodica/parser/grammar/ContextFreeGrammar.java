@@ -83,7 +83,7 @@ public class ContextFreeGrammar
 				.map(Production::getRhs)
 				.map(RightHandSide::getSymbols)
 				.flatMap(List::stream)
-				.anyMatch(startSymbol::equals);
+				.noneMatch(startSymbol::equals);
 	}
 
 	public Nonterminal getStartSymbol()
@@ -1,5 +1,6 @@
 package net.haspamelodica.parser.grammar.attributes;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -17,12 +18,18 @@ public abstract class AttributeEquation<V>
 	private final Production							rootProduction;
 	private final AttributeValueReference<V>			returnValue;
 	private final List<SymbolValueReference<?, ?, ?>>	parameters;
+	private final boolean								isHandOver;
 
 	private AttributeEquation(Production rootProduction, AttributeValueReference<V> returnValue, List<SymbolValueReference<?, ?, ?>> parameters)
+	{
+		this(rootProduction, returnValue, parameters, false);
+	}
+	private AttributeEquation(Production rootProduction, AttributeValueReference<V> returnValue, List<SymbolValueReference<?, ?, ?>> parameters, boolean isHandOver)
 	{
 		this.rootProduction = rootProduction;
 		this.returnValue = returnValue;
 		this.parameters = parameters;
+		this.isHandOver = isHandOver;
 	}
 
 	public Production getRootProduction()
@@ -37,6 +44,13 @@ public abstract class AttributeEquation<V>
 	{
 		return returnValue;
 	}
+	/**
+	 * Returns whether this equation copies the value of its only parameter, which is an attribute value, unchanged.
+	 */
+	public boolean isHandOver()
+	{
+		return isHandOver;
+	}
 
 	public void evaluateAndSaveResult(InnerNode rootNode)
 	{
@@ -44,6 +58,11 @@ public abstract class AttributeEquation<V>
 	}
 
 	public abstract V evaluateDontSaveResult(InnerNode rootNode);
+	/**
+	 * Evaluates this equation for the given parameter values, which are in the order of {@link #getParameters()}.
+	 * The array may be longer than the number of parameters; it is neither kept nor modified.
+	 */
+	public abstract V evaluate(Object[] arguments);
 
 	@Override
 	public String toString()
@@ -61,6 +80,11 @@ public abstract class AttributeEquation<V>
 			{
 				return function.get();
 			}
+			@Override
+			public V evaluate(Object[] arguments)
+			{
+				return function.get();
+			}
 		};
 	}
 	public static <V> AttributeEquation<V> buildOnlyAttribs(Production rootProduction, Supplier<V> function,
@@ -79,6 +103,12 @@ public abstract class AttributeEquation<V>
 			{
 				return function.apply(param1.getValue(rootNode));
 			}
+			@Override
+			@SuppressWarnings("unchecked")
+			public V evaluate(Object[] arguments)
+			{
+				return function.apply((PV1) arguments[0]);
+			}
 		};
 	}
 	public static <PV1, V> AttributeEquation<V> buildOnlyAttribs(Production rootProduction, Function<PV1, V> function,
@@ -91,9 +121,26 @@ public abstract class AttributeEquation<V>
 	}
 	public static <V> AttributeEquation<V> buildHandOver(Production rootProduction, int targetPosition, Attribute<V> targetAttribute, int sourcePosition, Attribute<V> sourceAttribute)
 	{
-		return buildOnlyAttribs(rootProduction, Function.identity(),
-				targetPosition, targetAttribute,
-				sourcePosition, sourceAttribute);
+		return buildHandOver(rootProduction,
+				new AttributeValueReference<>(rootProduction, targetPosition, targetAttribute),
+				new AttributeValueReference<>(rootProduction, sourcePosition, sourceAttribute));
+	}
+	public static <V> AttributeEquation<V> buildHandOver(Production rootProduction, AttributeValueReference<V> returnValue, AttributeValueReference<V> param)
+	{
+		return new AttributeEquation<V>(rootProduction, returnValue, List.of(param), true)
+		{
+			@Override
+			public V evaluateDontSaveResult(InnerNode rootNode)
+			{
+				return param.getValue(rootNode);
+			}
+			@Override
+			@SuppressWarnings("unchecked")
+			public V evaluate(Object[] arguments)
+			{
+				return (V) arguments[0];
+			}
+		};
 	}
 	public static <V> AttributeEquation<V> buildHandOver(Production rootProduction, Attribute<V> attribute, int targetPosition, int sourcePosition)
 	{
@@ -110,6 +157,12 @@ public abstract class AttributeEquation<V>
 			{
 				return function.apply(param1.getValue(rootNode), param2.getValue(rootNode));
 			}
+			@Override
+			@SuppressWarnings("unchecked")
+			public V evaluate(Object[] arguments)
+			{
+				return function.apply((PV1) arguments[0], (PV2) arguments[1]);
+			}
 		};
 	}
 	public static <PV1, PV2, V> AttributeEquation<V> buildOnlyAttribs(Production rootProduction, BiFunction<PV1, PV2, V> function,
@@ -133,6 +186,12 @@ public abstract class AttributeEquation<V>
 			{
 				return function.apply(param1.getValue(rootNode), param2.getValue(rootNode), param3.getValue(rootNode));
 			}
+			@Override
+			@SuppressWarnings("unchecked")
+			public V evaluate(Object[] arguments)
+			{
+				return function.apply((PV1) arguments[0], (PV2) arguments[1], (PV3) arguments[2]);
+			}
 		};
 	}
 	public static <PV1, PV2, PV3, V> AttributeEquation<V> buildOnlyAttribs(Production rootProduction, TriFunction<PV1, PV2, PV3, V> function,
@@ -161,6 +220,12 @@ public abstract class AttributeEquation<V>
 			{
 				return function.apply(param1.getValue(rootNode), param2.getValue(rootNode), param3.getValue(rootNode), param4.getValue(rootNode));
 			}
+			@Override
+			@SuppressWarnings("unchecked")
+			public V evaluate(Object[] arguments)
+			{
+				return function.apply((PV1) arguments[0], (PV2) arguments[1], (PV3) arguments[2], (PV4) arguments[3]);
+			}
 		};
 	}
 	public static <PV1, PV2, PV3, PV4, V> AttributeEquation<V> buildOnlyAttribs(Production rootProduction, QuadFunction<PV1, PV2, PV3, PV4, V> function,
@@ -192,6 +257,12 @@ public abstract class AttributeEquation<V>
 			{
 				return function.apply(param1.getValue(rootNode), param2.getValue(rootNode), param3.getValue(rootNode), param4.getValue(rootNode), param5.getValue(rootNode));
 			}
+			@Override
+			@SuppressWarnings("unchecked")
+			public V evaluate(Object[] arguments)
+			{
+				return function.apply((PV1) arguments[0], (PV2) arguments[1], (PV3) arguments[2], (PV4) arguments[3], (PV5) arguments[4]);
+			}
 		};
 	}
 	public static <PV1, PV2, PV3, PV4, PV5, V> AttributeEquation<V> buildOnlyAttribs(Production rootProduction, QuinFunction<PV1, PV2, PV3, PV4, PV5, V> function,
@@ -225,6 +296,12 @@ public abstract class AttributeEquation<V>
 
 				return function.apply(arguments);
 			}
+			@Override
+			public V evaluate(Object[] arguments)
+			{
+				// the function may keep its argument array
+				return function.apply(Arrays.copyOf(arguments, params.length));
+			}
 		};
 	}
 }
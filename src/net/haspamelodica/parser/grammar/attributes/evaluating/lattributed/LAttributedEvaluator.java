@@ -221,6 +221,38 @@ public class LAttributedEvaluator
 		}
 	}
 
+	public AttributeSystem getAttributeSystem()
+	{
+		return attributeSystem;
+	}
+	public Set<Attribute<?>> getInheritedAttributes()
+	{
+		return inheritedAttributes;
+	}
+	public Map<Nonterminal, Set<Attribute<?>>> getInheritedAttributesPerNonterminal()
+	{
+		return inheritedAttributesPerNonterminal;
+	}
+	/**
+	 * For each production, the equations for inherited attributes of each child.
+	 */
+	public Map<Production, List<Set<AttributeEquation<?>>>> getInheritedAttributeEquations()
+	{
+		return inheritedAttributeEquations;
+	}
+	public Set<Attribute<?>> getSynthesizedAttributes()
+	{
+		return synthesizedAttributes;
+	}
+	public Map<Nonterminal, Set<Attribute<?>>> getSynthesizedAttributesPerNonterminal()
+	{
+		return synthesizedAttributesPerNonterminal;
+	}
+	public Map<Production, Set<AttributeEquation<?>>> getSynthesizedAttributeEquations()
+	{
+		return synthesizedAttributeEquations;
+	}
+
 	public void evaluate(InnerNode root, Set<AttributeValue<?>> rootInheritedValues)
 	{
 		checkRootInheritedValues(root.getSymbol(), rootInheritedValues);
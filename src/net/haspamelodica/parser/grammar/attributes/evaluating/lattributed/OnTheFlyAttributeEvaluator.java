@@ -0,0 +1,459 @@
+package net.haspamelodica.parser.grammar.attributes.evaluating.lattributed;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import net.haspamelodica.parser.ast.InnerNode;
+import net.haspamelodica.parser.ast.Token;
+import net.haspamelodica.parser.grammar.ContextFreeGrammar;
+import net.haspamelodica.parser.grammar.Nonterminal;
+import net.haspamelodica.parser.grammar.Production;
+import net.haspamelodica.parser.grammar.Symbol;
+import net.haspamelodica.parser.grammar.attributes.Attribute;
+import net.haspamelodica.parser.grammar.attributes.AttributeEquation;
+import net.haspamelodica.parser.grammar.attributes.AttributeSystem;
+import net.haspamelodica.parser.grammar.attributes.AttributeValue;
+import net.haspamelodica.parser.grammar.attributes.AttributeValueReference;
+import net.haspamelodica.parser.grammar.attributes.SymbolValueReference;
+import net.haspamelodica.parser.parser.ListenerParser;
+import net.haspamelodica.parser.parser.ParseException;
+import net.haspamelodica.parser.parser.ReductionListener;
+import net.haspamelodica.parser.tokenizer.TokenStream;
+
+/**
+ * Evaluates attributes while parsing, at the time each production is reduced,
+ * instead of in a second pass over the finished tree.
+ * No tree is built: the value of a nonterminal on the parser's stack is an array of its attribute values,
+ * and the value of a terminal is its token. Equations are evaluated directly against these values.
+ * <p>
+ * Because reductions happen bottom-up, inherited attributes have to be known before the subtree inheriting them is parsed.
+ * So, this only supports L-attributed systems where each inherited attribute is either
+ * <ul>
+ * <li>global: every equation for it is a hand-over of the same attribute from the root of its production,
+ * so it has the value supplied for the root everywhere, or</li>
+ * <li>evaluated at markers: every equation for it is for a marker or for the child directly after a marker.
+ * A marker is a nonterminal which occurs exactly once in the grammar and whose only production is empty.
+ * When the marker is reduced, its position is known, and the values of its left siblings are the topmost values on the parser's stack.
+ * The inherited attributes of the child after a marker are kept with the marker,
+ * which is directly below the right hand side whenever a production of that child is reduced.</li>
+ * </ul>
+ */
+public class OnTheFlyAttributeEvaluator
+{
+	private static final Object[]	NO_VALUES		= new Object[0];
+	// parameter position of global attributes; their slot is an index into the global values
+	private static final int		GLOBAL			= -2;
+	// parameter slot of terminal values
+	private static final int		TERMINAL_VALUE	= -1;
+
+	private static final CompiledEquation[] NO_EQUATIONS = new CompiledEquation[0];
+
+	private final LAttributedEvaluator evaluator;
+
+	private final Nonterminal							startSymbol;
+	private final Map<Attribute<?>, Integer>			globalAttributeIndices;
+	// only contains nonterminals with inherited attributes which aren't global
+	private final Map<Nonterminal, Set<Attribute<?>>>	markerAttributesPerNonterminal;
+	// only contains markers at which inherited attributes are evaluated
+	private final Map<Nonterminal, MarkerOccurrence>	markerOccurrences;
+	private final Map<Nonterminal, Layout>				layouts;
+	private final Map<Production, CompiledEquation[]>	synthesizedEquations;
+	private final int									maxParameterCount;
+
+	public OnTheFlyAttributeEvaluator(AttributeSystem attributeSystem)
+	{
+		this.evaluator = new LAttributedEvaluator(attributeSystem);
+		ContextFreeGrammar grammar = attributeSystem.getGrammar();
+		this.startSymbol = grammar.getStartSymbol();
+		this.globalAttributeIndices = indexAttributes(findGlobalAttributes());
+		this.markerAttributesPerNonterminal = findMarkerAttributesPerNonterminal();
+		checkRootParameters();
+		Map<Nonterminal, MarkerOccurrence> markerOccurrences = findMarkerOccurrences(grammar);
+		this.layouts = calculateLayouts(grammar, markerOccurrences);
+		this.markerOccurrences = compileMarkerEquations(markerOccurrences);
+		this.synthesizedEquations = compileSynthesizedEquations();
+		this.maxParameterCount = attributeSystem.getAttributeEquations().values().stream()
+				.flatMap(Set::stream).mapToInt(attrEq -> attrEq.getParameters().size()).max().orElse(0);
+	}
+
+	private Set<Attribute<?>> findGlobalAttributes()
+	{
+		Set<Attribute<?>> result = new HashSet<>(evaluator.getInheritedAttributes());
+		for(List<Set<AttributeEquation<?>>> attrEqsPerChild : evaluator.getInheritedAttributeEquations().values())
+			for(Set<AttributeEquation<?>> attrEqs : attrEqsPerChild)
+				for(AttributeEquation<?> attrEq : attrEqs)
+				{
+					Attribute<?> attribute = attrEq.getReturnValue().getAttribute();
+					SymbolValueReference<?, ?, ?> param = attrEq.isHandOver() ? attrEq.getParameters().get(0) : null;
+					if(param == null || !param.isRoot() || ((AttributeValueReference<?>) param).getAttribute() != attribute)
+						result.remove(attribute);
+				}
+		return result;
+	}
+
+	private static Map<Attribute<?>, Integer> indexAttributes(Set<Attribute<?>> attributes)
+	{
+		Map<Attribute<?>, Integer> result = new HashMap<>();
+		for(Attribute<?> attribute : attributes)
+			result.put(attribute, result.size());
+		return Map.copyOf(result);
+	}
+
+	private Map<Nonterminal, Set<Attribute<?>>> findMarkerAttributesPerNonterminal()
+	{
+		Map<Nonterminal, Set<Attribute<?>>> result = new HashMap<>();
+		for(Entry<Nonterminal, Set<Attribute<?>>> e : evaluator.getInheritedAttributesPerNonterminal().entrySet())
+		{
+			Set<Attribute<?>> markerAttributes = new HashSet<>(e.getValue());
+			markerAttributes.removeAll(globalAttributeIndices.keySet());
+			if(!markerAttributes.isEmpty())
+				result.put(e.getKey(), Set.copyOf(markerAttributes));
+		}
+		return Map.copyOf(result);
+	}
+
+	/**
+	 * Only the inherited values of a parent are known when the inherited attributes of its children are evaluated.
+	 */
+	private void checkRootParameters()
+	{
+		for(List<Set<AttributeEquation<?>>> attrEqsPerChild : evaluator.getInheritedAttributeEquations().values())
+			for(Set<AttributeEquation<?>> attrEqs : attrEqsPerChild)
+				for(AttributeEquation<?> attrEq : attrEqs)
+					for(SymbolValueReference<?, ?, ?> param : attrEq.getParameters())
+						if(param.isRoot() && !evaluator.getInheritedAttributes().contains(((AttributeValueReference<?>) param).getAttribute()))
+							throw new IllegalArgumentException("The equation at " + attrEq.getRootProduction() + " for the inherited attribute "
+									+ attrEq.getReturnValue().getAttribute() + " depends on synthesized attributes of the root node");
+	}
+
+	private Map<Nonterminal, MarkerOccurrence> findMarkerOccurrences(ContextFreeGrammar grammar)
+	{
+		Map<Nonterminal, Integer> occurrenceCounts = new HashMap<>();
+		for(Production production : grammar.getProductions())
+			for(Symbol symbol : production.getRhs().getSymbols())
+				if(symbol instanceof Nonterminal nonterminal)
+					occurrenceCounts.merge(nonterminal, 1, Integer::sum);
+
+		Map<Nonterminal, MarkerOccurrence> result = new HashMap<>();
+		for(Production production : grammar.getProductions())
+		{
+			List<Symbol> rhsSymbols = production.getRhs().getSymbols();
+			// increasing positions, so that a marker evaluating attributes of the next child isn't overwritten
+			for(int position = 0; position < rhsSymbols.size(); position ++)
+			{
+				Set<Attribute<?>> markerAttributes = markerAttributesPerNonterminal.get(rhsSymbols.get(position));
+				if(markerAttributes == null)
+					continue;
+				if(isMarker(grammar, rhsSymbols.get(position), occurrenceCounts))
+					result.putIfAbsent((Nonterminal) rhsSymbols.get(position), new MarkerOccurrence(production, position, false, null, null));
+				else if(position > 0 && isMarker(grammar, rhsSymbols.get(position - 1), occurrenceCounts))
+					result.put((Nonterminal) rhsSymbols.get(position - 1), new MarkerOccurrence(production, position - 1, true, null, null));
+				else
+					throw new IllegalArgumentException("The inherited attributes " + markerAttributes + " of child #" + position + " in " + production
+							+ " aren't global, and child #" + position + " neither is a marker nor directly follows one; "
+							+ "only global inherited attributes and inherited attributes evaluated at markers can be evaluated on the fly");
+			}
+		}
+		return result;
+	}
+
+	private static boolean isMarker(ContextFreeGrammar grammar, Symbol symbol, Map<Nonterminal, Integer> occurrenceCounts)
+	{
+		if(!(symbol instanceof Nonterminal nonterminal) || occurrenceCounts.get(nonterminal) != 1)
+			return false;
+		Set<Production> productions = grammar.getProductionsForLhs(nonterminal);
+		return productions.size() == 1 && productions.iterator().next().getRhs().getSymbols().isEmpty();
+	}
+
+	/**
+	 * Global attributes aren't stored per nonterminal. Inherited attributes come first, so they can be copied from a marker in one go.
+	 * A marker evaluating the inherited attributes of the next child stores them in front of its own attributes,
+	 * in the same order as the next child.
+	 */
+	private Map<Nonterminal, Layout> calculateLayouts(ContextFreeGrammar grammar, Map<Nonterminal, MarkerOccurrence> markerOccurrences)
+	{
+		Map<Nonterminal, Layout> result = new HashMap<>();
+		for(Nonterminal nonterminal : grammar.getAllNonterminals())
+		{
+			Set<Attribute<?>> inheritedAttributes = markerAttributesPerNonterminal.getOrDefault(nonterminal, Set.of());
+			int offset = 0;
+			MarkerOccurrence markerOccurrence = markerOccurrences.get(nonterminal);
+			if(markerOccurrence != null && markerOccurrence.evaluatesNextChild())
+			{
+				Symbol nextChild = markerOccurrence.parentProduction().getRhs().getSymbols().get(markerOccurrence.position() + 1);
+				offset = markerAttributesPerNonterminal.get(nextChild).size();
+			}
+			Map<Attribute<?>, Integer> slots = new HashMap<>();
+			for(Attribute<?> attribute : inheritedAttributes)
+				slots.put(attribute, offset + slots.size());
+			for(Attribute<?> attribute : evaluator.getSynthesizedAttributesPerNonterminal().get(nonterminal))
+				slots.put(attribute, offset + slots.size());
+			result.put(nonterminal, new Layout(Map.copyOf(slots), inheritedAttributes.size(), offset + slots.size()));
+		}
+		return Map.copyOf(result);
+	}
+
+	private Map<Nonterminal, MarkerOccurrence> compileMarkerEquations(Map<Nonterminal, MarkerOccurrence> markerOccurrences)
+	{
+		Map<Nonterminal, MarkerOccurrence> result = new HashMap<>();
+		for(Entry<Nonterminal, MarkerOccurrence> e : markerOccurrences.entrySet())
+		{
+			MarkerOccurrence occurrence = e.getValue();
+			List<Set<AttributeEquation<?>>> inheritedAttributeEquations = evaluator.getInheritedAttributeEquations().get(occurrence.parentProduction());
+			CompiledEquation[] markerEquations = compileInheritedEquations(inheritedAttributeEquations.get(occurrence.position()));
+			CompiledEquation[] nextChildEquations = occurrence.evaluatesNextChild()
+					? compileInheritedEquations(inheritedAttributeEquations.get(occurrence.position() + 1))
+					: null;
+			result.put(e.getKey(), new MarkerOccurrence(occurrence.parentProduction(), occurrence.position(), occurrence.evaluatesNextChild(),
+					markerEquations, nextChildEquations));
+		}
+		return Map.copyOf(result);
+	}
+
+	private CompiledEquation[] compileInheritedEquations(Set<AttributeEquation<?>> attrEqs)
+	{
+		// equations for global attributes only hand over the value from the root
+		return attrEqs.stream()
+				.filter(attrEq -> !globalAttributeIndices.containsKey(attrEq.getReturnValue().getAttribute()))
+				.map(this::compileEquation)
+				.toArray(CompiledEquation[]::new);
+	}
+
+	private Map<Production, CompiledEquation[]> compileSynthesizedEquations()
+	{
+		Map<Production, CompiledEquation[]> result = new HashMap<>();
+		for(Entry<Production, Set<AttributeEquation<?>>> e : evaluator.getSynthesizedAttributeEquations().entrySet())
+			result.put(e.getKey(), e.getValue().stream().map(this::compileEquation).toArray(CompiledEquation[]::new));
+		return Map.copyOf(result);
+	}
+
+	private CompiledEquation compileEquation(AttributeEquation<?> attrEq)
+	{
+		List<SymbolValueReference<?, ?, ?>> params = attrEq.getParameters();
+		int[] parameterPositions = new int[params.size()];
+		int[] parameterSlots = new int[params.size()];
+		for(int i = 0; i < params.size(); i ++)
+		{
+			SymbolValueReference<?, ?, ?> param = params.get(i);
+			if(!(param instanceof AttributeValueReference<?> attributeParam))
+			{
+				parameterPositions[i] = param.getPosition();
+				parameterSlots[i] = TERMINAL_VALUE;
+			} else if(globalAttributeIndices.containsKey(attributeParam.getAttribute()))
+			{
+				parameterPositions[i] = GLOBAL;
+				parameterSlots[i] = globalAttributeIndices.get(attributeParam.getAttribute());
+			} else
+			{
+				parameterPositions[i] = param.getPosition();
+				parameterSlots[i] = slot(attributeParam);
+			}
+		}
+		return new CompiledEquation(attrEq, slot(attrEq.getReturnValue()), parameterPositions, parameterSlots);
+	}
+
+	private int slot(AttributeValueReference<?> reference)
+	{
+		return layouts.get(reference.getTargetSymbol()).slots().get(reference.getAttribute());
+	}
+
+	public LAttributedEvaluator getEvaluator()
+	{
+		return evaluator;
+	}
+
+	/**
+	 * <code>inheritedValues</code> has to contain exactly one value for each global inherited attribute
+	 * and for each inherited attribute of the start symbol.
+	 * The result of the parse is the root node, carrying all its attributes, but no children.
+	 */
+	public InnerNode parseAndEvaluate(ListenerParser parser, TokenStream tokens, Set<AttributeValue<?>> inheritedValues) throws ParseException
+	{
+		Layout rootLayout = layouts.get(startSymbol);
+		Set<Attribute<?>> rootAttributes = new HashSet<>(globalAttributeIndices.keySet());
+		rootAttributes.addAll(markerAttributesPerNonterminal.getOrDefault(startSymbol, Set.of()));
+		Set<Attribute<?>> suppliedAttributes = inheritedValues.stream().map(AttributeValue::getAttribute).collect(Collectors.toSet());
+		if(!suppliedAttributes.equals(rootAttributes) || suppliedAttributes.size() != inheritedValues.size())
+		{
+			Set<Attribute<?>> missing = new HashSet<>(rootAttributes);
+			missing.removeAll(suppliedAttributes);
+			if(!missing.isEmpty())
+				throw new IllegalArgumentException("No values were supplied for the following inherited attributes: " + missing);
+			throw new IllegalArgumentException("Values were supplied for attributes which are neither global nor inherited by the start symbol, "
+					+ "or more than once per attribute");
+		}
+		Object[] globalValues = new Object[globalAttributeIndices.size()];
+		Object[] rootInheritedValues = new Object[rootLayout.inheritedCount()];
+		for(AttributeValue<?> value : inheritedValues)
+		{
+			Integer globalIndex = globalAttributeIndices.get(value.getAttribute());
+			if(globalIndex != null)
+				globalValues[globalIndex] = value.getValue();
+			else
+				rootInheritedValues[rootLayout.slots().get(value.getAttribute())] = value.getValue();
+		}
+
+		Listener listener = new Listener(globalValues, rootInheritedValues);
+		Object[] rootValues = (Object[]) parser.parse(tokens, listener);
+		InnerNode result = new InnerNode(listener.lastReducedProduction, List.of());
+		for(Attribute<?> attribute : evaluator.getInheritedAttributesPerNonterminal().get(startSymbol))
+		{
+			Integer globalIndex = globalAttributeIndices.get(attribute);
+			setAttributeValue(result, attribute, globalIndex != null ? globalValues[globalIndex] : rootValues[rootLayout.slots().get(attribute)]);
+		}
+		for(Attribute<?> attribute : evaluator.getSynthesizedAttributesPerNonterminal().get(startSymbol))
+			setAttributeValue(result, attribute, rootValues[rootLayout.slots().get(attribute)]);
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <V> void setAttributeValue(InnerNode node, Attribute<V> attribute, Object value)
+	{
+		node.setAttributeValue(attribute, (V) value);
+	}
+
+	/**
+	 * The value of a nonterminal is an <code>Object[]</code> holding its attribute values as given by its {@link Layout},
+	 * the value of a terminal is its token.
+	 */
+	private class Listener implements ReductionListener<Object>
+	{
+		private final Object[]	globalValues;
+		private final Object[]	rootInheritedValues;
+		private final Object[]	arguments;
+
+		// the root is reduced last
+		private Production lastReducedProduction;
+
+		public Listener(Object[] globalValues, Object[] rootInheritedValues)
+		{
+			this.globalValues = globalValues;
+			this.rootInheritedValues = rootInheritedValues;
+			this.arguments = new Object[maxParameterCount];
+		}
+
+		@Override
+		public Object onShift(Token<?> token)
+		{
+			return token;
+		}
+		@Override
+		public Object onReduce(Production production, List<Object> values)
+		{
+			return onReduce(production, values, null);
+		}
+		/**
+		 * <code>valuesBelow</code> is <code>null</code> if the parser doesn't supply them.
+		 */
+		@Override
+		public Object onReduce(Production production, List<Object> values, List<Object> valuesBelow)
+		{
+			lastReducedProduction = production;
+			Nonterminal lhs = production.getLhs();
+			MarkerOccurrence markerOccurrence = markerOccurrences.get(lhs);
+			if(markerOccurrence != null)
+				return reduceMarker(production, markerOccurrence, valuesBelow);
+
+			Layout layout = layouts.get(lhs);
+			if(layout.size() == 0)
+				return NO_VALUES;
+			Object[] result = new Object[layout.size()];
+			if(layout.inheritedCount() != 0)
+				System.arraycopy(findInheritedValues(lhs, valuesBelow, valuesBelow == null ? 0 : valuesBelow.size()), 0, result, 0, layout.inheritedCount());
+			for(CompiledEquation equation : synthesizedEquations.getOrDefault(production, NO_EQUATIONS))
+				result[equation.targetSlot()] = evaluate(equation, result, values, 0, null, -1);
+			return result;
+		}
+
+		private Object[] reduceMarker(Production production, MarkerOccurrence occurrence, List<Object> valuesBelow)
+		{
+			Nonterminal marker = production.getLhs();
+			Production parentProduction = occurrence.parentProduction();
+			int position = occurrence.position();
+			if(valuesBelow == null || valuesBelow.size() < position)
+				throw new IllegalStateException("The parser doesn't supply the values of the left siblings of " + marker);
+
+			// the parent isn't reduced yet, so its left siblings are the topmost values below the marker
+			int leftSiblingsStart = valuesBelow.size() - position;
+			Object[] parentValues = layouts.get(parentProduction.getLhs()).inheritedCount() == 0
+					? NO_VALUES
+					: findInheritedValues(parentProduction.getLhs(), valuesBelow, leftSiblingsStart);
+			Object[] result = new Object[layouts.get(marker).size()];
+			for(CompiledEquation equation : occurrence.markerEquations())
+				result[equation.targetSlot()] = evaluate(equation, parentValues, valuesBelow, leftSiblingsStart, result, position);
+			for(CompiledEquation equation : synthesizedEquations.getOrDefault(production, NO_EQUATIONS))
+				result[equation.targetSlot()] = evaluate(equation, result, List.of(), 0, null, -1);
+			if(occurrence.evaluatesNextChild())
+				for(CompiledEquation equation : occurrence.nextChildEquations())
+					result[equation.targetSlot()] = evaluate(equation, parentValues, valuesBelow, leftSiblingsStart, result, position);
+			return result;
+		}
+
+		/**
+		 * Returns the array holding the inherited values of a nonterminal whose children start at the given index of <code>valuesBelow</code>:
+		 * either the marker directly below them, or the values supplied for the root.
+		 */
+		private Object[] findInheritedValues(Nonterminal nonterminal, List<Object> valuesBelow, int childrenStart)
+		{
+			if(valuesBelow == null)
+				throw new IllegalStateException("The parser doesn't supply the values below " + nonterminal + ", which hold its inherited attributes");
+			if(childrenStart == 0)
+				return rootInheritedValues;
+			if(!(valuesBelow.get(childrenStart - 1) instanceof Object[] markerValues))
+				throw new IllegalStateException("No marker holding the inherited attributes of " + nonterminal + " found on the parser's stack");
+			return markerValues;
+		}
+
+		/**
+		 * Child #<code>i</code> is at index <code>childrenStart + i</code> of <code>children</code>,
+		 * except for child #<code>markerPosition</code>, which is <code>markerValues</code>.
+		 */
+		private Object evaluate(CompiledEquation equation, Object[] lhsValues, List<Object> children, int childrenStart, Object[] markerValues, int markerPosition)
+		{
+			int[] positions = equation.parameterPositions();
+			int[] slots = equation.parameterSlots();
+			for(int i = 0; i < positions.length; i ++)
+			{
+				int position = positions[i];
+				if(position == GLOBAL)
+					arguments[i] = globalValues[slots[i]];
+				else if(position == -1)
+					arguments[i] = lhsValues[slots[i]];
+				else
+				{
+					Object child = position == markerPosition ? markerValues : children.get(childrenStart + position);
+					arguments[i] = slots[i] == TERMINAL_VALUE ? ((Token<?>) child).getValue() : ((Object[]) child)[slots[i]];
+				}
+			}
+			return equation.equation().evaluate(arguments);
+		}
+	}
+
+	/**
+	 * Where the attribute values of a nonterminal are in the arrays representing it on the parser's stack.
+	 * The first <code>inheritedCount</code> attributes are the inherited ones which aren't global.
+	 * <code>slots</code> starts at an offset for markers holding the inherited values of the next child.
+	 */
+	private record Layout(Map<Attribute<?>, Integer> slots, int inheritedCount, int size)
+	{}
+
+	/**
+	 * An attribute equation with the positions and slots of its parameters resolved.
+	 * A parameter position of -1 means the root, {@link #GLOBAL} means a global attribute.
+	 */
+	private record CompiledEquation(AttributeEquation<?> equation, int targetSlot, int[] parameterPositions, int[] parameterSlots)
+	{}
+
+	/**
+	 * The only occurrence of a marker: child #<code>position</code> of <code>parentProduction</code>,
+	 * with the equations evaluated when the marker is reduced.
+	 */
+	private record MarkerOccurrence(Production parentProduction, int position, boolean evaluatesNextChild,
+			CompiledEquation[] markerEquations, CompiledEquation[] nextChildEquations)
+	{}
+}
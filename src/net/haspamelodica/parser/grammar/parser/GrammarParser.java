@@ -40,6 +40,7 @@ import net.haspamelodica.parser.grammar.attributes.AttributeSystem;
 import net.haspamelodica.parser.grammar.attributes.AttributeValue;
 import net.haspamelodica.parser.grammar.attributes.AttributeValueReference;
 import net.haspamelodica.parser.grammar.attributes.SymbolValueReference;
+import net.haspamelodica.parser.grammar.attributes.SymbolValueReference.NeighboringValuePositionType;
 import net.haspamelodica.parser.grammar.attributes.TerminalValueReference;
 import net.haspamelodica.parser.grammar.attributes.evaluating.lattributed.LAttributedEvaluator;
 import net.haspamelodica.parser.parser.ParseException;
@@ -52,6 +53,8 @@ import net.haspamelodica.parser.utils.CollectionsUtils;
 public class GrammarParser
 {
 	private static final Tokenizer<CharReader>	tokenizer	= new GrammarTokenizer();
+	// the function of expressions consisting only of a value reference; recognized to build hand-overs
+	private static final TypedFunction			VALUE_REFERENCE_FUNCTION	= TypedFunction.build(Function.identity(), Object.class, Object.class);
 	private static final Parser					parser;
 	private static final LAttributedEvaluator	attrEvaluator;
 
@@ -430,9 +433,17 @@ public class GrammarParser
 				//TODO add some sort of type checking
 				@SuppressWarnings("unchecked")
 				AttributeValueReference<Object> returnValueCasted = (AttributeValueReference<Object>) returnValue;
-				SymbolValueReference<?, ?, ?>[] params = parameters.toArray(SymbolValueReference[]::new);
-				newEquations.add(AttributeEquation.build(returnValue.getRootProduction(), function::execute,
-						returnValueCasted, params));
+				if(function == VALUE_REFERENCE_FUNCTION && parameters.get(0).getType() == NeighboringValuePositionType.ATTRIBUTE_VALUE)
+				{
+					@SuppressWarnings("unchecked")
+					AttributeValueReference<Object> paramCasted = (AttributeValueReference<Object>) parameters.get(0);
+					newEquations.add(AttributeEquation.buildHandOver(returnValue.getRootProduction(), returnValueCasted, paramCasted));
+				} else
+				{
+					SymbolValueReference<?, ?, ?>[] params = parameters.toArray(SymbolValueReference[]::new);
+					newEquations.add(AttributeEquation.build(returnValue.getRootProduction(), function::execute,
+							returnValueCasted, params));
+				}
 				return Collections.unmodifiableSet(newEquations);
 			case TERMINAL_VALUE:
 				throw new IllegalArgumentException("Can't set the value of a token");
@@ -443,7 +454,7 @@ public class GrammarParser
 	private static TypedFunction buildValueReference(SymbolValueReference<?, ?, ?> valueReference)
 	{
 		//TODO add some sort of type checking
-		return TypedFunction.build(Function.identity(), Object.class, Object.class);
+		return VALUE_REFERENCE_FUNCTION;
 	}
 	private static TypedFunction buildFunctionCall(Map<String, TypedFunction> functions, String functionName,
 			List<SymbolValueReference<?, ?, ?>> suppliedValueRefs,
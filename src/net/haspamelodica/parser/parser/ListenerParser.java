@@ -0,0 +1,12 @@
+package net.haspamelodica.parser.parser;
+
+import net.haspamelodica.parser.tokenizer.TokenStream;
+
+/**
+ * A parser which can report its shifts and reductions to a {@link ReductionListener} instead of building a parse tree.
+ * {@link #parse(TokenStream)} is equivalent to parsing with {@link TreeBuildingListener}.
+ */
+public interface ListenerParser extends Parser
+{
+	public <V> V parse(TokenStream tokens, ReductionListener<V> listener) throws ParseException;
+}
@@ -0,0 +1,25 @@
+package net.haspamelodica.parser.parser;
+
+import net.haspamelodica.parser.ast.Token;
+
+/**
+ * A parse session which is fed tokens one by one instead of pulling them from a
+ * {@link net.haspamelodica.parser.tokenizer.TokenStream TokenStream}.
+ * Each call processes as much input as possible and returns without blocking.
+ */
+public interface PushParser<V>
+{
+	/**
+	 * Returns whether {@link #offer(Token)} and {@link #finish()} may be called,
+	 * meaning that this session has neither finished nor failed yet.
+	 */
+	public boolean isReadyForInput();
+	/**
+	 * <code>token</code> must not be <code>null</code>; the end of input is signalled by {@link #finish()}.
+	 */
+	public void offer(Token<?> token) throws ParseException;
+	/**
+	 * Signals the end of input and returns the result.
+	 */
+	public V finish() throws ParseException;
+}
@@ -0,0 +1,32 @@
+package net.haspamelodica.parser.parser;
+
+import java.util.List;
+
+import net.haspamelodica.parser.ast.Token;
+import net.haspamelodica.parser.grammar.Production;
+
+/**
+ * Receives the shifts and reductions of a parse as they happen, instead of a parse tree built afterwards.
+ * Each shift and reduction produces a value, which the parser keeps on its stack
+ * until it is passed to the reduction consuming it.
+ * The result of the parse is the value of the last reduction.
+ */
+public interface ReductionListener<V>
+{
+	public V onShift(Token<?> token);
+	/**
+	 * <code>values</code> contains the values of the right hand side symbols of <code>production</code>.
+	 * It is only valid during this call and must neither be modified nor retained.
+	 */
+	public V onReduce(Production production, List<V> values);
+	/**
+	 * Like {@link #onReduce(Production, List)}, but also gets the values below the right hand side on the parser's stack.
+	 * These are the values of the left siblings of the new node and of all its ancestors, the nearest last.
+	 * Parsers always call this method; by default, it ignores <code>valuesBelow</code>.
+	 * <code>valuesBelow</code> is only valid during this call and must neither be modified nor retained.
+	 */
+	public default V onReduce(Production production, List<V> values, List<V> valuesBelow)
+	{
+		return onReduce(production, values);
+	}
+}
@@ -0,0 +1,30 @@
+package net.haspamelodica.parser.parser;
+
+import java.util.List;
+
+import net.haspamelodica.parser.ast.ASTNode;
+import net.haspamelodica.parser.ast.InnerNode;
+import net.haspamelodica.parser.ast.Token;
+import net.haspamelodica.parser.grammar.Production;
+
+/**
+ * Builds the parse tree. Values of reductions are always {@link InnerNode}s.
+ */
+public class TreeBuildingListener implements ReductionListener<ASTNode<?>>
+{
+	public static final TreeBuildingListener INSTANCE = new TreeBuildingListener();
+
+	private TreeBuildingListener()
+	{}
+
+	@Override
+	public ASTNode<?> onShift(Token<?> token)
+	{
+		return token;
+	}
+	@Override
+	public ASTNode<?> onReduce(Production production, List<ASTNode<?>> values)
+	{
+		return new InnerNode(production, values);
+	}
+}
@@ -0,0 +1,23 @@
+package net.haspamelodica.parser.parser.lrk;
+
+/**
+ * Which automaton an LR parser is based on.
+ */
+public enum AutomatonType
+{
+	/**
+	 * The canonical LR(k) automaton. Works for all LR(k) grammars, but may have very many states.
+	 */
+	CANONICAL_LR,
+	/**
+	 * The LR(0) automaton with LALR(1) lookaheads. Has much fewer states, but merging states may introduce reduce-reduce conflicts.
+	 * Only possible for k &lt;= 1; for k=0, this is the same as {@link #CANONICAL_LR}.
+	 */
+	LALR,
+	/**
+	 * A minimal LR(1) automaton generated by Pager's algorithm, which merges states with the same core only if this is known not to introduce conflicts.
+	 * Has almost as few states as {@link #LALR}, but accepts exactly the LR(1) grammars.
+	 * Only possible for k &lt;= 1; for k=0, this is the same as {@link #CANONICAL_LR}.
+	 */
+	MINIMAL_LR;
+}
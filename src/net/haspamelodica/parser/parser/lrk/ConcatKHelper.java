@@ -2,78 +2,42 @@ package net.haspamelodica.parser.parser.lrk;
 
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 import net.haspamelodica.parser.grammar.ContextFreeGrammar;
-import net.haspamelodica.parser.grammar.Nonterminal;
-import net.haspamelodica.parser.grammar.Production;
-import net.haspamelodica.parser.grammar.RightHandSide;
 import net.haspamelodica.parser.grammar.Symbol;
-import net.haspamelodica.parser.grammar.Terminal;
 
 public class ConcatKHelper
 {
 	private final int k;
 
-	private final Map<Symbol, Set<Word>> symbolFirstKs;
+	private final FirstFollowSets			firstFollowSets;
+	private final Map<Symbol, Set<Word>>	symbolFirstKs;
 
 	public ConcatKHelper(ContextFreeGrammar grammar, int k)
 	{
 		this.k = k;
 
-		this.symbolFirstKs = calculateFirstK(grammar, k);
+		this.firstFollowSets = new FirstFollowSets(grammar, k);
+		this.symbolFirstKs = firstFollowSets.getFirstKs();
 	}
 
-	public static Map<Symbol, Set<Word>> calculateFirstK(ContextFreeGrammar grammar, int k)
+	public int getK()
 	{
-		Map<Symbol, Set<Word>> firstKPerSymbol = new HashMap<>();
-		for(Nonterminal n : grammar.getAllNonterminals())
-			firstKPerSymbol.put(n, new HashSet<>());
-		for(Terminal<?> t : grammar.getAllTerminals())
-			firstKPerSymbol.put(t, new HashSet<>(Set.of(new Word(t))));
+		return k;
+	}
 
-		//TODO is this correct?
-		//TODO is this possible faster?
-		//TODO almost a duplicate of CanonicalAutomatonGenerator.expandLookaheads
-		Queue<Symbol> changedSymbols = new LinkedList<>(grammar.getAllTerminals());
-		for(Production prod : grammar.getProductions())
-			if(prod.getRhs().getSymbols().isEmpty())
-			{
-				firstKPerSymbol.get(prod.getLhs()).add(Word.EPSILON);
-				changedSymbols.add(prod.getLhs());
-			}
-		for(Symbol changedSymbol = changedSymbols.poll(); changedSymbol != null; changedSymbol = changedSymbols.poll())
-			for(Nonterminal lhs : grammar.getAllNonterminals())
-			{
-				Set<Production> productionsForLhs = grammar.getProductionsForLhs(lhs);
-				if(productionsForLhs == null)
-					throw new IllegalArgumentException(lhs + " is unproductive");
-				boolean containsChangedSymbol = productionsForLhs
-						.stream()
-						.map(Production::getRhs)
-						.map(RightHandSide::getSymbols)
-						.flatMap(List::stream)
-						.anyMatch(changedSymbol::equals);
-				if(containsChangedSymbol)
-				{
-					Set<Word> newFirstK = productionsForLhs
-							.stream()
-							.map(Production::getRhs)
-							.map(RightHandSide::getSymbols)
-							.map(List::stream)
-							.map(l -> l.map(firstKPerSymbol::get).reduce(Set.of(Word.EPSILON), (a, b) -> concatK(a, b, k)))
-							.flatMap(Set::stream)
-							.collect(Collectors.toSet());
-					if(!newFirstK.equals(firstKPerSymbol.put(lhs, newFirstK)))
-						changedSymbols.add(lhs);
-				}
-			}
-		return firstKPerSymbol;
+	public FirstFollowSets getFirstFollowSets()
+	{
+		return firstFollowSets;
+	}
+
+	public static Map<Symbol, Set<Word>> calculateFirstK(ContextFreeGrammar grammar, int k)
+	{
+		return new FirstFollowSets(grammar, k).getFirstKs();
 	}
 
 	public Set<Word> concatK(Set<Word> a, Set<Word> b)
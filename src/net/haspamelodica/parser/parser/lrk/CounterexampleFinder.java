@@ -0,0 +1,250 @@
+package net.haspamelodica.parser.parser.lrk;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+import net.haspamelodica.parser.grammar.ContextFreeGrammar;
+import net.haspamelodica.parser.grammar.Symbol;
+import net.haspamelodica.parser.parser.lrk.canonicalautomaton.CanonicalAutomaton;
+import net.haspamelodica.parser.parser.lrk.canonicalautomaton.State;
+import net.haspamelodica.parser.parser.lrk.canonicalautomaton.Transition;
+
+/**
+ * Finds examples for conflicts: the shortest input leading to a state, and for each item of that state,
+ * a derivation of that input showing how the item is reached.
+ * <p>
+ * The shortest inputs are found by a single breadth-first search over the automaton, remembering the transition each state was first reached by.
+ * Because all items of a state are valid for every input leading to the state,
+ * the derivations of all conflicting items of a state use the same input, so they show the ambiguity in one example.
+ * A derivation is found by walking back along that input: the marker of an item is moved back by going back in the input,
+ * and an item with the marker at the start is explained by an item of the same state which has the item's left hand side as the next symbol.
+ * This only searches inside the states along the input, and each item of those states is looked at at most once per lookahead it has,
+ * so no search through the whole automaton is necessary.
+ * Where possible, the lookahead of the conflict is followed along, so that the derivation also explains where the lookahead comes from.
+ */
+class CounterexampleFinder
+{
+	private final ContextFreeGrammar	grammar;
+	private final CanonicalAutomaton	automaton;
+	private final ConcatKHelper			concatKHelper;
+
+	private final Map<State, Transition>	transitionsFromParent;
+
+	CounterexampleFinder(ContextFreeGrammar grammar, CanonicalAutomaton automaton, ConcatKHelper concatKHelper)
+	{
+		this.grammar = grammar;
+		this.automaton = automaton;
+		this.concatKHelper = concatKHelper;
+
+		this.transitionsFromParent = new HashMap<>();
+		Set<State> seenStates = new HashSet<>();
+		Queue<State> statesToVisit = new ArrayDeque<>();
+		seenStates.add(automaton.getInitialState());
+		statesToVisit.add(automaton.getInitialState());
+		for(State state = statesToVisit.poll(); state != null; state = statesToVisit.poll())
+			for(Transition transition : automaton.getTransitionsFromState(state))
+				if(seenStates.add(transition.getTarget()))
+				{
+					transitionsFromParent.put(transition.getTarget(), transition);
+					statesToVisit.add(transition.getTarget());
+				}
+	}
+
+	/**
+	 * Returns the transitions of the shortest path from the initial state to the given state.
+	 */
+	public List<Transition> findShortestPath(State state)
+	{
+		List<Transition> path = new ArrayList<>();
+		for(Transition transition = transitionsFromParent.get(state); transition != null; transition = transitionsFromParent.get(transition.getOrigin()))
+			path.add(transition);
+		Collections.reverse(path);
+		return path;
+	}
+	public List<Symbol> findShortestInput(State state)
+	{
+		return findShortestPath(state).stream().map(Transition::getInput).toList();
+	}
+
+	/**
+	 * Returns how the shortest input to the state of the given item is derived from the start symbol,
+	 * with the given item as the innermost production.
+	 * The given lookahead has to be one the item causes an action for; the derivation is chosen so that the lookahead follows the item if possible.
+	 */
+	public String findDerivation(State state, LookaheadItem item, Word lookahead)
+	{
+		List<StateItems> states = new ArrayList<>();
+		states.add(new StateItems(automaton.getInitialState()));
+		for(Transition transition : findShortestPath(state))
+			states.add(new StateItems(transition.getTarget()));
+
+		// from the innermost to the outermost item; all but the first have the marker in front of the left hand side of the previous one
+		List<Item> derivation = new ArrayList<>();
+		derivation.add(item.getItem());
+		Item current = item.getItem();
+		Word requiredLookahead = findInheritedLookahead(symbolsAfterMarker(current), item.getAdmissibleLookaheads(), lookahead);
+		int stateIndex = states.size() - 1;
+		for(;;)
+		{
+			stateIndex -= current.getMarkerPosition();
+			if(stateIndex < 0)
+				break;
+			StateItems currentState = states.get(stateIndex);
+			LookaheadItem initial = currentState.itemsByItem().get(new Item(current.getProduction(), 0));
+			if(initial == null)
+				break;
+			if(requiredLookahead != null && !initial.getAdmissibleLookaheads().contains(requiredLookahead))
+				requiredLookahead = null;
+			if(stateIndex == 0 && initial.getItem().getProduction().getLhs().equals(grammar.getStartSymbol()))
+				break;
+
+			SearchNode outermost = searchParents(currentState, stateIndex == 0, initial, requiredLookahead);
+			if(outermost == null && requiredLookahead != null)
+				outermost = searchParents(currentState, stateIndex == 0, initial, null);
+			if(outermost == null)
+				break;
+			List<Item> parents = new ArrayList<>();
+			for(SearchNode node = outermost; node.child() != null; node = node.child())
+				parents.add(node.item().getItem());
+			Collections.reverse(parents);
+			derivation.addAll(parents);
+			current = outermost.item().getItem();
+			requiredLookahead = outermost.requiredLookahead();
+		}
+		return derivationToString(derivation);
+	}
+
+	/**
+	 * Searches items explaining the given item with the marker at the start, until an item with the marker not at the start,
+	 * or the initial item of the automaton if <code>initialState</code> is set, is found.
+	 * Returns the found item; the other items found on the way can be found by following {@link SearchNode#child()}.
+	 */
+	private SearchNode searchParents(StateItems state, boolean initialState, LookaheadItem item, Word requiredLookahead)
+	{
+		Set<SearchNode> seenNodes = new HashSet<>();
+		Queue<SearchNode> nodesToVisit = new ArrayDeque<>();
+		SearchNode start = new SearchNode(item, requiredLookahead, null);
+		seenNodes.add(start);
+		nodesToVisit.add(start);
+		for(SearchNode node = nodesToVisit.poll(); node != null; node = nodesToVisit.poll())
+		{
+			Item nodeItem = node.item().getItem();
+			if(node != start && (nodeItem.getMarkerPosition() > 0 || initialState && nodeItem.getProduction().getLhs().equals(grammar.getStartSymbol())))
+				return node;
+			if(nodeItem.getMarkerPosition() > 0)
+				continue;
+			for(LookaheadItem parent : state.itemsByNextSymbol().getOrDefault(nodeItem.getProduction().getLhs(), List.of()))
+			{
+				Item parentItem = parent.getItem();
+				Word parentRequiredLookahead = null;
+				if(node.requiredLookahead() != null)
+				{
+					List<Symbol> rest = symbolsAfterMarker(parentItem);
+					rest = rest.subList(1, rest.size());
+					if(!concatKHelper.concatK(concatKHelper.concatKSymbols(rest), Set.of()).contains(node.requiredLookahead()))
+					{
+						parentRequiredLookahead = findInheritedLookahead(rest, parent.getAdmissibleLookaheads(), node.requiredLookahead());
+						if(parentRequiredLookahead == null)
+							continue;
+					}
+				}
+				SearchNode parentNode = new SearchNode(parent, parentRequiredLookahead, node);
+				if(seenNodes.add(parentNode))
+					nodesToVisit.add(parentNode);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns a lookahead <code>l</code> out of <code>lookaheads</code>
+	 * such that <code>lookahead</code> is in the first k terminals of <code>symbols</code> followed by <code>l</code>,
+	 * or <code>null</code> if there is none or if <code>lookahead</code> is derived by <code>symbols</code> alone.
+	 */
+	private Word findInheritedLookahead(List<Symbol> symbols, Set<Word> lookaheads, Word lookahead)
+	{
+		Set<Word> firstK = concatKHelper.concatKSymbols(symbols);
+		if(concatKHelper.concatK(firstK, Set.of()).contains(lookahead))
+			return null;
+		for(Word inheritedLookahead : lookaheads)
+			if(concatKHelper.concatK(firstK, Set.of(inheritedLookahead)).contains(lookahead))
+				return inheritedLookahead;
+		return null;
+	}
+
+	private static List<Symbol> symbolsAfterMarker(Item item)
+	{
+		List<Symbol> rhsSymbols = item.getProduction().getRhs().getSymbols();
+		return rhsSymbols.subList(item.getMarkerPosition(), rhsSymbols.size());
+	}
+
+	private static String derivationToString(List<Item> derivation)
+	{
+		Item innermost = derivation.get(0);
+		List<Symbol> innermostRhs = innermost.getProduction().getRhs().getSymbols();
+		String result = innermost.getProduction().getLhs() + " ->" + symbolsToString(innermostRhs.subList(0, innermost.getMarkerPosition()))
+				+ " ." + symbolsToString(innermostRhs.subList(innermost.getMarkerPosition(), innermostRhs.size()));
+		for(Item parent : derivation.subList(1, derivation.size()))
+		{
+			List<Symbol> rhs = parent.getProduction().getRhs().getSymbols();
+			result = parent.getProduction().getLhs() + " ->" + symbolsToString(rhs.subList(0, parent.getMarkerPosition()))
+					+ " [" + result + "]" + symbolsToString(rhs.subList(parent.getMarkerPosition() + 1, rhs.size()));
+		}
+		return result;
+	}
+	private static String symbolsToString(List<Symbol> symbols)
+	{
+		StringBuilder result = new StringBuilder();
+		for(Symbol symbol : symbols)
+			result.append(' ').append(symbol);
+		return result.toString();
+	}
+
+	private record StateItems(Map<Item, LookaheadItem> itemsByItem, Map<Symbol, List<LookaheadItem>> itemsByNextSymbol)
+	{
+		public StateItems(State state)
+		{
+			this(new HashMap<>(), new HashMap<>());
+			for(LookaheadItem item : state.getItems())
+			{
+				itemsByItem.put(item.getItem(), item);
+				if(!item.getItem().isFinished())
+					itemsByNextSymbol.computeIfAbsent(item.getItem().getNextSymbol(), s -> new ArrayList<>()).add(item);
+			}
+		}
+	}
+
+	private record SearchNode(LookaheadItem item, Word requiredLookahead, SearchNode child)
+	{
+		// the child is only needed to reconstruct the result
+		@Override
+		public int hashCode()
+		{
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + item.hashCode();
+			result = prime * result + ((requiredLookahead == null) ? 0 : requiredLookahead.hashCode());
+			return result;
+		}
+		@Override
+		public boolean equals(Object obj)
+		{
+			if(this == obj)
+				return true;
+			if(!(obj instanceof SearchNode other))
+				return false;
+			if(!item.equals(other.item))
+				return false;
+			if(requiredLookahead == null)
+				return other.requiredLookahead == null;
+			return requiredLookahead.equals(other.requiredLookahead);
+		}
+	}
+}
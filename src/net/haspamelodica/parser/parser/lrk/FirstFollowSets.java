@@ -0,0 +1,280 @@
+package net.haspamelodica.parser.parser.lrk;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import net.haspamelodica.parser.grammar.ContextFreeGrammar;
+import net.haspamelodica.parser.grammar.Nonterminal;
+import net.haspamelodica.parser.grammar.Production;
+import net.haspamelodica.parser.grammar.Symbol;
+import net.haspamelodica.parser.grammar.Symbol.SymbolType;
+import net.haspamelodica.parser.grammar.Terminal;
+import net.haspamelodica.parser.utils.ParallelUtils;
+import net.haspamelodica.parser.utils.StronglyConnectedComponents;
+
+/**
+ * The nullable nonterminals and the FIRST_k and FOLLOW_k sets of a grammar.
+ * <p>
+ * FIRST_k and FOLLOW_k are calculated over the dependency graph of the nonterminals,
+ * decomposed into strongly connected components: only inside a component, the sets have to be iterated to a fixed point.
+ * Components are evaluated once all components they depend on are finished,
+ * and components not depending on each other are evaluated in parallel (see {@link ParallelUtils}).
+ * FOLLOW_k is only calculated when it is first needed.
+ */
+public class FirstFollowSets
+{
+	private final ContextFreeGrammar	grammar;
+	private final int					k;
+
+	private final Set<Nonterminal>						nullable;
+	private final Map<Symbol, Set<Word>>			firstKs;
+	private volatile Map<Nonterminal, Set<Word>>	followKs;
+
+	public FirstFollowSets(ContextFreeGrammar grammar, int k)
+	{
+		this.grammar = grammar;
+		this.k = k;
+
+		for(Nonterminal nonterminal : grammar.getAllNonterminals())
+			if(grammar.getProductionsForLhs(nonterminal) == null)
+				throw new IllegalArgumentException(nonterminal + " is unproductive");
+		this.nullable = calculateNullable(grammar);
+		this.firstKs = calculateFirstKs();
+	}
+
+	public int getK()
+	{
+		return k;
+	}
+
+	public boolean isNullable(Symbol symbol)
+	{
+		return symbol.getType() == SymbolType.NONTERMINAL && nullable.contains(symbol);
+	}
+	public boolean isNullable(List<Symbol> symbols)
+	{
+		for(Symbol symbol : symbols)
+			if(!isNullable(symbol))
+				return false;
+		return true;
+	}
+	public Set<Nonterminal> getNullable()
+	{
+		return nullable;
+	}
+
+	/**
+	 * Returns the set of the first k terminals of all words derivable from the given symbol,
+	 * including words shorter than k.
+	 */
+	public Set<Word> getFirstK(Symbol symbol)
+	{
+		return firstKs.get(symbol);
+	}
+	public Map<Symbol, Set<Word>> getFirstKs()
+	{
+		return firstKs;
+	}
+
+	/**
+	 * Returns the set of the first k terminals which can follow the given nonterminal in sentential forms,
+	 * where the end of the input is represented by {@link Terminal#EOF}, repeated so that all lookaheads have length k.
+	 */
+	public Set<Word> getFollowK(Nonterminal nonterminal)
+	{
+		return getFollowKs().get(nonterminal);
+	}
+	public Map<Nonterminal, Set<Word>> getFollowKs()
+	{
+		Map<Nonterminal, Set<Word>> followKs = this.followKs;
+		if(followKs == null)
+			synchronized(this)
+			{
+				followKs = this.followKs;
+				if(followKs == null)
+					this.followKs = followKs = calculateFollowKs();
+			}
+		return followKs;
+	}
+
+	private static Set<Nonterminal> calculateNullable(ContextFreeGrammar grammar)
+	{
+		// for each production, the number of rhs symbols not known to be nullable yet
+		Map<Production, Integer> remainingSymbolCounts = new HashMap<>();
+		Map<Nonterminal, List<Production>> occurrences = new HashMap<>();
+		Queue<Nonterminal> newNullable = new ArrayDeque<>();
+		Set<Nonterminal> nullable = new HashSet<>();
+		for(Production production : grammar.getProductions())
+		{
+			List<Symbol> rhs = production.getRhs().getSymbols();
+			remainingSymbolCounts.put(production, rhs.size());
+			for(Symbol symbol : rhs)
+				if(symbol.getType() == SymbolType.NONTERMINAL)
+					occurrences.computeIfAbsent((Nonterminal) symbol, s -> new ArrayList<>()).add(production);
+			if(rhs.isEmpty() && nullable.add(production.getLhs()))
+				newNullable.add(production.getLhs());
+		}
+		for(Nonterminal symbol = newNullable.poll(); symbol != null; symbol = newNullable.poll())
+			for(Production production : occurrences.getOrDefault(symbol, List.of()))
+				if(remainingSymbolCounts.merge(production, -1, Integer::sum) == 0 && nullable.add(production.getLhs()))
+					newNullable.add(production.getLhs());
+		return Set.copyOf(nullable);
+	}
+
+	private Map<Symbol, Set<Word>> calculateFirstKs()
+	{
+		Map<Symbol, Set<Word>> firstKs = new ConcurrentHashMap<>();
+		for(Terminal<?> terminal : grammar.getAllTerminals())
+			firstKs.put(terminal, Set.of(k == 0 ? Word.EPSILON : new Word(terminal)));
+
+		// A depends on B iff B occurs in a rhs of A
+		Map<Nonterminal, Set<Nonterminal>> dependencies = new HashMap<>();
+		for(Nonterminal nonterminal : grammar.getAllNonterminals())
+		{
+			Set<Nonterminal> dependenciesOfNonterminal = new LinkedHashSet<>();
+			for(Production production : grammar.getProductionsForLhs(nonterminal))
+				for(Symbol symbol : production.getRhs().getSymbols())
+					if(symbol.getType() == SymbolType.NONTERMINAL)
+						dependenciesOfNonterminal.add((Nonterminal) symbol);
+			dependencies.put(nonterminal, dependenciesOfNonterminal);
+		}
+
+		evaluateComponents(dependencies, firstKs, nonterminal ->
+		{
+			Set<Word> result = new HashSet<>();
+			for(Production production : grammar.getProductionsForLhs(nonterminal))
+				result.addAll(concatKSymbols(production.getRhs().getSymbols(), firstKs));
+			return result;
+		});
+		return Map.copyOf(firstKs);
+	}
+
+	private Map<Nonterminal, Set<Word>> calculateFollowKs()
+	{
+		// B depends on A iff B occurs in a rhs of A
+		Map<Nonterminal, Set<Nonterminal>> dependencies = new HashMap<>();
+		// for each nonterminal B, all occurrences A -> alpha B gamma as pairs of A and FIRST_k(gamma)
+		Map<Nonterminal, List<Occurrence>> occurrences = new HashMap<>();
+		for(Nonterminal nonterminal : grammar.getAllNonterminals())
+		{
+			dependencies.put(nonterminal, new LinkedHashSet<>());
+			occurrences.put(nonterminal, new ArrayList<>());
+		}
+		for(Production production : grammar.getProductions())
+		{
+			List<Symbol> rhs = production.getRhs().getSymbols();
+			for(int i = 0; i < rhs.size(); i ++)
+				if(rhs.get(i).getType() == SymbolType.NONTERMINAL)
+				{
+					Nonterminal symbol = (Nonterminal) rhs.get(i);
+					dependencies.get(symbol).add(production.getLhs());
+					occurrences.get(symbol).add(new Occurrence(production.getLhs(), concatKSymbols(rhs.subList(i + 1, rhs.size()), firstKs)));
+				}
+		}
+
+		Map<Nonterminal, Set<Word>> followKs = new ConcurrentHashMap<>();
+		Set<Word> eofFollow = Set.of(Word.repeat(Terminal.EOF, k));
+		evaluateComponents(dependencies, followKs, nonterminal ->
+		{
+			Set<Word> result = new HashSet<>();
+			if(nonterminal.equals(grammar.getStartSymbol()))
+				result.addAll(eofFollow);
+			for(Occurrence occurrence : occurrences.get(nonterminal))
+				result.addAll(ConcatKHelper.concatK(occurrence.firstKAfter(), followKs.getOrDefault(occurrence.lhs(), Set.of()), k));
+			return result;
+		});
+		return Map.copyOf(followKs);
+	}
+
+	private Set<Word> concatKSymbols(List<Symbol> symbols, Map<? super Symbol, Set<Word>> sets)
+	{
+		Set<Word> result = Set.of(Word.EPSILON);
+		for(Symbol symbol : symbols)
+		{
+			result = ConcatKHelper.concatK(result, sets.getOrDefault(symbol, Set.of()), k);
+			if(result.isEmpty())
+				break;
+		}
+		return result;
+	}
+
+	/**
+	 * Calculates the least fixed point of <code>results(n) = evaluation(n)</code>, where <code>evaluation</code> reads <code>results</code>
+	 * only for <code>n</code> and its dependencies, and is monotonic in them.
+	 * Missing entries of <code>results</code> have to be treated as empty sets by <code>evaluation</code>.
+	 */
+	private static void evaluateComponents(Map<Nonterminal, Set<Nonterminal>> dependencies, Map<? super Nonterminal, Set<Word>> results,
+			Function<Nonterminal, Set<Word>> evaluation)
+	{
+		List<List<Nonterminal>> components = StronglyConnectedComponents.calculate(new ArrayList<>(dependencies.keySet()), dependencies::get);
+
+		// components are returned dependencies first; a component's level is one more than the highest level of its dependencies
+		Map<Nonterminal, Integer> levels = new HashMap<>();
+		List<List<List<Nonterminal>>> componentsByLevel = new ArrayList<>();
+		for(List<Nonterminal> component : components)
+		{
+			int level = 0;
+			for(Nonterminal nonterminal : component)
+				for(Nonterminal dependency : dependencies.get(nonterminal))
+				{
+					Integer dependencyLevel = levels.get(dependency);
+					if(dependencyLevel != null)
+						level = Math.max(level, dependencyLevel + 1);
+				}
+			for(Nonterminal nonterminal : component)
+				levels.put(nonterminal, level);
+			if(level == componentsByLevel.size())
+				componentsByLevel.add(new ArrayList<>());
+			componentsByLevel.get(level).add(component);
+		}
+
+		for(List<List<Nonterminal>> level : componentsByLevel)
+			ParallelUtils.map(level, component ->
+			{
+				evaluateComponent(component, dependencies, results, evaluation);
+				return null;
+			});
+	}
+
+	private static void evaluateComponent(List<Nonterminal> component, Map<Nonterminal, Set<Nonterminal>> dependencies,
+			Map<? super Nonterminal, Set<Word>> results, Function<Nonterminal, Set<Word>> evaluation)
+	{
+		if(component.size() == 1 && !dependencies.get(component.get(0)).contains(component.get(0)))
+		{
+			results.put(component.get(0), Set.copyOf(evaluation.apply(component.get(0))));
+			return;
+		}
+
+		Set<Nonterminal> componentSet = Set.copyOf(component);
+		// inside the component: which nonterminals have to be reevaluated when a nonterminal changes
+		Map<Nonterminal, List<Nonterminal>> dependents = new HashMap<>();
+		for(Nonterminal nonterminal : component)
+			for(Nonterminal dependency : dependencies.get(nonterminal))
+				if(componentSet.contains(dependency))
+					dependents.computeIfAbsent(dependency, d -> new ArrayList<>()).add(nonterminal);
+
+		Queue<Nonterminal> changed = new ArrayDeque<>(component);
+		Set<Nonterminal> changedSet = new HashSet<>(component);
+		for(Nonterminal nonterminal = changed.poll(); nonterminal != null; nonterminal = changed.poll())
+		{
+			changedSet.remove(nonterminal);
+			Set<Word> newResult = Set.copyOf(evaluation.apply(nonterminal));
+			if(!newResult.equals(results.put(nonterminal, newResult)))
+				for(Nonterminal dependent : dependents.getOrDefault(nonterminal, List.of()))
+					if(changedSet.add(dependent))
+						changed.add(dependent);
+		}
+	}
+
+	private record Occurrence(Nonterminal lhs, Set<Word> firstKAfter)
+	{}
+}
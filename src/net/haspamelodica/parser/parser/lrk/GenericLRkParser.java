@@ -1,24 +1,39 @@
 package net.haspamelodica.parser.parser.lrk;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.stream.Collectors;
 
+import net.haspamelodica.parser.ast.ASTNode;
 import net.haspamelodica.parser.ast.InnerNode;
 import net.haspamelodica.parser.grammar.Nonterminal;
 import net.haspamelodica.parser.grammar.Symbol;
+import net.haspamelodica.parser.grammar.Terminal;
+import net.haspamelodica.parser.parser.ListenerParser;
 import net.haspamelodica.parser.parser.ParseException;
-import net.haspamelodica.parser.parser.Parser;
+import net.haspamelodica.parser.parser.PushParser;
+import net.haspamelodica.parser.parser.ReductionListener;
+import net.haspamelodica.parser.parser.TreeBuildingListener;
 import net.haspamelodica.parser.parser.lrk.action.Action;
+import net.haspamelodica.parser.parser.lrk.action.Action.ActionType;
+import net.haspamelodica.parser.parser.lrk.action.ErrorAction;
+import net.haspamelodica.parser.parser.lrk.action.ReduceAction;
 import net.haspamelodica.parser.tokenizer.TokenStream;
 
-public class GenericLRkParser<STATE> implements Parser
+public class GenericLRkParser<STATE> implements ListenerParser
 {
 	private final STATE								initialState;
 	private final Nonterminal						generatedStartSymbolIfAny;
 	private final Map<STATE, Map<Symbol, STATE>>	gotoTable;
 	private final Map<STATE, Map<Word, Action>>		actionTable;
 	private final int								lookaheadSize;
+	private final Map<STATE, ReduceAction>			consistentStateReductions;
+	// only for lookahead size 1
+	private final Map<STATE, Map<Terminal<?>, Action>>	singleTerminalActionTable;
+	// only for lookahead sizes greater than 1
+	private final Map<STATE, LookaheadDecisionTree>	decisionTrees;
 
 	public GenericLRkParser(STATE initialState, Nonterminal generatedStartSymbolIfAny,
 			Map<STATE, Map<Symbol, STATE>> gotoTable, Map<STATE, Map<Word, Action>> actionTable, int lookaheadSize)
@@ -28,6 +43,69 @@ public class GenericLRkParser<STATE> implements Parser
 		this.gotoTable = deepCopy(gotoTable);
 		this.actionTable = deepCopy(actionTable);
 		this.lookaheadSize = lookaheadSize;
+		this.consistentStateReductions = findConsistentStateReductions(this.actionTable);
+		this.singleTerminalActionTable = lookaheadSize == 1 ? buildSingleTerminalActionTable(this.actionTable) : Map.of();
+		this.decisionTrees = lookaheadSize > 1 ? buildDecisionTrees(this.actionTable) : Map.of();
+	}
+
+	/**
+	 * Keys the action table by the only terminal of each lookahead,
+	 * so that looking up an action doesn't need a {@link Word} of the current lookahead.
+	 */
+	private static <STATE> Map<STATE, Map<Terminal<?>, Action>> buildSingleTerminalActionTable(Map<STATE, Map<Word, Action>> actionTable)
+	{
+		Map<STATE, Map<Terminal<?>, Action>> result = new HashMap<>();
+		for(Entry<STATE, Map<Word, Action>> e : actionTable.entrySet())
+		{
+			Map<Terminal<?>, Action> actions = new HashMap<>();
+			for(Entry<Word, Action> action : e.getValue().entrySet())
+				if(action.getKey().getLength() == 1)
+					actions.put(action.getKey().getTerminals().get(0), action.getValue());
+			result.put(e.getKey(), Map.copyOf(actions));
+		}
+		return Map.copyOf(result);
+	}
+
+	/**
+	 * Decision trees also work for parsers with adaptive lookahead
+	 * (see {@link LRkParserGenerator#generateAdaptive(net.haspamelodica.parser.grammar.ContextFreeGrammar, int)}),
+	 * where the lookaheads of a state may have different lengths, but no lookahead is a prefix of another lookahead of the same state.
+	 */
+	private static <STATE> Map<STATE, LookaheadDecisionTree> buildDecisionTrees(Map<STATE, Map<Word, Action>> actionTable)
+	{
+		Map<STATE, LookaheadDecisionTree> result = new HashMap<>();
+		for(Entry<STATE, Map<Word, Action>> e : actionTable.entrySet())
+			if(!e.getValue().isEmpty())
+				result.put(e.getKey(), LookaheadDecisionTree.build(e.getValue()));
+		return Map.copyOf(result);
+	}
+
+	/**
+	 * A state is consistent if the only action in it is a single reduction,
+	 * meaning that the lookahead doesn't have to be known to decide what to do.
+	 */
+	private static <STATE> Map<STATE, ReduceAction> findConsistentStateReductions(Map<STATE, Map<Word, Action>> actionTable)
+	{
+		Map<STATE, ReduceAction> result = new HashMap<>();
+		for(Entry<STATE, Map<Word, Action>> e : actionTable.entrySet())
+		{
+			Action onlyAction = null;
+			for(Action action : e.getValue().values())
+			{
+				if(action.getType() == ActionType.ERROR)
+					continue;
+				if(onlyAction == null)
+					onlyAction = action;
+				else if(!onlyAction.equals(action))
+				{
+					onlyAction = null;
+					break;
+				}
+			}
+			if(onlyAction != null && onlyAction.getType() == ActionType.REDUCE)
+				result.put(e.getKey(), (ReduceAction) onlyAction);
+		}
+		return Map.copyOf(result);
 	}
 
 	private <A, B, C> Map<A, Map<B, C>> deepCopy(Map<A, Map<B, C>> actionTable)
@@ -38,7 +116,24 @@ public class GenericLRkParser<STATE> implements Parser
 	@Override
 	public InnerNode parse(TokenStream tokens) throws ParseException
 	{
-		return new LRkParserExecution<>(this, tokens).parse();
+		return (InnerNode) parse(tokens, TreeBuildingListener.INSTANCE);
+	}
+	@Override
+	public <V> V parse(TokenStream tokens, ReductionListener<V> listener) throws ParseException
+	{
+		return new LRkParserExecution<>(this, tokens, listener).parse();
+	}
+
+	/**
+	 * The result of the returned session is always an {@link InnerNode}.
+	 */
+	public PushParser<ASTNode<?>> newSession()
+	{
+		return newSession(TreeBuildingListener.INSTANCE);
+	}
+	public <V> PushParser<V> newSession(ReductionListener<V> listener)
+	{
+		return new LRkPushParser<>(this, listener);
 	}
 
 	public STATE getInitialState()
@@ -57,10 +152,56 @@ public class GenericLRkParser<STATE> implements Parser
 	{
 		return actionTable;
 	}
+	/**
+	 * For parsers with adaptive lookahead, this is the length of the longest lookahead of any state.
+	 */
 	public int getLookaheadSize()
 	{
 		return lookaheadSize;
 	}
+	/**
+	 * Returns <code>null</code> if the lookahead size is 0 or 1; in that case, there are no decision trees.
+	 * Otherwise, returns the decision tree of the given state, or <code>null</code> if the state has no actions at all.
+	 */
+	public LookaheadDecisionTree getDecisionTree(STATE state)
+	{
+		return decisionTrees.get(state);
+	}
+	/**
+	 * Returns the action for the given lookahead, or an {@link ErrorAction} if there is none.
+	 * The given lookahead has to have {@link #getLookaheadSize()} terminals, but for lookahead sizes greater than 1,
+	 * only as many are looked at as needed to decide the action.
+	 */
+	public Action lookupAction(STATE state, Word lookahead)
+	{
+		if(lookaheadSize == 1)
+			return lookupAction(state, lookahead.getTerminals().get(0));
+		if(lookaheadSize == 0)
+			return actionTable.getOrDefault(state, Collections.emptyMap()).getOrDefault(lookahead, ErrorAction.INSTANCE);
+		LookaheadDecisionTree decisionTree = decisionTrees.get(state);
+		for(int position = 0; decisionTree != null; position ++)
+		{
+			if(decisionTree.isLeaf())
+				return decisionTree.getAction();
+			decisionTree = decisionTree.getChild(lookahead.getTerminals().get(position));
+		}
+		return ErrorAction.INSTANCE;
+	}
+	/**
+	 * Returns the action for the given single-terminal lookahead, or an {@link ErrorAction} if there is none.
+	 * May only be called if the lookahead size is 1.
+	 */
+	public Action lookupAction(STATE state, Terminal<?> lookahead)
+	{
+		return singleTerminalActionTable.getOrDefault(state, Collections.emptyMap()).getOrDefault(lookahead, ErrorAction.INSTANCE);
+	}
+	/**
+	 * Returns <code>null</code> if the given state isn't consistent.
+	 */
+	public ReduceAction getConsistentStateReduction(STATE state)
+	{
+		return consistentStateReductions.get(state);
+	}
 
 	@Override
 	public int hashCode()
@@ -13,6 +13,9 @@ public class Item
 	private final boolean	isFinished;
 	private final Symbol	nextSymbol;
 
+	// items are hashed over and over while generating automata
+	private final int hashCode;
+
 	public Item(Production production, int markerPosition)
 	{
 		List<Symbol> rhsSymbols = production.getRhs().getSymbols();
@@ -23,6 +26,7 @@ public class Item
 
 		this.isFinished = markerPosition == rhsSymbols.size();
 		this.nextSymbol = isFinished ? null : rhsSymbols.get(markerPosition);
+		this.hashCode = calculateHashCode();
 	}
 
 	public Production getProduction()
@@ -73,6 +77,10 @@ public class Item
 
 	@Override
 	public int hashCode()
+	{
+		return hashCode;
+	}
+	private int calculateHashCode()
 	{
 		final int prime = 31;
 		int result = 1;
@@ -90,6 +98,8 @@ public class Item
 		if(getClass() != obj.getClass())
 			return false;
 		Item other = (Item) obj;
+		if(hashCode != other.hashCode)
+			return false;
 		if(markerPosition != other.markerPosition)
 			return false;
 		if(production == null)
@@ -0,0 +1,92 @@
+package net.haspamelodica.parser.parser.lrk;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.haspamelodica.parser.grammar.ContextFreeGrammar;
+import net.haspamelodica.parser.grammar.Production;
+import net.haspamelodica.parser.grammar.Terminal;
+
+/**
+ * Numbers all LR(0) items of a grammar: the items of a production get consecutive IDs, ordered by marker position.
+ * This way, advancing the marker of an unfinished item just increments its ID.
+ * <p>
+ * Also numbers all terminals of the grammar, {@link Terminal#EOF} included, for {@link TerminalWordSet}s.
+ */
+public class ItemNumbering
+{
+	private final List<Item>				itemsById;
+	private final Map<Production, Integer>	initialItemIds;
+
+	private final List<Terminal<?>>			terminalsById;
+	private final Map<Terminal<?>, Integer>	idsByTerminal;
+	private final List<Word>				wordsByTerminalId;
+
+	public ItemNumbering(ContextFreeGrammar grammar)
+	{
+		List<Item> itemsById = new ArrayList<>();
+		Map<Production, Integer> initialItemIds = new HashMap<>();
+		for(Production production : grammar.getProductions())
+		{
+			initialItemIds.put(production, itemsById.size());
+			for(int markerPosition = 0; markerPosition <= production.getRhs().getSymbols().size(); markerPosition ++)
+				itemsById.add(new Item(production, markerPosition));
+		}
+		this.itemsById = List.copyOf(itemsById);
+		this.initialItemIds = Map.copyOf(initialItemIds);
+
+		List<Terminal<?>> terminalsById = new ArrayList<>();
+		terminalsById.add(Terminal.EOF);
+		for(Terminal<?> terminal : grammar.getAllTerminals())
+			if(!terminal.equals(Terminal.EOF))
+				terminalsById.add(terminal);
+		this.terminalsById = List.copyOf(terminalsById);
+		Map<Terminal<?>, Integer> idsByTerminal = new HashMap<>();
+		for(int i = 0; i < terminalsById.size(); i ++)
+			idsByTerminal.put(terminalsById.get(i), i);
+		this.idsByTerminal = Map.copyOf(idsByTerminal);
+		this.wordsByTerminalId = terminalsById.stream().map(t -> new Word(t)).toList();
+	}
+
+	public int getItemCount()
+	{
+		return itemsById.size();
+	}
+	public Item getItem(int id)
+	{
+		return itemsById.get(id);
+	}
+	/**
+	 * Returns -1 if the given item doesn't belong to the grammar.
+	 */
+	public int getId(Item item)
+	{
+		Integer initialItemId = initialItemIds.get(item.getProduction());
+		return initialItemId == null ? -1 : initialItemId + item.getMarkerPosition();
+	}
+	public int getInitialItemId(Production production)
+	{
+		return initialItemIds.get(production);
+	}
+
+	public int getTerminalCount()
+	{
+		return terminalsById.size();
+	}
+	/**
+	 * Returns -1 if the given terminal doesn't belong to the grammar.
+	 */
+	public int getTerminalId(Terminal<?> terminal)
+	{
+		return idsByTerminal.getOrDefault(terminal, -1);
+	}
+	/**
+	 * Returns the word consisting only of the terminal with the given ID.
+	 */
+	public Word getTerminalWord(int terminalId)
+	{
+		return wordsByTerminalId.get(terminalId);
+	}
+}
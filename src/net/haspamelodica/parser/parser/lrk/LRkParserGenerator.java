@@ -1,138 +1,469 @@
 package net.haspamelodica.parser.parser.lrk;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiConsumer;
 
 import net.haspamelodica.parser.grammar.ContextFreeGrammar;
 import net.haspamelodica.parser.grammar.Production;
 import net.haspamelodica.parser.grammar.Symbol;
 import net.haspamelodica.parser.grammar.Symbol.SymbolType;
 import net.haspamelodica.parser.parser.lrk.action.Action;
+import net.haspamelodica.parser.parser.lrk.action.Action.ActionType;
 import net.haspamelodica.parser.parser.lrk.action.FinishAction;
 import net.haspamelodica.parser.parser.lrk.action.ReduceAction;
 import net.haspamelodica.parser.parser.lrk.action.ShiftAction;
 import net.haspamelodica.parser.parser.lrk.canonicalautomaton.CanonicalAutomaton;
 import net.haspamelodica.parser.parser.lrk.canonicalautomaton.CanonicalAutomatonGenerator;
+import net.haspamelodica.parser.parser.lrk.canonicalautomaton.ClosureCalculator;
+import net.haspamelodica.parser.parser.lrk.canonicalautomaton.LALRAutomatonGenerator;
+import net.haspamelodica.parser.parser.lrk.canonicalautomaton.MinimalLRAutomatonGenerator;
 import net.haspamelodica.parser.parser.lrk.canonicalautomaton.State;
-import net.haspamelodica.parser.parser.lrk.canonicalautomaton.Transition;
+import net.haspamelodica.parser.parser.lrk.glr.GLRParser;
+import net.haspamelodica.parser.parser.lrk.instrumentation.GeneratorInstrumentation;
+import net.haspamelodica.parser.parser.lrk.instrumentation.GeneratorListener;
+import net.haspamelodica.parser.parser.lrk.instrumentation.GeneratorPhase;
+import net.haspamelodica.parser.utils.ParallelUtils;
 
 public class LRkParserGenerator
 {
+	/**
+	 * Has to be increased whenever the generator may produce a different parser for the same grammar than before,
+	 * so that parsers cached by {@link net.haspamelodica.parser.caching.ParserCache} are regenerated.
+	 */
+	public static final int GENERATOR_VERSION = 1;
+
 	private final ContextFreeGrammar	grammar;
 	private final boolean				grammarWasNormalized;
 	private final int					lookaheadSize;
+	private final AutomatonType			automatonType;
 
-	private final ConcatKHelper			concatKHelper;
-	private final CanonicalAutomaton	canonicalAutomaton;
+	private final GeneratorInstrumentation	instrumentation;
+	private final ConcatKHelper				concatKHelper;
+	// null for LALR, which doesn't use closures of LR(1) items
+	private final ClosureCalculator			closureCalculator;
+	private final CanonicalAutomaton		canonicalAutomaton;
 
 	private final Map<State, Map<Word, Action>> actionTable;
+	// collected from all states, so that all conflicts can be reported at once; concurrent because of parallel action calculation
+	private final Queue<Conflict> conflicts;
 
-	private LRkParserGenerator(ContextFreeGrammar grammar, int lookaheadSize)
+	private LRkParserGenerator(ContextFreeGrammar grammar, int lookaheadSize, AutomatonType automatonType, GeneratorListener listener)
 	{
-		this.grammar = grammar.normalize();
+		if(automatonType != AutomatonType.CANONICAL_LR && lookaheadSize > 1)
+			throw new IllegalArgumentException(automatonType + " automata are only supported for k <= 1, not for k=" + lookaheadSize);
 		this.grammarWasNormalized = !grammar.isNormalized();
 		this.lookaheadSize = lookaheadSize;
+		// for k=0, the canonical automaton already is the LR(0) automaton
+		this.automatonType = lookaheadSize == 0 ? AutomatonType.CANONICAL_LR : automatonType;
+		this.instrumentation = new GeneratorInstrumentation(listener, lookaheadSize, this.automatonType);
 
-		this.concatKHelper = new ConcatKHelper(this.grammar, lookaheadSize);
-		this.canonicalAutomaton = CanonicalAutomatonGenerator.generate(this.grammar, lookaheadSize, concatKHelper);
+		ContextFreeGrammar normalizedGrammar = instrumentation.measure(GeneratorPhase.NORMALIZE, grammar::normalize);
+		this.grammar = normalizedGrammar;
+		this.concatKHelper = instrumentation.measure(GeneratorPhase.FIRST_K, () -> new ConcatKHelper(normalizedGrammar, lookaheadSize));
+		instrumentation.beginPhase(GeneratorPhase.AUTOMATON);
+		try
+		{
+			this.closureCalculator = this.automatonType == AutomatonType.LALR ? null : new ClosureCalculator(normalizedGrammar, concatKHelper);
+			this.canonicalAutomaton = switch(this.automatonType)
+			{
+				case CANONICAL_LR -> CanonicalAutomatonGenerator.generate(normalizedGrammar, lookaheadSize, closureCalculator);
+				case LALR -> LALRAutomatonGenerator.generate(normalizedGrammar, concatKHelper);
+				case MINIMAL_LR -> MinimalLRAutomatonGenerator.generate(normalizedGrammar, closureCalculator);
+			};
+		} catch(RuntimeException | Error e)
+		{
+			instrumentation.abortPhase();
+			throw e;
+		}
+		instrumentation.endPhase();
 
 		this.actionTable = new HashMap<>();
+		this.conflicts = new ConcurrentLinkedQueue<>();
 	}
 
 	public static LRkParser generate(ContextFreeGrammar grammar, int lookaheadSize)
 	{
-		return new LRkParserGenerator(grammar, lookaheadSize).generate();
+		return generate(grammar, lookaheadSize, AutomatonType.CANONICAL_LR);
+	}
+	public static LRkParser generate(ContextFreeGrammar grammar, int lookaheadSize, AutomatonType automatonType)
+	{
+		return generate(grammar, lookaheadSize, automatonType, GeneratorListener.NONE);
+	}
+	/**
+	 * The given listener is notified about each phase of generation and gets statistics about the result.
+	 */
+	public static LRkParser generate(ContextFreeGrammar grammar, int lookaheadSize, AutomatonType automatonType, GeneratorListener listener)
+	{
+		return new LRkParserGenerator(grammar, lookaheadSize, automatonType, listener).generate();
+	}
+
+	/**
+	 * Unlike {@link #generate(ContextFreeGrammar, int)}, this doesn't fail on conflicts, but keeps all conflicting actions.
+	 * The resulting parser works for all context-free grammars, so the lookahead size only influences efficiency.
+	 */
+	public static GLRParser<State> generateGLR(ContextFreeGrammar grammar, int lookaheadSize)
+	{
+		return generateGLR(grammar, lookaheadSize, AutomatonType.CANONICAL_LR);
+	}
+	public static GLRParser<State> generateGLR(ContextFreeGrammar grammar, int lookaheadSize, AutomatonType automatonType)
+	{
+		return generateGLR(grammar, lookaheadSize, automatonType, GeneratorListener.NONE);
+	}
+	public static GLRParser<State> generateGLR(ContextFreeGrammar grammar, int lookaheadSize, AutomatonType automatonType, GeneratorListener listener)
+	{
+		return new LRkParserGenerator(grammar, lookaheadSize, automatonType, listener).generateGLR();
+	}
+
+	/**
+	 * Generates an LR(1) parser which uses longer lookaheads, up to <code>maxLookaheadSize</code>, only in states and for lookaheads where LR(1) has conflicts.
+	 * In those states, the action is decided by the shortest lookahead which is enough to resolve the conflict,
+	 * so the parser only reads more than one token of lookahead where needed.
+	 * <p>
+	 * The longer lookaheads are calculated from the paths through the LR(1) automaton, not from an LR(k) automaton.
+	 * This means that grammars which are LR(k) only because the LR(k) automaton has more states than the LR(1) automaton are rejected.
+	 */
+	public static LRkParser generateAdaptive(ContextFreeGrammar grammar, int maxLookaheadSize)
+	{
+		return generateAdaptive(grammar, maxLookaheadSize, AutomatonType.CANONICAL_LR);
+	}
+	public static LRkParser generateAdaptive(ContextFreeGrammar grammar, int maxLookaheadSize, AutomatonType automatonType)
+	{
+		return generateAdaptive(grammar, maxLookaheadSize, automatonType, GeneratorListener.NONE);
+	}
+	public static LRkParser generateAdaptive(ContextFreeGrammar grammar, int maxLookaheadSize, AutomatonType automatonType, GeneratorListener listener)
+	{
+		if(maxLookaheadSize < 1)
+			throw new IllegalArgumentException("Adaptive lookahead needs a maximum lookahead of at least 1, not " + maxLookaheadSize);
+		return new LRkParserGenerator(grammar, 1, automatonType, listener).generateAdaptive(maxLookaheadSize);
 	}
 
 	private LRkParser generate()
 	{
-		for(State state : canonicalAutomaton.getStates())
+		instrumentation.beginPhase(GeneratorPhase.ACTION_TABLE);
+		try
 		{
-			Map<Word, Action> actionsCurrentState = new HashMap<>();
-			for(LookaheadItem item : state.getItems())
+			// the actions of each state are independent of other states, so they are calculated in parallel
+			List<State> states = new ArrayList<>(canonicalAutomaton.getStates());
+			List<Map<Word, Action>> actionsPerState = ParallelUtils.map(states, this::calculateActions);
+			for(int i = 0; i < states.size(); i ++)
+				actionTable.put(states.get(i), actionsPerState.get(i));
+		} catch(RuntimeException | Error e)
+		{
+			instrumentation.abortPhase();
+			throw e;
+		}
+		instrumentation.endPhase();
+		finishInstrumentation(conflicts.size());
+		if(!conflicts.isEmpty())
+			throw createConflictException();
+
+		return new LRkParser(canonicalAutomaton, grammarWasNormalized ? grammar.getStartSymbol() : null, actionTable, lookaheadSize);
+	}
+
+	private GLRParser<State> generateGLR()
+	{
+		Map<State, Map<Word, List<Action>>> glrActionTable = new HashMap<>();
+		instrumentation.beginPhase(GeneratorPhase.ACTION_TABLE);
+		try
+		{
+			List<State> states = new ArrayList<>(canonicalAutomaton.getStates());
+			List<Map<Word, List<Action>>> actionsPerState = ParallelUtils.map(states, this::calculateGLRActions);
+			for(int i = 0; i < states.size(); i ++)
+				glrActionTable.put(states.get(i), actionsPerState.get(i));
+		} catch(RuntimeException | Error e)
+		{
+			instrumentation.abortPhase();
+			throw e;
+		}
+		instrumentation.endPhase();
+		int conflictCount = 0;
+		for(Map<Word, List<Action>> actionsCurrentState : glrActionTable.values())
+			for(List<Action> actions : actionsCurrentState.values())
+				if(actions.size() > 1)
+					conflictCount ++;
+		finishInstrumentation(conflictCount);
+
+		return new GLRParser<>(canonicalAutomaton.getInitialState(), canonicalAutomaton.getGotoTable(), glrActionTable, lookaheadSize);
+	}
+
+	private Map<Word, Action> calculateActions(State state)
+	{
+		Map<Word, Action> actionsCurrentState = new HashMap<>();
+		Set<Word> conflictLookaheads = new HashSet<>();
+		forEachAction(state, (lookahead, action) ->
+		{
+			Action oldAction = actionsCurrentState.put(lookahead, action);
+			if(oldAction != null && !action.equals(oldAction))
+				conflictLookaheads.add(lookahead);
+		});
+		for(Word lookahead : conflictLookaheads)
+			conflicts.add(new Conflict(state, lookahead));
+		return actionsCurrentState;
+	}
+
+	private Map<Word, List<Action>> calculateGLRActions(State state)
+	{
+		Map<Word, List<Action>> actionsCurrentState = new HashMap<>();
+		forEachAction(state, (lookahead, action) ->
+		{
+			List<Action> actions = actionsCurrentState.computeIfAbsent(lookahead, l -> new ArrayList<>(1));
+			if(!actions.contains(action))
+				actions.add(action);
+		});
+		return actionsCurrentState;
+	}
+
+	private LRkParser generateAdaptive(int maxLookaheadSize)
+	{
+		// index i is for lookahead size i + 2
+		List<LongLookaheadCalculator> longLookaheadCalculators = new ArrayList<>();
+		int usedLookaheadSize = 1;
+		// including the ones resolved by longer lookaheads
+		int conflictCount = 0;
+		instrumentation.beginPhase(GeneratorPhase.ACTION_TABLE);
+		try
+		{
+			for(State state : canonicalAutomaton.getStates())
 			{
-				Item itemNoLookahead = item.getItem();
-				Production production = itemNoLookahead.getProduction();
-				if(itemNoLookahead.isFinished())
-				{
-					Action action;
-					if(production.getLhs().equals(grammar.getStartSymbol()))
-						action = new FinishAction(production, grammarWasNormalized);
+				Map<Word, Set<Action>> actionsPerLookahead = new HashMap<>();
+				forEachAction(state, (lookahead, action) -> actionsPerLookahead.computeIfAbsent(lookahead, l -> new HashSet<>()).add(action));
+				Map<Word, Action> actionsCurrentState = new HashMap<>();
+				for(Entry<Word, Set<Action>> e : actionsPerLookahead.entrySet())
+					if(e.getValue().size() == 1)
+						actionsCurrentState.put(e.getKey(), e.getValue().iterator().next());
 					else
-						action = new ReduceAction(production);
-					for(Word lookahead : item.getAdmissibleLookaheads())
-						setActionTableEntry(state, actionsCurrentState, action, lookahead);
-				} else
-				{
-					Symbol nextSymbol = itemNoLookahead.getNextSymbol();
-					if(nextSymbol.getType() != SymbolType.TERMINAL)
-						continue;
-
-					for(Word lookahead : getItemLookaheads(item))
-						setActionTableEntry(state, actionsCurrentState, ShiftAction.INSTANCE, lookahead);
-				}
+					{
+						conflictCount ++;
+						usedLookaheadSize = Math.max(usedLookaheadSize,
+								resolveConflict(state, e.getKey(), maxLookaheadSize, longLookaheadCalculators, actionsCurrentState));
+					}
+				actionTable.put(state, actionsCurrentState);
 			}
-			actionTable.put(state, actionsCurrentState);
+		} catch(RuntimeException | Error e)
+		{
+			instrumentation.abortPhase();
+			throw e;
 		}
+		instrumentation.endPhase();
+		finishInstrumentation(conflictCount);
+		if(!conflicts.isEmpty())
+			throw new IllegalArgumentException("The given grammar can't be parsed with adaptive lookahead of at most " + maxLookaheadSize
+					+ ": " + describeConflicts());
 
-		return new LRkParser(canonicalAutomaton, grammarWasNormalized ? grammar.getStartSymbol() : null, actionTable, lookaheadSize);
+		return new LRkParser(canonicalAutomaton, grammarWasNormalized ? grammar.getStartSymbol() : null, actionTable, usedLookaheadSize);
 	}
 
-	private void setActionTableEntry(State state, Map<Word, Action> actionsCurrentState, Action action, Word lookahead)
+	/**
+	 * Tries increasing lookahead sizes until the lookaheads starting with the given conflicting lookahead of length 1 decide the action.
+	 * Returns the length of the longest lookahead added to the given actions.
+	 * If no lookahead size up to <code>maxLookaheadSize</code> decides the action, the conflict is recorded and 1 is returned.
+	 */
+	private int resolveConflict(State state, Word conflictLookahead, int maxLookaheadSize,
+			List<LongLookaheadCalculator> longLookaheadCalculators, Map<Word, Action> actionsCurrentState)
 	{
-		Action oldAction = actionsCurrentState.put(lookahead, action);
-		if(oldAction != null && !action.equals(oldAction))
+		for(int longLookaheadSize = 2; longLookaheadSize <= maxLookaheadSize; longLookaheadSize ++)
 		{
-			boolean hasMoreItems = false;
-			String stateString = "";
+			if(longLookaheadCalculators.size() < longLookaheadSize - 1)
+				longLookaheadCalculators.add(new LongLookaheadCalculator(grammar, canonicalAutomaton, longLookaheadSize));
+			LongLookaheadCalculator longLookaheadCalculator = longLookaheadCalculators.get(longLookaheadSize - 2);
+
+			Map<Word, Action> actionsPerLongLookahead = new HashMap<>();
+			boolean conflict = false;
 			for(LookaheadItem item : state.getItems())
-				if((item.getItem().isFinished() || item.getItem().getNextSymbol().getType() == SymbolType.TERMINAL)
-						&& getItemLookaheads(item).contains(lookahead))
-					stateString += item.toString() + "\n";
-				else
-					hasMoreItems = true;
-			if(hasMoreItems)
-				stateString += "[...]\n";
-			List<Symbol> ambiguousInput = findAmbiguousInput(state, lookahead, oldAction, action);
-			throw new IllegalArgumentException("The given grammar is not LR(" + lookaheadSize + "): Conflict in:\n" + stateString
-					+ (lookaheadSize > 0 ? "for lookahead " + lookahead : "") + ". Example: " + ambiguousInput);
+			{
+				Action action = getAction(item.getItem());
+				if(action == null || !getItemLookaheads(item).contains(conflictLookahead))
+					continue;
+				for(Word lookahead : longLookaheadCalculator.calculateItemLookaheads(state, item))
+					if(lookahead.prefix(1).equals(conflictLookahead))
+					{
+						Action oldAction = actionsPerLongLookahead.put(lookahead, action);
+						conflict |= oldAction != null && !oldAction.equals(action);
+					}
+			}
+			if(!conflict)
+				// no lookaheads are possible if the conflict only exists in unreachable contexts
+				return actionsPerLongLookahead.isEmpty() ? 1 : addShortestDecidingLookaheads(actionsCurrentState, actionsPerLongLookahead, 1);
 		}
+
+		conflicts.add(new Conflict(state, conflictLookahead));
+		return 1;
 	}
 
-	private List<Symbol> findAmbiguousInput(State state, Word lookahead, Action oldAction, Action action)
+	/**
+	 * All given lookaheads have the same prefix of length <code>prefixLength</code> and don't conflict.
+	 * Adds the shortest prefixes of the given lookaheads which are enough to decide the action, so that no added lookahead is a prefix of another one.
+	 * Returns the length of the longest added lookahead.
+	 */
+	private static int addShortestDecidingLookaheads(Map<Word, Action> actionsCurrentState, Map<Word, Action> lookaheads, int prefixLength)
 	{
-		//This is very inefficient, but that doesn't matter much because this method is only called on a conflict.
-		for(int maxDepth = 0;; maxDepth ++)
+		Entry<Word, Action> someEntry = lookaheads.entrySet().iterator().next();
+		if(lookaheads.values().stream().allMatch(someEntry.getValue()::equals))
 		{
-			List<Symbol> result = searchState(canonicalAutomaton.getInitialState(), state, new HashSet<>(), maxDepth);
-			if(result != null)
-				return List.copyOf(result);
+			actionsCurrentState.put(someEntry.getKey().prefix(prefixLength), someEntry.getValue());
+			return prefixLength;
 		}
+		Map<Word, Map<Word, Action>> lookaheadsPerLongerPrefix = new HashMap<>();
+		for(Entry<Word, Action> e : lookaheads.entrySet())
+			lookaheadsPerLongerPrefix.computeIfAbsent(e.getKey().prefix(prefixLength + 1), p -> new HashMap<>()).put(e.getKey(), e.getValue());
+		int longestAddedLookahead = prefixLength;
+		for(Map<Word, Action> lookaheadsWithSameLongerPrefix : lookaheadsPerLongerPrefix.values())
+			longestAddedLookahead = Math.max(longestAddedLookahead,
+					addShortestDecidingLookaheads(actionsCurrentState, lookaheadsWithSameLongerPrefix, prefixLength + 1));
+		return longestAddedLookahead;
 	}
 
-	private List<Symbol> searchState(State currentState, State searchedState, Set<State> seenStates, int maxDepth)
+	private void forEachAction(State state, BiConsumer<Word, Action> actionConsumer)
 	{
-		if(maxDepth <= 0)
-			return null;
-		if(currentState.equals(searchedState))
-			return new ArrayList<>();
-		if(!seenStates.add(currentState))
+		for(LookaheadItem item : state.getItems())
+		{
+			Action action = getAction(item.getItem());
+			if(action == null)
+				continue;
+			Set<Word> lookaheads = item.getItem().isFinished() ? item.getAdmissibleLookaheads() : getItemLookaheads(item);
+			for(Word lookahead : lookaheads)
+				actionConsumer.accept(lookahead, action);
+		}
+	}
+
+	/**
+	 * Returns <code>null</code> for items which don't cause any action, meaning items whose next symbol is a nonterminal.
+	 */
+	private Action getAction(Item item)
+	{
+		Production production = item.getProduction();
+		if(item.isFinished())
+		{
+			if(production.getLhs().equals(grammar.getStartSymbol()))
+				return new FinishAction(production, grammarWasNormalized);
+			return new ReduceAction(production);
+		}
+		if(item.getNextSymbol().getType() != SymbolType.TERMINAL)
 			return null;
-		for(Transition t : canonicalAutomaton.getTransitionsFromState(currentState))
+		return ShiftAction.INSTANCE;
+	}
+
+	private void finishInstrumentation(int conflictCount)
+	{
+		instrumentation.finish(canonicalAutomaton, conflictCount, closureCalculator == null ? null : closureCalculator.getCacheStatistics());
+	}
+
+	private IllegalArgumentException createConflictException()
+	{
+		String conflictsDescription = describeConflicts();
+		if(automatonType == AutomatonType.LALR)
 		{
-			List<Symbol> searchResult = searchState(t.getTarget(), searchedState, seenStates, maxDepth - 1);
-			if(searchResult != null)
-			{
-				searchResult.add(0, t.getInput());
-				return searchResult;
-			}
+			if(conflicts.stream().allMatch(this::isReduceReduceConflict) && isCanonicalAutomatonConflictFree())
+				return new IllegalArgumentException("The given grammar is LR(" + lookaheadSize + "), but not LALR(" + lookaheadSize
+						+ "): Merging states with the same core introduced reduce-reduce conflicts. " + conflictsDescription);
+			return new IllegalArgumentException("The given grammar is not LALR(" + lookaheadSize + "): " + conflictsDescription);
 		}
-		seenStates.remove(currentState);
-		return null;
+		return new IllegalArgumentException("The given grammar is not LR(" + lookaheadSize + "): " + conflictsDescription);
+	}
+
+	/**
+	 * Describes all conflicts, the ones with the shortest examples first.
+	 */
+	private String describeConflicts()
+	{
+		CounterexampleFinder counterexampleFinder = new CounterexampleFinder(grammar, canonicalAutomaton, concatKHelper);
+		List<Conflict> sortedConflicts = new ArrayList<>(conflicts);
+		Map<State, List<Symbol>> examples = new HashMap<>();
+		for(Conflict conflict : sortedConflicts)
+			examples.computeIfAbsent(conflict.state(), counterexampleFinder::findShortestInput);
+		sortedConflicts.sort(Comparator
+				.<Conflict> comparingInt(c -> examples.get(c.state()).size())
+				.thenComparing(c -> examples.get(c.state()).toString())
+				.thenComparing(c -> c.lookahead().toString()));
+
+		StringBuilder result = new StringBuilder();
+		if(sortedConflicts.size() > 1)
+			result.append(sortedConflicts.size()).append(" conflicts.\n");
+		for(Conflict conflict : sortedConflicts)
+			result.append(describeConflict(conflict, counterexampleFinder));
+		return result.toString();
+	}
+
+	private String describeConflict(Conflict conflict, CounterexampleFinder counterexampleFinder)
+	{
+		List<LookaheadItem> conflictingItems = getConflictingItems(conflict);
+		String stateString = "";
+		for(LookaheadItem item : conflictingItems)
+			stateString += item.toString() + "\n";
+		if(conflictingItems.size() < conflict.state().getItems().size())
+			stateString += "[...]\n";
+		List<Symbol> ambiguousInput = counterexampleFinder.findShortestInput(conflict.state());
+		String derivations = "";
+		for(LookaheadItem item : conflictingItems)
+			derivations += "  " + describeAction(item.getItem()) + ": " + counterexampleFinder.findDerivation(conflict.state(), item, conflict.lookahead()) + "\n";
+		return "Conflict in:\n" + stateString + (lookaheadSize > 0 ? "for lookahead " + conflict.lookahead() : "") + ". Example: " + ambiguousInput
+				+ "\nDerivations:\n" + derivations;
+	}
+
+	private List<LookaheadItem> getConflictingItems(Conflict conflict)
+	{
+		List<LookaheadItem> conflictingItems = new ArrayList<>();
+		for(LookaheadItem item : conflict.state().getItems())
+			if(getAction(item.getItem()) != null && getItemLookaheads(item).contains(conflict.lookahead()))
+				conflictingItems.add(item);
+		return conflictingItems;
+	}
+
+	private String describeAction(Item item)
+	{
+		Action action = getAction(item);
+		return switch(action.getType())
+		{
+			case SHIFT -> "shift";
+			case REDUCE -> "reduce " + item.getProduction();
+			case FINISH -> "finish " + item.getProduction();
+			case ERROR -> "error";
+		};
+	}
+
+	private boolean isReduceReduceConflict(Conflict conflict)
+	{
+		return getConflictingItems(conflict).stream().map(LookaheadItem::getItem).map(this::getAction).allMatch(LRkParserGenerator::isReduction);
+	}
+
+	private static boolean isReduction(Action action)
+	{
+		return action.getType() == ActionType.REDUCE || action.getType() == ActionType.FINISH;
+	}
+
+	/**
+	 * Merging states only ever introduces reduce-reduce conflicts, and each conflict of the canonical automaton is one of the LALR automaton as well.
+	 * So if all conflicts are reduce-reduce conflicts, the canonical automaton can only have reduce-reduce conflicts,
+	 * and only finished items have to be checked; no action table and no conflict descriptions are needed.
+	 * <p>
+	 * The lookback and includes relations merge exactly the left contexts which would be needed to decide this without the canonical automaton,
+	 * so it still has to be generated. This is expensive, but only happens if generation fails anyway.
+	 */
+	private boolean isCanonicalAutomatonConflictFree()
+	{
+		CanonicalAutomaton canonicalLRAutomaton = CanonicalAutomatonGenerator.generate(grammar, lookaheadSize, new ClosureCalculator(grammar, concatKHelper));
+		for(State state : canonicalLRAutomaton.getStates())
+		{
+			Map<Word, Production> reducedProductions = new HashMap<>();
+			for(LookaheadItem item : state.getItems())
+				if(item.getItem().isFinished())
+					for(Word lookahead : item.getAdmissibleLookaheads())
+					{
+						Production otherProduction = reducedProductions.put(lookahead, item.getItem().getProduction());
+						if(otherProduction != null && !otherProduction.equals(item.getItem().getProduction()))
+							return false;
+					}
+		}
+		return true;
 	}
 
 	private Set<Word> getItemLookaheads(LookaheadItem item)
@@ -141,4 +472,7 @@ public class LRkParserGenerator
 		List<Symbol> rhsSymbolsAfterMarker = rhsSymbols.subList(item.getItem().getMarkerPosition(), rhsSymbols.size());
 		return concatKHelper.concatK(concatKHelper.concatKSymbols(rhsSymbolsAfterMarker), item.getAdmissibleLookaheads());
 	}
+
+	private record Conflict(State state, Word lookahead)
+	{}
 }
@@ -0,0 +1,232 @@
+package net.haspamelodica.parser.parser.lrk;
+
+import java.util.Collections;
+import java.util.Stack;
+import java.util.function.Supplier;
+
+import net.haspamelodica.parser.ast.Token;
+import net.haspamelodica.parser.grammar.Symbol;
+import net.haspamelodica.parser.parser.ParseException;
+import net.haspamelodica.parser.parser.PushParser;
+import net.haspamelodica.parser.parser.ReductionListener;
+import net.haspamelodica.parser.parser.lrk.action.Action;
+import net.haspamelodica.parser.parser.lrk.action.ErrorAction;
+import net.haspamelodica.parser.parser.lrk.action.FinishAction;
+import net.haspamelodica.parser.parser.lrk.action.ReduceAction;
+
+/**
+ * The LR(k) driver. It keeps its stacks between calls and processes tokens as far as possible,
+ * only stopping when it needs to know more lookahead than has been offered.
+ */
+public class LRkPushParser<STATE, V> implements PushParser<V>
+{
+	private final GenericLRkParser<STATE>	lrkParser;
+	private final ReductionListener<V>		listener;
+	private final Supplier<String>			locationDescriptions;
+
+	// the state stack and the value stack always have the same size
+	private final Stack<STATE>	stateStack;
+	private final Stack<V>		valueStack;
+
+	private final LookaheadBuffer lookaheadTokens;
+
+	private boolean	readyForInput;
+	private boolean	finished;
+	private V		result;
+
+	public LRkPushParser(GenericLRkParser<STATE> lrkParser, ReductionListener<V> listener)
+	{
+		this(lrkParser, listener, () -> null);
+	}
+	/**
+	 * <code>locationDescriptions</code> is used for error messages and may return <code>null</code>.
+	 */
+	public LRkPushParser(GenericLRkParser<STATE> lrkParser, ReductionListener<V> listener, Supplier<String> locationDescriptions)
+	{
+		this.lrkParser = lrkParser;
+		this.listener = listener;
+		this.locationDescriptions = locationDescriptions;
+
+		this.stateStack = new Stack<>();
+		this.valueStack = new Stack<>();
+		stateStack.push(lrkParser.getInitialState());
+		valueStack.push(null);
+
+		this.lookaheadTokens = new LookaheadBuffer(lrkParser.getLookaheadSize());
+		this.readyForInput = true;
+	}
+
+	@Override
+	public boolean isReadyForInput()
+	{
+		return readyForInput;
+	}
+
+	@Override
+	public void offer(Token<?> token) throws ParseException
+	{
+		if(token == null)
+			throw new IllegalArgumentException("EOF has to be signalled using finish()");
+		checkReadyForInput();
+		lookaheadTokens.add(token);
+		run(false);
+	}
+
+	/**
+	 * For k=0, the result may already be known before EOF; in that case, this method may be called
+	 * even though {@link #isReadyForInput()} returns false.
+	 */
+	@Override
+	public V finish() throws ParseException
+	{
+		if(!finished)
+		{
+			checkReadyForInput();
+			run(true);
+		}
+		return result;
+	}
+
+	private void checkReadyForInput()
+	{
+		if(!readyForInput)
+			throw new IllegalStateException("Session already finished or failed");
+	}
+
+	/**
+	 * Runs until more input is needed or the parse is finished.
+	 * Without lookahead, the parse may finish before EOF.
+	 * If <code>eof</code> is true, all input has been offered, so the parse always finishes.
+	 */
+	private void run(boolean eof) throws ParseException
+	{
+		try
+		{
+			if(runUnchecked(eof))
+			{
+				finished = true;
+				readyForInput = false;
+			}
+		} catch(ParseException | RuntimeException e)
+		{
+			readyForInput = false;
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns whether the parse is finished; if so, {@link #result} has been set.
+	 */
+	private boolean runUnchecked(boolean eof) throws ParseException
+	{
+		for(;;)
+		{
+			STATE currentState = stateStack.peek();
+			// consistent states don't need the lookahead, so don't wait for it
+			Action action = lrkParser.getConsistentStateReduction(currentState);
+			if(action == null)
+			{
+				action = lookupAction(currentState, eof);
+				if(action == null)
+					return false;
+			}
+			switch(action.getType())
+			{
+				case SHIFT:
+					if(!enforceLookaheadSize(1, eof))
+						return false;
+					Token<?> token = consumeToken();
+					valueStack.push(listener.onShift(token));
+					stateStack.push(lookupGoto(currentState, token.getSymbol()));
+					break;
+				case REDUCE:
+					ReduceAction reduceAction = (ReduceAction) action;
+
+					int oldStackSize = stateStack.size();
+					int newStackSize = oldStackSize - reduceAction.getRhsSize();
+					V newValue = listener.onReduce(reduceAction.getProduction(), valueStack.subList(newStackSize, oldStackSize),
+							valueStack.subList(1, newStackSize));
+					stateStack.setSize(newStackSize);
+					valueStack.setSize(newStackSize);
+
+					stateStack.push(lookupGoto(stateStack.peek(), reduceAction.getProduction().getLhs()));
+					valueStack.push(newValue);
+					break;
+				case FINISH:
+					FinishAction finishAction = (FinishAction) action;
+					if(finishAction.dontIncludeStartSymbol())
+						result = valueStack.pop();
+					else
+					{
+						oldStackSize = stateStack.size();
+						newStackSize = oldStackSize - finishAction.getRhsSize();
+						result = listener.onReduce(finishAction.getProduction(), valueStack.subList(newStackSize, oldStackSize),
+								valueStack.subList(1, newStackSize));
+					}
+					return true;
+				case ERROR:
+					String locDesc = locationDescriptions.get();
+					if(!enforceLookaheadSize(1, eof))
+						return false;
+					token = consumeToken();
+					throw new ParseException((locDesc != null ? "Near " + locDesc + ": " : "") +
+							"Got " + (token == null ? "EOF" : token) + ", expected any of " + lrkParser.getActionTable().get(currentState).keySet());
+				default:
+					throw new IllegalStateException("Unknown enum constant: " + action.getType());
+			}
+		}
+	}
+
+	private STATE lookupGoto(STATE currentState, Symbol symbol)
+	{
+		return lrkParser.getGotoTable().getOrDefault(currentState, Collections.emptyMap()).get(symbol);
+	}
+
+	/**
+	 * Returns <code>null</code> if more input is needed.
+	 * For lookahead sizes greater than 1, only waits for as many lookahead tokens as needed to decide the action.
+	 */
+	private Action lookupAction(STATE currentState, boolean eof)
+	{
+		LookaheadDecisionTree decisionTree = lrkParser.getDecisionTree(currentState);
+		if(decisionTree == null)
+			return switch(lrkParser.getLookaheadSize())
+			{
+				// without lookahead, the buffer may still contain the token to be shifted next
+				case 0 -> lrkParser.lookupAction(currentState, Word.EPSILON);
+				case 1 -> enforceLookaheadSize(1, eof) ? lrkParser.lookupAction(currentState, lookaheadTokens.getTerminal(0)) : null;
+				// for lookahead sizes greater than 1, only states without any actions have no decision tree
+				default -> ErrorAction.INSTANCE;
+			};
+		for(int position = 0; !decisionTree.isLeaf(); position ++)
+		{
+			if(!enforceLookaheadSize(position + 1, eof))
+				return null;
+			decisionTree = decisionTree.getChild(lookaheadTokens.getTerminal(position));
+			if(decisionTree == null)
+				return ErrorAction.INSTANCE;
+		}
+		return decisionTree.getAction();
+	}
+
+	private Token<?> consumeToken()
+	{
+		return lookaheadTokens.poll();
+	}
+
+	/**
+	 * Returns false if there are less than <code>lookaheadSize</code> tokens available,
+	 * which can only happen if not all input has been offered yet.
+	 * After EOF, the lookahead is padded with EOF.
+	 */
+	private boolean enforceLookaheadSize(int lookaheadSize, boolean eof)
+	{
+		if(lookaheadTokens.size() >= lookaheadSize)
+			return true;
+		if(!eof)
+			return false;
+		while(lookaheadTokens.size() < lookaheadSize)
+			lookaheadTokens.add(null);
+		return true;
+	}
+}
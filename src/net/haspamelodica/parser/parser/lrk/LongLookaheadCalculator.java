@@ -0,0 +1,176 @@
+package net.haspamelodica.parser.parser.lrk;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+import net.haspamelodica.parser.grammar.ContextFreeGrammar;
+import net.haspamelodica.parser.grammar.Nonterminal;
+import net.haspamelodica.parser.grammar.Symbol;
+import net.haspamelodica.parser.grammar.Terminal;
+import net.haspamelodica.parser.parser.lrk.canonicalautomaton.CanonicalAutomaton;
+import net.haspamelodica.parser.parser.lrk.canonicalautomaton.State;
+import net.haspamelodica.parser.parser.lrk.canonicalautomaton.Transition;
+
+/**
+ * Calculates lookaheads of length k for the items of an automaton with lookahead 1, without building an LR(k) automaton.
+ * The lookaheads of an item are collected along all paths through the automaton leading to the item,
+ * keeping only those lookaheads which are compatible with the lookaheads of length 1 of the items along the way.
+ * This is exact for items whose state can only be reached from one context; otherwise, the result may contain too many lookaheads.
+ */
+class LongLookaheadCalculator
+{
+	private final ContextFreeGrammar	grammar;
+	private final ConcatKHelper			concatKHelper;
+	private final Set<Word>				eofLookahead;
+
+	private final Map<State, Map<Symbol, Set<State>>>	predecessors;
+	private final Map<State, Map<Item, LookaheadItem>>	itemsPerState;
+
+	// the lookaheads following a nonterminal in a state; only contains completely calculated entries
+	private final Map<FollowKey, Set<Word>> follows;
+
+	public LongLookaheadCalculator(ContextFreeGrammar grammar, CanonicalAutomaton automaton, int lookaheadSize)
+	{
+		this.grammar = grammar;
+		this.concatKHelper = new ConcatKHelper(grammar, lookaheadSize);
+		this.eofLookahead = Set.of(Word.repeat(Terminal.EOF, lookaheadSize));
+
+		this.predecessors = new HashMap<>();
+		for(Transition t : automaton.getTransitions())
+			predecessors.computeIfAbsent(t.getTarget(), s -> new HashMap<>()).computeIfAbsent(t.getInput(), i -> new HashSet<>()).add(t.getOrigin());
+		this.itemsPerState = new HashMap<>();
+		for(State state : automaton.getStates())
+		{
+			Map<Item, LookaheadItem> items = new HashMap<>();
+			for(LookaheadItem item : state.getItems())
+				items.put(item.getItem(), item);
+			itemsPerState.put(state, items);
+		}
+
+		this.follows = new HashMap<>();
+	}
+
+	/**
+	 * Returns the lookaheads of length k of the given item of the given state, including the symbols after the marker.
+	 */
+	public Set<Word> calculateItemLookaheads(State state, LookaheadItem item)
+	{
+		List<FollowKey> contextSources = getContextSources(state, item.getItem());
+		for(FollowKey source : contextSources)
+			if(!follows.containsKey(source))
+				calculateFollows(source);
+		return calculateItemLookaheads(item, contextSources);
+	}
+
+	private Set<Word> calculateItemLookaheads(LookaheadItem item, List<FollowKey> contextSources)
+	{
+		Set<Word> context;
+		if(item.getItem().getProduction().getLhs().equals(grammar.getStartSymbol()))
+			context = eofLookahead;
+		else
+		{
+			context = new HashSet<>();
+			for(FollowKey source : contextSources)
+				for(Word lookahead : follows.getOrDefault(source, Set.of()))
+					if(isCompatible(lookahead, item.getAdmissibleLookaheads()))
+						context.add(lookahead);
+		}
+		List<Symbol> rhs = item.getItem().getProduction().getRhs().getSymbols();
+		return concatKHelper.concatK(concatKHelper.concatKSymbols(rhs.subList(item.getItem().getMarkerPosition(), rhs.size())), context);
+	}
+
+	private static boolean isCompatible(Word lookahead, Set<Word> shortLookaheads)
+	{
+		return shortLookaheads.contains(lookahead.prefix(1));
+	}
+
+	/**
+	 * For an item <code>A -> alpha . beta</code>, returns the states <code>p</code> containing <code>A -> . alpha beta</code>
+	 * from which <code>alpha</code> leads to the given state, as keys for the lookaheads following <code>A</code> in <code>p</code>.
+	 */
+	private List<FollowKey> getContextSources(State state, Item item)
+	{
+		List<Symbol> alpha = item.getProduction().getRhs().getSymbols().subList(0, item.getMarkerPosition());
+		Set<State> origins = Set.of(state);
+		for(int i = alpha.size() - 1; i >= 0; i --)
+		{
+			Set<State> newOrigins = new HashSet<>();
+			for(State origin : origins)
+				newOrigins.addAll(predecessors.getOrDefault(origin, Map.of()).getOrDefault(alpha.get(i), Set.of()));
+			origins = newOrigins;
+		}
+
+		Item initialItem = new Item(item.getProduction(), 0);
+		Nonterminal lhs = item.getProduction().getLhs();
+		List<FollowKey> result = new ArrayList<>();
+		for(State origin : origins)
+			if(itemsPerState.get(origin).containsKey(initialItem))
+				result.add(new FollowKey(origin, lhs));
+		return result;
+	}
+
+	/**
+	 * The lookaheads following <code>A</code> in <code>p</code> are collected from all items <code>B -> gamma . A delta</code> in <code>p</code>.
+	 * Because these depend on the lookaheads following <code>B</code> in other states (or <code>p</code> itself),
+	 * all entries the given one depends on are calculated together as a fixed point.
+	 */
+	private void calculateFollows(FollowKey root)
+	{
+		Map<FollowKey, List<FollowDependency>> dependenciesPerKey = new HashMap<>();
+		Map<FollowKey, Set<FollowKey>> dependents = new HashMap<>();
+		Queue<FollowKey> keysToDiscover = new ArrayDeque<>();
+		keysToDiscover.add(root);
+		dependenciesPerKey.put(root, null);
+		for(FollowKey key = keysToDiscover.poll(); key != null; key = keysToDiscover.poll())
+		{
+			List<FollowDependency> dependencies = new ArrayList<>();
+			for(LookaheadItem item : itemsPerState.get(key.state()).values())
+				if(!item.getItem().isFinished() && item.getItem().getNextSymbol().equals(key.nonterminal()))
+				{
+					List<FollowKey> contextSources = getContextSources(key.state(), item.getItem());
+					dependencies.add(new FollowDependency(item, contextSources));
+					for(FollowKey source : contextSources)
+						if(!follows.containsKey(source))
+						{
+							dependents.computeIfAbsent(source, s -> new HashSet<>()).add(key);
+							if(!dependenciesPerKey.containsKey(source))
+							{
+								dependenciesPerKey.put(source, null);
+								keysToDiscover.add(source);
+							}
+						}
+				}
+			dependenciesPerKey.put(key, dependencies);
+		}
+
+		for(FollowKey key : dependenciesPerKey.keySet())
+			follows.put(key, new HashSet<>());
+		Queue<FollowKey> changedKeys = new ArrayDeque<>(dependenciesPerKey.keySet());
+		Set<FollowKey> changedKeysSet = new HashSet<>(changedKeys);
+		for(FollowKey key = changedKeys.poll(); key != null; key = changedKeys.poll())
+		{
+			changedKeysSet.remove(key);
+			Set<Word> follow = follows.get(key);
+			boolean changed = false;
+			// the lookaheads of B -> gamma A . delta, with the context of B -> gamma . A delta
+			for(FollowDependency dependency : dependenciesPerKey.get(key))
+				changed |= follow.addAll(calculateItemLookaheads(dependency.item().advanceMarker(), dependency.contextSources()));
+			if(changed)
+				for(FollowKey dependent : dependents.getOrDefault(key, Set.of()))
+					if(changedKeysSet.add(dependent))
+						changedKeys.add(dependent);
+		}
+	}
+
+	private record FollowKey(State state, Nonterminal nonterminal)
+	{}
+
+	private record FollowDependency(LookaheadItem item, List<FollowKey> contextSources)
+	{}
+}
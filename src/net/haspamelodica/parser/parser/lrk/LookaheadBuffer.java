@@ -0,0 +1,86 @@
+package net.haspamelodica.parser.parser.lrk;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.haspamelodica.parser.ast.Token;
+import net.haspamelodica.parser.grammar.Terminal;
+
+/**
+ * A fixed-capacity circular buffer of lookahead tokens. A <code>null</code> token stands for EOF.
+ */
+public class LookaheadBuffer
+{
+	private final Token<?>[] tokens;
+
+	private int	start;
+	private int	size;
+
+	public LookaheadBuffer(int capacity)
+	{
+		this.tokens = new Token<?>[Math.max(capacity, 1)];
+	}
+
+	public int size()
+	{
+		return size;
+	}
+	public int capacity()
+	{
+		return tokens.length;
+	}
+
+	public void add(Token<?> token)
+	{
+		if(size == tokens.length)
+			throw new IllegalStateException("Lookahead buffer is full");
+		tokens[index(size)] = token;
+		size ++;
+	}
+	public Token<?> poll()
+	{
+		if(size == 0)
+			throw new IllegalStateException("Lookahead buffer is empty");
+		Token<?> token = tokens[start];
+		tokens[start] = null;
+		start = index(1);
+		size --;
+		return token;
+	}
+
+	public Token<?> getToken(int i)
+	{
+		if(i >= size)
+			throw new IndexOutOfBoundsException(i);
+		return tokens[index(i)];
+	}
+	public Terminal<?> getTerminal(int i)
+	{
+		return terminalOf(getToken(i));
+	}
+
+	public Word toWord()
+	{
+		return toWord(size);
+	}
+	public Word toWord(int length)
+	{
+		if(length > size)
+			throw new IndexOutOfBoundsException(length);
+		List<Terminal<?>> terminals = new ArrayList<>(length);
+		for(int i = 0; i < length; i ++)
+			terminals.add(getTerminal(i));
+		return new Word(terminals);
+	}
+
+	private int index(int i)
+	{
+		int index = start + i;
+		return index < tokens.length ? index : index - tokens.length;
+	}
+
+	public static Terminal<?> terminalOf(Token<?> token)
+	{
+		return token == null ? Terminal.EOF : token.getSymbol();
+	}
+}
@@ -0,0 +1,76 @@
+package net.haspamelodica.parser.parser.lrk;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import net.haspamelodica.parser.grammar.Terminal;
+import net.haspamelodica.parser.parser.lrk.action.Action;
+
+/**
+ * The action table row of a state as a trie over the lookahead positions.
+ * Inner nodes branch on the lookahead terminal at their depth; leaves contain the action all lookaheads with the leaf's prefix agree on.
+ * This way, a parser only needs to know the next lookahead token if the previous ones don't decide the action yet.
+ * <p>
+ * The root always is an inner node, so that the first lookahead token is always checked, even if all lookaheads have the same action.
+ * Otherwise, tokens which can't be shifted would be shifted, and input after the end would be ignored.
+ */
+public class LookaheadDecisionTree
+{
+	private final Action									action;
+	private final Map<Terminal<?>, LookaheadDecisionTree>	children;
+
+	private LookaheadDecisionTree(Action action, Map<Terminal<?>, LookaheadDecisionTree> children)
+	{
+		this.action = action;
+		this.children = children;
+	}
+
+	/**
+	 * The given lookaheads have to be prefix-free, which is always the case if they all have the same length.
+	 */
+	public static LookaheadDecisionTree build(Map<Word, Action> actions)
+	{
+		return build(new ArrayList<>(actions.entrySet()), 0);
+	}
+
+	private static LookaheadDecisionTree build(List<Entry<Word, Action>> actions, int depth)
+	{
+		Action someAction = actions.get(0).getValue();
+		if(depth > 0 && actions.stream().map(Entry::getValue).allMatch(someAction::equals))
+			return new LookaheadDecisionTree(someAction, null);
+
+		Map<Terminal<?>, List<Entry<Word, Action>>> actionsPerTerminal = new HashMap<>();
+		for(Entry<Word, Action> e : actions)
+		{
+			if(e.getKey().getLength() <= depth)
+				throw new IllegalArgumentException("Lookaheads aren't prefix-free: " + e.getKey());
+			actionsPerTerminal.computeIfAbsent(e.getKey().getTerminals().get(depth), t -> new ArrayList<>()).add(e);
+		}
+		Map<Terminal<?>, LookaheadDecisionTree> children = new HashMap<>();
+		for(Entry<Terminal<?>, List<Entry<Word, Action>>> e : actionsPerTerminal.entrySet())
+			children.put(e.getKey(), build(e.getValue(), depth + 1));
+		return new LookaheadDecisionTree(null, Map.copyOf(children));
+	}
+
+	public boolean isLeaf()
+	{
+		return children == null;
+	}
+	/**
+	 * May only be called for leaves.
+	 */
+	public Action getAction()
+	{
+		return action;
+	}
+	/**
+	 * May only be called for inner nodes. Returns <code>null</code> if no lookahead continues with the given terminal.
+	 */
+	public LookaheadDecisionTree getChild(Terminal<?> terminal)
+	{
+		return children.get(terminal);
+	}
+}
@@ -9,18 +9,38 @@ public class LookaheadItem
 
 	private final int lookaheadSize;
 
+	// lookahead items are hashed over and over while generating automata
+	private final int hashCode;
+
+	/**
+	 * {@link TerminalWordSet}s aren't copied, because they are immutable.
+	 */
 	public LookaheadItem(Item item, Set<Word> admissibleLookaheads)
 	{
 		this.item = item;
 
-		this.admissibleLookaheads = Set.copyOf(admissibleLookaheads);
-
-		if(this.admissibleLookaheads.size() == 0)
+		if(admissibleLookaheads.size() == 0)
 			throw new IllegalArgumentException("Lookahead items only make sense when admissible with at least one lookahead");
-		this.lookaheadSize = this.admissibleLookaheads.stream().findAny().get().getLength();
-		for(Word l : admissibleLookaheads)
-			if(l.getLength() != lookaheadSize)
-				throw new IllegalArgumentException("Not all lookaheads have the same length");
+		if(admissibleLookaheads instanceof TerminalWordSet)
+		{
+			this.admissibleLookaheads = admissibleLookaheads;
+			this.lookaheadSize = 1;
+		} else
+		{
+			this.admissibleLookaheads = Set.copyOf(admissibleLookaheads);
+			this.lookaheadSize = this.admissibleLookaheads.stream().findAny().get().getLength();
+			for(Word l : admissibleLookaheads)
+				if(l.getLength() != lookaheadSize)
+					throw new IllegalArgumentException("Not all lookaheads have the same length");
+		}
+		this.hashCode = calculateHashCode();
+	}
+	private LookaheadItem(Item item, LookaheadItem lookaheadsSource)
+	{
+		this.item = item;
+		this.admissibleLookaheads = lookaheadsSource.admissibleLookaheads;
+		this.lookaheadSize = lookaheadsSource.lookaheadSize;
+		this.hashCode = calculateHashCode();
 	}
 
 	public Item getItem()
@@ -38,7 +58,7 @@ public class LookaheadItem
 
 	public LookaheadItem advanceMarker()
 	{
-		return new LookaheadItem(item.advanceMarker(), admissibleLookaheads);
+		return new LookaheadItem(item.advanceMarker(), this);
 	}
 
 	@Override
@@ -49,6 +69,10 @@ public class LookaheadItem
 
 	@Override
 	public int hashCode()
+	{
+		return hashCode;
+	}
+	private int calculateHashCode()
 	{
 		final int prime = 31;
 		int result = 1;
@@ -68,6 +92,8 @@ public class LookaheadItem
 		if(getClass() != obj.getClass())
 			return false;
 		LookaheadItem other = (LookaheadItem) obj;
+		if(hashCode != other.hashCode)
+			return false;
 		if(admissibleLookaheads == null)
 		{
 			if(other.admissibleLookaheads != null)
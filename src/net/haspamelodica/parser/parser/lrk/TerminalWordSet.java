@@ -0,0 +1,124 @@
+package net.haspamelodica.parser.parser.lrk;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable set of words of length 1, stored as a bit vector over the terminal IDs of an {@link ItemNumbering}.
+ * This is the representation of lookahead sets for k=1 used while generating automata.
+ * Equality and hash code are the same as for any other set of the same words.
+ */
+public class TerminalWordSet extends AbstractSet<Word>
+{
+	private final ItemNumbering	numbering;
+	// never has trailing zero elements, so that equal sets have equal arrays
+	private final long[]		bits;
+	private final int			size;
+
+	private final int hashCode;
+
+	/**
+	 * The given array must not be modified afterwards.
+	 */
+	public TerminalWordSet(ItemNumbering numbering, long[] bits)
+	{
+		this.numbering = numbering;
+		int length = bits.length;
+		while(length > 0 && bits[length - 1] == 0)
+			length --;
+		this.bits = length == bits.length ? bits : Arrays.copyOf(bits, length);
+		int size = 0;
+		int hashCode = 0;
+		for(int terminalId = nextTerminalId(0); terminalId >= 0; terminalId = nextTerminalId(terminalId + 1))
+		{
+			size ++;
+			hashCode += numbering.getTerminalWord(terminalId).hashCode();
+		}
+		this.size = size;
+		this.hashCode = hashCode;
+	}
+
+	/**
+	 * Returns the bit vector of this set. The returned array must not be modified.
+	 */
+	public long[] getBits()
+	{
+		return bits;
+	}
+	public ItemNumbering getNumbering()
+	{
+		return numbering;
+	}
+
+	private int nextTerminalId(int fromTerminalId)
+	{
+		int index = fromTerminalId / Long.SIZE;
+		if(index >= bits.length)
+			return -1;
+		long remainingBits = bits[index] & (-1L << fromTerminalId);
+		while(remainingBits == 0)
+		{
+			index ++;
+			if(index == bits.length)
+				return -1;
+			remainingBits = bits[index];
+		}
+		return index * Long.SIZE + Long.numberOfTrailingZeros(remainingBits);
+	}
+
+	@Override
+	public boolean contains(Object o)
+	{
+		if(!(o instanceof Word word) || word.getLength() != 1)
+			return false;
+		int terminalId = numbering.getTerminalId(word.getTerminals().get(0));
+		if(terminalId < 0 || terminalId / Long.SIZE >= bits.length)
+			return false;
+		return (bits[terminalId / Long.SIZE] & (1L << terminalId)) != 0;
+	}
+	@Override
+	public Iterator<Word> iterator()
+	{
+		return new Iterator<>()
+		{
+			private int nextTerminalId = nextTerminalId(0);
+
+			@Override
+			public boolean hasNext()
+			{
+				return nextTerminalId >= 0;
+			}
+			@Override
+			public Word next()
+			{
+				if(nextTerminalId < 0)
+					throw new NoSuchElementException();
+				Word result = numbering.getTerminalWord(nextTerminalId);
+				nextTerminalId = nextTerminalId(nextTerminalId + 1);
+				return result;
+			}
+		};
+	}
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return hashCode;
+	}
+	@Override
+	public boolean equals(Object obj)
+	{
+		if(this == obj)
+			return true;
+		if(obj instanceof TerminalWordSet other && numbering == other.numbering)
+			return hashCode == other.hashCode && Arrays.equals(bits, other.bits);
+		return super.equals(obj);
+	}
+}
@@ -3,17 +3,24 @@ package net.haspamelodica.parser.parser.lrk;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 import net.haspamelodica.parser.grammar.Terminal;
 
+/**
+ * The hash code is computed once from the names of the terminals, so it doesn't depend on identity hash codes
+ * and hash-based collections of words iterate in the same order in every run.
+ * {@link #equals(Object)} compares the cached hash codes before comparing the terminals themselves.
+ */
 public class Word
 {
 	public static final Word EPSILON = new Word();
 
 	private final List<Terminal<?>> terminals;
 
-	private final int length;
+	private final int	length;
+	private final int	hashCode;
 
 	public Word(Terminal<?>... terminals)
 	{
@@ -21,13 +28,13 @@ public class Word
 	}
 	public Word(List<Terminal<?>> terminals)
 	{
-		this.terminals = List.copyOf(terminals);
-		this.length = this.terminals.size();
+		this(List.copyOf(terminals), terminals.size());
 	}
 	private Word(List<Terminal<?>> terminals, int length)
 	{
 		this.terminals = terminals;
 		this.length = length;
+		this.hashCode = calculateHashCode();
 	}
 
 	public List<Terminal<?>> getTerminals()
@@ -74,16 +81,21 @@ public class Word
 		return terminals.stream().map(Terminal::toString).collect(Collectors.joining());
 	}
 
-	@Override
-	public int hashCode()
+	private int calculateHashCode()
 	{
 		final int prime = 31;
 		int result = 1;
 		result = prime * result + length;
-		result = prime * result + ((terminals == null) ? 0 : terminals.hashCode());
+		for(Terminal<?> terminal : terminals)
+			result = prime * result + Objects.hashCode(terminal.getName());
 		return result;
 	}
 	@Override
+	public int hashCode()
+	{
+		return hashCode;
+	}
+	@Override
 	public boolean equals(Object obj)
 	{
 		if(this == obj)
@@ -93,14 +105,11 @@ public class Word
 		if(getClass() != obj.getClass())
 			return false;
 		Word other = (Word) obj;
-		if(length != other.length)
+		if(length != other.length || hashCode != other.hashCode)
 			return false;
-		if(terminals == null)
-		{
-			if(other.terminals != null)
+		for(int i = 0; i < length; i ++)
+			if(terminals.get(i) != other.terminals.get(i))
 				return false;
-		} else if(!terminals.equals(other.terminals))
-			return false;
 		return true;
 	}
 }
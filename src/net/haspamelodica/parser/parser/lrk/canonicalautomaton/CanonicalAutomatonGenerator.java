@@ -1,80 +1,99 @@
 package net.haspamelodica.parser.parser.lrk.canonicalautomaton;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import net.haspamelodica.parser.grammar.ContextFreeGrammar;
-import net.haspamelodica.parser.grammar.Nonterminal;
 import net.haspamelodica.parser.grammar.Production;
 import net.haspamelodica.parser.grammar.Symbol;
-import net.haspamelodica.parser.grammar.Symbol.SymbolType;
 import net.haspamelodica.parser.grammar.Terminal;
 import net.haspamelodica.parser.parser.lrk.ConcatKHelper;
 import net.haspamelodica.parser.parser.lrk.Item;
 import net.haspamelodica.parser.parser.lrk.LookaheadItem;
 import net.haspamelodica.parser.parser.lrk.Word;
+import net.haspamelodica.parser.utils.ParallelUtils;
 
 public class CanonicalAutomatonGenerator
 {
 	private final ContextFreeGrammar	grammar;
 	private final int					lookaheadSize;
-	private final ConcatKHelper			concatKHelper;
+	private final ClosureCalculator		closureCalculator;
 
-	private final Set<State>		allStates;
+	// maps each state to itself, so that all transitions use the same instance for equal states; concurrent because of parallel expansion
+	private final Map<State, State>	allStates;
 	private final Set<Transition>	transitions;
 
 	public static CanonicalAutomaton generate(ContextFreeGrammar grammar, int lookaheadSize, ConcatKHelper concatKHelper)
 	{
-		return new CanonicalAutomatonGenerator(grammar, lookaheadSize, concatKHelper).generate();
+		return generate(grammar, lookaheadSize, new ClosureCalculator(grammar, concatKHelper));
+	}
+	/**
+	 * Allows reusing a {@link ClosureCalculator} and its cache, and querying its {@link ClosureCalculator#getCacheStatistics() cache statistics}.
+	 */
+	public static CanonicalAutomaton generate(ContextFreeGrammar grammar, int lookaheadSize, ClosureCalculator closureCalculator)
+	{
+		return new CanonicalAutomatonGenerator(grammar, lookaheadSize, closureCalculator).generate();
 	}
 
-	private CanonicalAutomatonGenerator(ContextFreeGrammar grammar, int lookaheadSize, ConcatKHelper concatKHelper)
+	private CanonicalAutomatonGenerator(ContextFreeGrammar grammar, int lookaheadSize, ClosureCalculator closureCalculator)
 	{
 		this.grammar = grammar;
 		this.lookaheadSize = lookaheadSize;
-		this.concatKHelper = concatKHelper;
+		this.closureCalculator = closureCalculator;
 
-		this.allStates = new HashSet<>();
-		this.transitions = new HashSet<>();
+		this.allStates = new ConcurrentHashMap<>();
+		this.transitions = ConcurrentHashMap.newKeySet();
 	}
 
+	/**
+	 * Expands the automaton one breadth-first layer at a time. The states of a layer are expanded in parallel
+	 * (see {@link ParallelUtils#map(List, java.util.function.Function)}), because their closures and successors are independent.
+	 */
 	private CanonicalAutomaton generate()
 	{
 		State initialState = constructInitialState();
-		allStates.add(initialState);
+		allStates.put(initialState, initialState);
+
+		List<State> unfinishedStates = List.of(initialState);
+		while(!unfinishedStates.isEmpty())
+			unfinishedStates = ParallelUtils.map(unfinishedStates, this::expand).stream().flatMap(List::stream).toList();
+
+		return new CanonicalAutomaton(initialState, allStates.keySet(), transitions);
+	}
 
-		Queue<State> unfinishedStates = new LinkedList<>();
-		unfinishedStates.add(initialState);
-		for(State stateToExpand = unfinishedStates.poll(); stateToExpand != null; stateToExpand = unfinishedStates.poll())
+	/**
+	 * Returns the successors of the given state which didn't exist yet.
+	 */
+	private List<State> expand(State stateToExpand)
+	{
+		Map<Symbol, Set<LookaheadItem>> itemsGroupedByNextSymbol = stateToExpand
+				.getItems()
+				.stream()
+				.filter(i -> !i.getItem().isFinished())
+				.collect(Collectors.groupingBy(i -> i.getItem().getNextSymbol(), Collectors.toSet()));
+
+		List<State> newStates = new ArrayList<>();
+		for(Entry<Symbol, Set<LookaheadItem>> e : itemsGroupedByNextSymbol.entrySet())
 		{
-			Map<Symbol, Set<LookaheadItem>> itemsGroupedByNextSymbol = stateToExpand
-					.getItems()
+			Set<LookaheadItem> nextStateInitialItems = e
+					.getValue()
 					.stream()
-					.filter(i -> !i.getItem().isFinished())
-					.collect(Collectors.groupingBy(i -> i.getItem().getNextSymbol(), Collectors.toSet()));
-
-			for(Entry<Symbol, Set<LookaheadItem>> e : itemsGroupedByNextSymbol.entrySet())
-			{
-				Set<LookaheadItem> nextStateInitialItems = e
-						.getValue()
-						.stream()
-						.map(LookaheadItem::advanceMarker)
-						.collect(Collectors.toSet());
-				State nextState = constructEpsilonClosureFromLookaheadItems(nextStateInitialItems);
-				transitions.add(new Transition(stateToExpand, e.getKey(), nextState));
-				if(allStates.add(nextState))
-					unfinishedStates.add(nextState);
-			}
+					.map(LookaheadItem::advanceMarker)
+					.collect(Collectors.toSet());
+			State nextState = closureCalculator.calculateClosure(nextStateInitialItems);
+			State existingState = allStates.putIfAbsent(nextState, nextState);
+			if(existingState != null)
+				nextState = existingState;
+			else
+				newStates.add(nextState);
+			transitions.add(new Transition(stateToExpand, e.getKey(), nextState));
 		}
-
-		return new CanonicalAutomaton(initialState, allStates, transitions);
+		return newStates;
 	}
 
 	private State constructInitialState()
@@ -83,7 +102,7 @@ public class CanonicalAutomatonGenerator
 
 		Item initialStateItem = new Item(initialStateProduction, 0);
 		Set<Word> eofLookahead = Set.of(Word.repeat(Terminal.EOF, lookaheadSize));
-		State initialState = constructEpsilonClosureFromLookaheadItems(Set.of(new LookaheadItem(initialStateItem, eofLookahead)));
+		State initialState = closureCalculator.calculateClosure(Set.of(new LookaheadItem(initialStateItem, eofLookahead)));
 		return initialState;
 	}
 
@@ -95,80 +114,4 @@ public class CanonicalAutomatonGenerator
 		Production initialStateProduction = initialStateProductions.stream().findAny().get();
 		return initialStateProduction;
 	}
-
-	private State constructEpsilonClosureFromLookaheadItems(Set<LookaheadItem> initialItems)
-	{
-		Set<Item> initialItemsNoLookahead = new HashSet<>();
-		for(LookaheadItem i : initialItems)
-			initialItemsNoLookahead.add(i.getItem());
-
-		Set<Item> allItems = new HashSet<>(initialItemsNoLookahead);
-		Map<Item, Set<Item>> lookaheadInheriting = expandItems(allItems);
-
-		Map<Item, Set<Word>> lookaheadPerItem = expandLookaheads(initialItems, initialItemsNoLookahead, allItems, lookaheadInheriting);
-
-		Set<LookaheadItem> allLookaheadItems = lookaheadPerItem
-				.entrySet()
-				.stream()
-				.map(e -> new LookaheadItem(e.getKey(), e.getValue()))
-				.collect(Collectors.toSet());
-
-		return new State(allLookaheadItems);
-	}
-
-	private Map<Item, Set<Word>> expandLookaheads(Set<LookaheadItem> initialItems, Set<Item> initialItemsNoLookahead, Set<Item> allItems, Map<Item, Set<Item>> lookaheadInheriting)
-	{
-		Map<Item, Set<Word>> lookaheadPerItem = new HashMap<>();
-		for(Item i : allItems)
-			lookaheadPerItem.put(i, new HashSet<>());
-		for(LookaheadItem i : initialItems)
-			lookaheadPerItem.put(i.getItem(), new HashSet<>(i.getAdmissibleLookaheads()));
-
-		//TODO is this possible faster?
-		//TODO almost a duplicate of ConcatKHelper.calculateFirstK
-		Queue<Item> changedItems = new LinkedList<>(initialItemsNoLookahead);
-		for(Item changedItem = changedItems.poll(); changedItem != null; changedItem = changedItems.poll())
-		{
-			Set<Word> changedItemLookahead = lookaheadPerItem.get(changedItem);
-			if(changedItem.isFinished() || changedItem.getNextSymbol().getType() == SymbolType.TERMINAL)
-				continue;
-			List<Symbol> rhsSymbols = changedItem.getProduction().getRhs().getSymbols();
-			List<Symbol> rhsAfterNextSym = rhsSymbols.subList(changedItem.getMarkerPosition() + 1, rhsSymbols.size());
-			Set<Word> rhsAfterNextSymFirstK = concatKHelper.concatKSymbols(rhsAfterNextSym);
-			Set<Word> newInheritedItemLookahead = concatKHelper.concatK(rhsAfterNextSymFirstK, changedItemLookahead);
-			for(Item inheritingItem : lookaheadInheriting.get(changedItem))
-				if(lookaheadPerItem.get(inheritingItem).addAll(newInheritedItemLookahead))
-					changedItems.add(inheritingItem);
-		}
-		return lookaheadPerItem;
-	}
-
-	private Map<Item, Set<Item>> expandItems(Set<Item> allItems)
-	{
-		Map<Item, Set<Item>> lookaheadInheriting = new HashMap<>();
-
-		Queue<Item> itemsToExpand = new LinkedList<>(allItems);
-		for(Item itemToExpand = itemsToExpand.poll(); itemToExpand != null; itemToExpand = itemsToExpand.poll())
-		{
-			if(itemToExpand.isFinished())
-				continue;
-			Symbol nextSymbol = itemToExpand.getNextSymbol();
-
-			if(nextSymbol.getType() == SymbolType.TERMINAL)
-				continue;
-			Nonterminal nextNonterminal = (Nonterminal) nextSymbol;
-
-			HashSet<Item> lookaheadInheritingCurrentItem = new HashSet<>();
-			lookaheadInheriting.put(itemToExpand, lookaheadInheritingCurrentItem);
-			for(Production production : grammar.getProductionsForLhs(nextNonterminal))
-			{
-				Item expandedItem = new Item(production, 0);
-				lookaheadInheritingCurrentItem.add(expandedItem);
-				if(allItems.add(expandedItem))
-					itemsToExpand.add(expandedItem);
-			}
-		}
-
-		return lookaheadInheriting;
-	}
 }
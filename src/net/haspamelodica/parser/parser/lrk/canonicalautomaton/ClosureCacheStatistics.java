@@ -0,0 +1,26 @@
+package net.haspamelodica.parser.parser.lrk.canonicalautomaton;
+
+/**
+ * How often a {@link ClosureCalculator} could reuse the LR(0) part of a closure calculated earlier for the same kernel core.
+ */
+public record ClosureCacheStatistics(long hits, long misses, int cachedCores)
+{
+	public long lookups()
+	{
+		return hits + misses;
+	}
+	/**
+	 * Returns 0 if there were no lookups yet.
+	 */
+	public double hitRate()
+	{
+		long lookups = lookups();
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%d hits, %d misses (hit rate %.1f%%), %d cached cores", hits, misses, hitRate() * 100, cachedCores);
+	}
+}
@@ -0,0 +1,342 @@
+package net.haspamelodica.parser.parser.lrk.canonicalautomaton;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.haspamelodica.parser.grammar.ContextFreeGrammar;
+import net.haspamelodica.parser.grammar.Nonterminal;
+import net.haspamelodica.parser.grammar.Production;
+import net.haspamelodica.parser.grammar.Symbol;
+import net.haspamelodica.parser.grammar.Symbol.SymbolType;
+import net.haspamelodica.parser.parser.lrk.ConcatKHelper;
+import net.haspamelodica.parser.parser.lrk.Item;
+import net.haspamelodica.parser.parser.lrk.ItemNumbering;
+import net.haspamelodica.parser.parser.lrk.LookaheadItem;
+import net.haspamelodica.parser.parser.lrk.TerminalWordSet;
+import net.haspamelodica.parser.parser.lrk.Word;
+
+/**
+ * Calculates the epsilon closure of a set of LR(k) items, including lookaheads.
+ * <p>
+ * Internally, items are identified by their IDs in an {@link ItemNumbering}, and sets of items are bit vectors.
+ * For k=1, lookahead sets are bit vectors over terminal IDs as well, and the resulting items use {@link TerminalWordSet}s.
+ * All grammar-dependent data needed for the closure is precalculated per item ID.
+ * <p>
+ * The LR(0) part of a closure only depends on the LR(0) core of the kernel, which is shared by many kernels.
+ * Because of this, the closure items and which of them inherit lookaheads from which are cached per kernel core,
+ * so that only the lookahead propagation has to be done for each closure.
+ * The cache is thread-safe; its effectiveness can be queried using {@link #getCacheStatistics()}.
+ */
+public class ClosureCalculator
+{
+	private final ConcatKHelper	concatKHelper;
+	private final ItemNumbering	numbering;
+	private final int			lookaheadBitsLength;
+
+	// all indexed by item ID; only set for items whose next symbol is a nonterminal
+	// the IDs of the initial items of all productions of the next symbol
+	private final int[][]		expandedItemIds;
+	// the first k terminals of what follows the next symbol
+	private final Set<Word>[]	firstKAfterNextSymbol;
+	// only for k=1: firstKAfterNextSymbol as bit vectors, and whether firstKAfterNextSymbol contains the empty word
+	private final long[][]		first1BitsAfterNextSymbol;
+	private final boolean[]		nullableAfterNextSymbol;
+
+	private final Map<BitSet, ClosureCore>	closureCoresByKernelCore;
+	private final LongAdder					cacheHits;
+	private final LongAdder					cacheMisses;
+
+	public ClosureCalculator(ContextFreeGrammar grammar, ConcatKHelper concatKHelper)
+	{
+		this(grammar, concatKHelper, new ItemNumbering(grammar));
+	}
+	public ClosureCalculator(ContextFreeGrammar grammar, ConcatKHelper concatKHelper, ItemNumbering numbering)
+	{
+		this.concatKHelper = concatKHelper;
+		this.numbering = numbering;
+		this.lookaheadBitsLength = (numbering.getTerminalCount() + Long.SIZE - 1) / Long.SIZE;
+
+		int itemCount = numbering.getItemCount();
+		this.expandedItemIds = new int[itemCount][];
+		this.firstKAfterNextSymbol = newWordSetArray(itemCount);
+		boolean k1 = concatKHelper.getK() == 1;
+		this.first1BitsAfterNextSymbol = k1 ? new long[itemCount][] : null;
+		this.nullableAfterNextSymbol = k1 ? new boolean[itemCount] : null;
+		for(int itemId = 0; itemId < itemCount; itemId ++)
+		{
+			Item item = numbering.getItem(itemId);
+			if(item.isFinished() || item.getNextSymbol().getType() != SymbolType.NONTERMINAL)
+				continue;
+			Set<Production> productions = grammar.getProductionsForLhs((Nonterminal) item.getNextSymbol());
+			expandedItemIds[itemId] = productions == null ? new int[0] : productions.stream().mapToInt(numbering::getInitialItemId).toArray();
+			List<Symbol> rhsSymbols = item.getProduction().getRhs().getSymbols();
+			Set<Word> firstK = concatKHelper.concatKSymbols(rhsSymbols.subList(item.getMarkerPosition() + 1, rhsSymbols.size()));
+			firstKAfterNextSymbol[itemId] = firstK;
+			if(k1)
+			{
+				long[] bits = new long[lookaheadBitsLength];
+				for(Word word : firstK)
+					if(word.getLength() == 0)
+						nullableAfterNextSymbol[itemId] = true;
+					else
+						setBit(bits, numbering.getTerminalId(word.getTerminals().get(0)));
+				first1BitsAfterNextSymbol[itemId] = bits;
+			}
+		}
+
+		this.closureCoresByKernelCore = new ConcurrentHashMap<>();
+		this.cacheHits = new LongAdder();
+		this.cacheMisses = new LongAdder();
+	}
+
+	public ItemNumbering getNumbering()
+	{
+		return numbering;
+	}
+
+	public ClosureCacheStatistics getCacheStatistics()
+	{
+		return new ClosureCacheStatistics(cacheHits.sum(), cacheMisses.sum(), closureCoresByKernelCore.size());
+	}
+
+	public State calculateClosure(Set<LookaheadItem> initialItems)
+	{
+		BitSet kernelCore = new BitSet(numbering.getItemCount());
+		for(LookaheadItem item : initialItems)
+			kernelCore.set(getId(item.getItem()));
+
+		ClosureCore closureCore = closureCoresByKernelCore.get(kernelCore);
+		if(closureCore != null)
+			cacheHits.increment();
+		else
+		{
+			cacheMisses.increment();
+			closureCore = calculateClosureCore(kernelCore);
+			ClosureCore existingClosureCore = closureCoresByKernelCore.putIfAbsent(kernelCore, closureCore);
+			if(existingClosureCore != null)
+				closureCore = existingClosureCore;
+		}
+
+		if(concatKHelper.getK() == 1)
+			return expandLookaheads1(initialItems, closureCore);
+		return expandLookaheads(initialItems, closureCore);
+	}
+
+	private int getId(Item item)
+	{
+		int id = numbering.getId(item);
+		if(id < 0)
+			throw new IllegalArgumentException("Item doesn't belong to the grammar: " + item);
+		return id;
+	}
+
+	private ClosureCore calculateClosureCore(BitSet kernelCore)
+	{
+		long[] core = expandItems(kernelCore);
+		// sorted, so that the position of an item in the closure can be found by binary search
+		int[] closureItemIds = BitSet.valueOf(core).stream().toArray();
+		int[][] lookaheadInheriting = new int[closureItemIds.length][];
+		for(int index = 0; index < closureItemIds.length; index ++)
+		{
+			int[] expanded = expandedItemIds[closureItemIds[index]];
+			if(expanded == null)
+				continue;
+			int[] expandedIndices = new int[expanded.length];
+			for(int i = 0; i < expanded.length; i ++)
+				expandedIndices[i] = Arrays.binarySearch(closureItemIds, expanded[i]);
+			lookaheadInheriting[index] = expandedIndices;
+		}
+		return new ClosureCore(core, closureItemIds, lookaheadInheriting);
+	}
+
+	private long[] expandItems(BitSet kernelCore)
+	{
+		long[] core = new long[(numbering.getItemCount() + Long.SIZE - 1) / Long.SIZE];
+		int[] itemsToExpand = new int[kernelCore.cardinality()];
+		int itemsToExpandCount = 0;
+		for(int itemId = kernelCore.nextSetBit(0); itemId >= 0; itemId = kernelCore.nextSetBit(itemId + 1))
+			if(setBit(core, itemId))
+				itemsToExpand[itemsToExpandCount ++] = itemId;
+		while(itemsToExpandCount > 0)
+		{
+			int itemId = itemsToExpand[-- itemsToExpandCount];
+			int[] expanded = expandedItemIds[itemId];
+			if(expanded == null)
+				continue;
+			for(int expandedItemId : expanded)
+				if(setBit(core, expandedItemId))
+				{
+					if(itemsToExpandCount == itemsToExpand.length)
+						itemsToExpand = Arrays.copyOf(itemsToExpand, itemsToExpandCount * 2 + 1);
+					itemsToExpand[itemsToExpandCount ++] = expandedItemId;
+				}
+		}
+		return core;
+	}
+
+	private State expandLookaheads1(Set<LookaheadItem> initialItems, ClosureCore closureCore)
+	{
+		int[] closureItemIds = closureCore.closureItemIds();
+		int n = closureItemIds.length;
+		// the lookaheads of closure item i are at lookaheadBits[i * lookaheadBitsLength, (i + 1) * lookaheadBitsLength)
+		long[] lookaheadBits = new long[n * lookaheadBitsLength];
+		ChangedQueue changedItems = new ChangedQueue(n);
+		for(LookaheadItem item : initialItems)
+		{
+			int index = Arrays.binarySearch(closureItemIds, getId(item.getItem()));
+			if(item.getAdmissibleLookaheads() instanceof TerminalWordSet lookaheads && lookaheads.getNumbering() == numbering)
+			{
+				long[] bits = lookaheads.getBits();
+				for(int j = 0; j < bits.length; j ++)
+					lookaheadBits[index * lookaheadBitsLength + j] |= bits[j];
+			} else
+				for(Word lookahead : item.getAdmissibleLookaheads())
+					setBit(lookaheadBits, index * lookaheadBitsLength, numbering.getTerminalId(lookahead.getTerminals().get(0)));
+			changedItems.add(index);
+		}
+
+		for(int index = changedItems.poll(); index >= 0; index = changedItems.poll())
+		{
+			int[] inheriting = closureCore.lookaheadInheriting()[index];
+			if(inheriting == null)
+				continue;
+			int itemId = closureItemIds[index];
+			long[] first1 = first1BitsAfterNextSymbol[itemId];
+			boolean nullable = nullableAfterNextSymbol[itemId];
+			for(int expandedIndex : inheriting)
+			{
+				int offset = expandedIndex * lookaheadBitsLength;
+				boolean changed = false;
+				for(int j = 0; j < lookaheadBitsLength; j ++)
+				{
+					long oldBits = lookaheadBits[offset + j];
+					long newBits = oldBits | first1[j] | (nullable ? lookaheadBits[index * lookaheadBitsLength + j] : 0);
+					if(newBits != oldBits)
+					{
+						lookaheadBits[offset + j] = newBits;
+						changed = true;
+					}
+				}
+				if(changed)
+					changedItems.add(expandedIndex);
+			}
+		}
+
+		Set<LookaheadItem> items = new HashSet<>();
+		for(int index = 0; index < n; index ++)
+			items.add(new LookaheadItem(numbering.getItem(closureItemIds[index]),
+					new TerminalWordSet(numbering, Arrays.copyOfRange(lookaheadBits, index * lookaheadBitsLength, (index + 1) * lookaheadBitsLength))));
+		return new State(items, numbering, closureCore.core(), lookaheadBits);
+	}
+
+	private State expandLookaheads(Set<LookaheadItem> initialItems, ClosureCore closureCore)
+	{
+		int[] closureItemIds = closureCore.closureItemIds();
+		int n = closureItemIds.length;
+		Set<Word>[] lookaheads = newWordSetArray(n);
+		for(int index = 0; index < n; index ++)
+			lookaheads[index] = new HashSet<>();
+		ChangedQueue changedItems = new ChangedQueue(n);
+		for(LookaheadItem item : initialItems)
+		{
+			int index = Arrays.binarySearch(closureItemIds, getId(item.getItem()));
+			lookaheads[index].addAll(item.getAdmissibleLookaheads());
+			changedItems.add(index);
+		}
+
+		for(int index = changedItems.poll(); index >= 0; index = changedItems.poll())
+		{
+			int[] inheriting = closureCore.lookaheadInheriting()[index];
+			if(inheriting == null)
+				continue;
+			Set<Word> inheritedLookaheads = concatKHelper.concatK(firstKAfterNextSymbol[closureItemIds[index]], lookaheads[index]);
+			for(int expandedIndex : inheriting)
+			{
+				if(lookaheads[expandedIndex].addAll(inheritedLookaheads))
+					changedItems.add(expandedIndex);
+			}
+		}
+
+		Set<LookaheadItem> items = new HashSet<>();
+		for(int index = 0; index < n; index ++)
+			items.add(new LookaheadItem(numbering.getItem(closureItemIds[index]), lookaheads[index]));
+		return new State(items, numbering, closureCore.core(), null);
+	}
+
+	/**
+	 * Returns whether the bit was not set before.
+	 */
+	private static boolean setBit(long[] bits, int index)
+	{
+		return setBit(bits, 0, index);
+	}
+	private static boolean setBit(long[] bits, int offset, int index)
+	{
+		long mask = 1L << index;
+		int i = offset + index / Long.SIZE;
+		if((bits[i] & mask) != 0)
+			return false;
+		bits[i] |= mask;
+		return true;
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static Set<Word>[] newWordSetArray(int length)
+	{
+		return new Set[length];
+	}
+
+	/**
+	 * The part of a closure which only depends on the LR(0) core of the kernel.
+	 * <code>lookaheadInheriting[i]</code> contains the indices of the closure items which inherit lookaheads from closure item <code>i</code>,
+	 * or is <code>null</code> if the next symbol of item <code>i</code> isn't a nonterminal.
+	 * None of the arrays may be modified.
+	 */
+	private record ClosureCore(long[] core, int[] closureItemIds, int[][] lookaheadInheriting)
+	{}
+
+	/**
+	 * A FIFO queue of indices which contains each index at most once.
+	 */
+	private static class ChangedQueue
+	{
+		private final int[]		queue;
+		private final boolean[]	queued;
+		private int				head;
+		private int				size;
+
+		public ChangedQueue(int capacity)
+		{
+			this.queue = new int[capacity];
+			this.queued = new boolean[capacity];
+		}
+
+		public void add(int index)
+		{
+			if(queued[index])
+				return;
+			queued[index] = true;
+			queue[(head + size) % queue.length] = index;
+			size ++;
+		}
+		/**
+		 * Returns -1 if the queue is empty.
+		 */
+		public int poll()
+		{
+			if(size == 0)
+				return -1;
+			int index = queue[head];
+			head = (head + 1) % queue.length;
+			size --;
+			queued[index] = false;
+			return index;
+		}
+	}
+}
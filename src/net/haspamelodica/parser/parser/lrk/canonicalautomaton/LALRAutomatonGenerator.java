@@ -0,0 +1,342 @@
+package net.haspamelodica.parser.parser.lrk.canonicalautomaton;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import net.haspamelodica.parser.grammar.ContextFreeGrammar;
+import net.haspamelodica.parser.grammar.Nonterminal;
+import net.haspamelodica.parser.grammar.Production;
+import net.haspamelodica.parser.grammar.Symbol;
+import net.haspamelodica.parser.grammar.Symbol.SymbolType;
+import net.haspamelodica.parser.grammar.Terminal;
+import net.haspamelodica.parser.parser.lrk.ConcatKHelper;
+import net.haspamelodica.parser.parser.lrk.Item;
+import net.haspamelodica.parser.parser.lrk.ItemNumbering;
+import net.haspamelodica.parser.parser.lrk.LookaheadItem;
+import net.haspamelodica.parser.parser.lrk.TerminalWordSet;
+import net.haspamelodica.parser.parser.lrk.Word;
+
+/**
+ * Generates the LALR(1) automaton of a normalized grammar: the LR(0) automaton, with lookaheads computed
+ * by the algorithm of DeRemer and Pennello instead of by merging the states of the canonical LR(1) automaton.
+ * <p>
+ * The lookaheads of finished items are exact. For other items, the lookaheads of the item finished along the same path
+ * are used, which may be more than the exact lookaheads if several states lead to the same state.
+ * All items sharing a finished item also share its lookahead set, which is a {@link TerminalWordSet}.
+ */
+public class LALRAutomatonGenerator
+{
+	private final ContextFreeGrammar	grammar;
+	private final ConcatKHelper			concatKHelper;
+
+	// the LR(0) automaton
+	private final List<Set<Item>>				itemsPerState;
+	private final List<Map<Symbol, Integer>>	gotosPerState;
+
+	// only used for numbering terminals
+	private final ItemNumbering numbering;
+
+	// nonterminal transitions, including a pseudo-transition from the initial state by the start symbol, which is followed by EOF
+	private final List<Integer>										transitionOrigins;
+	private final List<Nonterminal>									transitionInputs;
+	private final List<Map<Nonterminal, Integer>>					transitionIdsPerState;
+	private final Map<Integer, Map<Production, TerminalWordSet>>	lookaheadsPerState;
+
+	private LALRAutomatonGenerator(ContextFreeGrammar grammar, ConcatKHelper concatKHelper)
+	{
+		if(!grammar.isNormalized())
+			throw new IllegalArgumentException("The grammar has to be normalized");
+		this.grammar = grammar;
+		this.concatKHelper = concatKHelper;
+
+		this.itemsPerState = new ArrayList<>();
+		this.gotosPerState = new ArrayList<>();
+		this.numbering = new ItemNumbering(grammar);
+		this.transitionOrigins = new ArrayList<>();
+		this.transitionInputs = new ArrayList<>();
+		this.transitionIdsPerState = new ArrayList<>();
+		this.lookaheadsPerState = new HashMap<>();
+	}
+
+	/**
+	 * <code>concatKHelper</code> has to be for <code>k=1</code>.
+	 */
+	public static CanonicalAutomaton generate(ContextFreeGrammar grammar, ConcatKHelper concatKHelper)
+	{
+		return new LALRAutomatonGenerator(grammar, concatKHelper).generate();
+	}
+
+	private CanonicalAutomaton generate()
+	{
+		generateLR0Automaton();
+		numberNonterminalTransitions();
+		BitSet[] readSets = digraph(calculateReadsRelation(), calculateDirectReadSets());
+		List<List<Integer>> includesRelation = new ArrayList<>();
+		Map<Integer, Map<Production, List<Integer>>> lookbackRelation = new HashMap<>();
+		calculateIncludesAndLookbackRelations(includesRelation, lookbackRelation);
+		BitSet[] followSets = digraph(includesRelation, readSets);
+		calculateLookaheads(lookbackRelation, followSets);
+		return buildAutomaton();
+	}
+
+	private void generateLR0Automaton()
+	{
+		Production initialStateProduction = grammar.getProductionsForLhs(grammar.getStartSymbol()).iterator().next();
+		Map<Set<Item>, Integer> idsByKernel = new HashMap<>();
+		Deque<Integer> unfinishedStates = new ArrayDeque<>();
+		addLR0State(Set.of(new Item(initialStateProduction, 0)), idsByKernel, unfinishedStates);
+		for(Integer state = unfinishedStates.poll(); state != null; state = unfinishedStates.poll())
+		{
+			Map<Symbol, Set<Item>> kernelsByNextSymbol = new HashMap<>();
+			for(Item item : itemsPerState.get(state))
+				if(!item.isFinished())
+					kernelsByNextSymbol.computeIfAbsent(item.getNextSymbol(), s -> new HashSet<>()).add(item.advanceMarker());
+			Map<Symbol, Integer> gotos = gotosPerState.get(state);
+			for(Entry<Symbol, Set<Item>> e : kernelsByNextSymbol.entrySet())
+				gotos.put(e.getKey(), addLR0State(e.getValue(), idsByKernel, unfinishedStates));
+		}
+	}
+
+	private int addLR0State(Set<Item> kernel, Map<Set<Item>, Integer> idsByKernel, Deque<Integer> unfinishedStates)
+	{
+		Integer existingId = idsByKernel.get(kernel);
+		if(existingId != null)
+			return existingId;
+
+		Set<Item> items = new HashSet<>(kernel);
+		Deque<Item> itemsToExpand = new ArrayDeque<>(kernel);
+		for(Item item = itemsToExpand.poll(); item != null; item = itemsToExpand.poll())
+			if(!item.isFinished() && item.getNextSymbol().getType() == SymbolType.NONTERMINAL)
+				for(Production production : grammar.getProductionsForLhs((Nonterminal) item.getNextSymbol()))
+				{
+					Item expandedItem = new Item(production, 0);
+					if(items.add(expandedItem))
+						itemsToExpand.add(expandedItem);
+				}
+
+		int id = itemsPerState.size();
+		itemsPerState.add(items);
+		gotosPerState.add(new HashMap<>());
+		idsByKernel.put(kernel, id);
+		unfinishedStates.add(id);
+		return id;
+	}
+
+	private void numberNonterminalTransitions()
+	{
+		for(int state = 0; state < itemsPerState.size(); state ++)
+		{
+			Map<Nonterminal, Integer> transitionIds = new HashMap<>();
+			transitionIdsPerState.add(transitionIds);
+			for(Symbol input : gotosPerState.get(state).keySet())
+				if(input.getType() == SymbolType.NONTERMINAL)
+					addNonterminalTransition(state, (Nonterminal) input);
+		}
+		// the start symbol is normalized, so it never is the input of a real transition
+		addNonterminalTransition(0, grammar.getStartSymbol());
+	}
+	private void addNonterminalTransition(int origin, Nonterminal input)
+	{
+		transitionIdsPerState.get(origin).put(input, transitionOrigins.size());
+		transitionOrigins.add(origin);
+		transitionInputs.add(input);
+	}
+
+	/**
+	 * DR(p, A): the terminals which can be shifted directly after the transition (p, A).
+	 */
+	private BitSet[] calculateDirectReadSets()
+	{
+		BitSet[] directReadSets = new BitSet[transitionOrigins.size()];
+		for(int transition = 0; transition < directReadSets.length; transition ++)
+		{
+			BitSet directReadSet = new BitSet();
+			Integer target = gotosPerState.get(transitionOrigins.get(transition)).get(transitionInputs.get(transition));
+			if(target == null)
+				// the pseudo-transition by the start symbol
+				directReadSet.set(numbering.getTerminalId(Terminal.EOF));
+			else
+				for(Symbol input : gotosPerState.get(target).keySet())
+					if(input.getType() == SymbolType.TERMINAL)
+						directReadSet.set(numbering.getTerminalId((Terminal<?>) input));
+			directReadSets[transition] = directReadSet;
+		}
+		return directReadSets;
+	}
+
+	/**
+	 * (p, A) reads (r, C) iff r = goto(p, A) and C is nullable.
+	 */
+	private List<List<Integer>> calculateReadsRelation()
+	{
+		List<List<Integer>> readsRelation = new ArrayList<>();
+		for(int transition = 0; transition < transitionOrigins.size(); transition ++)
+		{
+			List<Integer> reads = new ArrayList<>();
+			Integer target = gotosPerState.get(transitionOrigins.get(transition)).get(transitionInputs.get(transition));
+			if(target != null)
+				for(Entry<Nonterminal, Integer> e : transitionIdsPerState.get(target).entrySet())
+					if(isNullable(List.of(e.getKey())))
+						reads.add(e.getValue());
+			readsRelation.add(reads);
+		}
+		return readsRelation;
+	}
+
+	/**
+	 * (p, A) includes (p', B) iff B -> beta A gamma, gamma is nullable and p' leads to p by beta.
+	 * (q, A -> omega) has lookback (p, A) iff p leads to q by omega.
+	 */
+	private void calculateIncludesAndLookbackRelations(List<List<Integer>> includesRelation, Map<Integer, Map<Production, List<Integer>>> lookbackRelation)
+	{
+		for(int transition = 0; transition < transitionOrigins.size(); transition ++)
+			includesRelation.add(new ArrayList<>());
+		for(int transition = 0; transition < transitionOrigins.size(); transition ++)
+			for(Production production : grammar.getProductionsForLhs(transitionInputs.get(transition)))
+			{
+				List<Symbol> rhs = production.getRhs().getSymbols();
+				int state = transitionOrigins.get(transition);
+				for(int i = 0; i < rhs.size(); i ++)
+				{
+					Symbol symbol = rhs.get(i);
+					if(symbol.getType() == SymbolType.NONTERMINAL && isNullable(rhs.subList(i + 1, rhs.size())))
+						includesRelation.get(transitionIdsPerState.get(state).get(symbol)).add(transition);
+					state = gotosPerState.get(state).get(symbol);
+				}
+				lookbackRelation.computeIfAbsent(state, s -> new HashMap<>()).computeIfAbsent(production, p -> new ArrayList<>()).add(transition);
+			}
+	}
+
+	private void calculateLookaheads(Map<Integer, Map<Production, List<Integer>>> lookbackRelation, BitSet[] followSets)
+	{
+		for(Entry<Integer, Map<Production, List<Integer>>> lookbacksForState : lookbackRelation.entrySet())
+		{
+			Map<Production, TerminalWordSet> lookaheads = new HashMap<>();
+			for(Entry<Production, List<Integer>> lookbacks : lookbacksForState.getValue().entrySet())
+			{
+				BitSet lookahead = new BitSet();
+				for(int transition : lookbacks.getValue())
+					lookahead.or(followSets[transition]);
+				lookaheads.put(lookbacks.getKey(), new TerminalWordSet(numbering, lookahead.toLongArray()));
+			}
+			lookaheadsPerState.put(lookbacksForState.getKey(), lookaheads);
+		}
+	}
+
+	private CanonicalAutomaton buildAutomaton()
+	{
+		List<State> states = new ArrayList<>();
+		for(int state = 0; state < itemsPerState.size(); state ++)
+		{
+			Set<LookaheadItem> lookaheadItems = new HashSet<>();
+			for(Item item : itemsPerState.get(state))
+			{
+				Set<Word> lookaheads = getItemLookaheads(state, item);
+				// only possible for items which can't occur in any parse
+				if(lookaheads != null && !lookaheads.isEmpty())
+					lookaheadItems.add(new LookaheadItem(item, lookaheads));
+			}
+			states.add(new State(lookaheadItems));
+		}
+
+		Set<Transition> transitions = new HashSet<>();
+		for(int state = 0; state < itemsPerState.size(); state ++)
+			for(Entry<Symbol, Integer> e : gotosPerState.get(state).entrySet())
+				transitions.add(new Transition(states.get(state), e.getKey(), states.get(e.getValue())));
+
+		return new CanonicalAutomaton(states.get(0), Set.copyOf(states), transitions);
+	}
+
+	/**
+	 * Returns the lookahead set of the item finished along the same path, which is shared by all items using it,
+	 * or <code>null</code> if there is none.
+	 */
+	private Set<Word> getItemLookaheads(int state, Item item)
+	{
+		List<Symbol> rhs = item.getProduction().getRhs().getSymbols();
+		int finishedState = state;
+		for(Symbol symbol : rhs.subList(item.getMarkerPosition(), rhs.size()))
+			finishedState = gotosPerState.get(finishedState).get(symbol);
+		return lookaheadsPerState.getOrDefault(finishedState, Map.of()).get(item.getProduction());
+	}
+
+	private boolean isNullable(List<Symbol> symbols)
+	{
+		return concatKHelper.getFirstFollowSets().isNullable(symbols);
+	}
+
+	/**
+	 * The digraph algorithm by DeRemer and Pennello: calculates the smallest sets F with F(x) contains initialSets(x)
+	 * and F(x) contains F(y) for all y with (x, y) in the relation, treating strongly connected components at once.
+	 * Doesn't use recursion because the relations can form very long chains.
+	 */
+	private static BitSet[] digraph(List<List<Integer>> relation, BitSet[] initialSets)
+	{
+		int n = initialSets.length;
+		BitSet[] result = new BitSet[n];
+		// the depth of the SCC stack when entering each element, lowered to the smallest depth reachable from there
+		int[] depths = new int[n];
+		int[] entryDepths = new int[n];
+		int[] nextRelated = new int[n];
+		Deque<Integer> sccStack = new ArrayDeque<>();
+		Deque<Integer> callStack = new ArrayDeque<>();
+		for(int start = 0; start < n; start ++)
+		{
+			if(depths[start] != 0)
+				continue;
+			enter(start, initialSets, result, depths, entryDepths, sccStack, callStack);
+			while(!callStack.isEmpty())
+			{
+				int x = callStack.peek();
+				List<Integer> related = relation.get(x);
+				if(nextRelated[x] < related.size())
+				{
+					int y = related.get(nextRelated[x] ++);
+					if(depths[y] == 0)
+						enter(y, initialSets, result, depths, entryDepths, sccStack, callStack);
+					else
+					{
+						depths[x] = Math.min(depths[x], depths[y]);
+						result[x].or(result[y]);
+					}
+					continue;
+				}
+
+				callStack.pop();
+				// x is the root of a strongly connected component
+				if(depths[x] == entryDepths[x])
+					for(int y = sccStack.pop();; y = sccStack.pop())
+					{
+						depths[y] = Integer.MAX_VALUE;
+						result[y] = result[x];
+						if(y == x)
+							break;
+					}
+				if(!callStack.isEmpty())
+				{
+					int caller = callStack.peek();
+					depths[caller] = Math.min(depths[caller], depths[x]);
+					result[caller].or(result[x]);
+				}
+			}
+		}
+		return result;
+	}
+
+	private static void enter(int x, BitSet[] initialSets, BitSet[] result, int[] depths, int[] entryDepths, Deque<Integer> sccStack, Deque<Integer> callStack)
+	{
+		callStack.push(x);
+		sccStack.push(x);
+		depths[x] = sccStack.size();
+		entryDepths[x] = depths[x];
+		result[x] = (BitSet) initialSets[x].clone();
+	}
+}
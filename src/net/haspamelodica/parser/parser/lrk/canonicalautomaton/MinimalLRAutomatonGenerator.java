@@ -0,0 +1,244 @@
+package net.haspamelodica.parser.parser.lrk.canonicalautomaton;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import net.haspamelodica.parser.grammar.ContextFreeGrammar;
+import net.haspamelodica.parser.grammar.Production;
+import net.haspamelodica.parser.grammar.Symbol;
+import net.haspamelodica.parser.grammar.Terminal;
+import net.haspamelodica.parser.parser.lrk.ConcatKHelper;
+import net.haspamelodica.parser.parser.lrk.ItemNumbering;
+import net.haspamelodica.parser.parser.lrk.LookaheadItem;
+import net.haspamelodica.parser.parser.lrk.TerminalWordSet;
+
+/**
+ * Generates a minimal LR(1) automaton of a normalized grammar using Pager's algorithm with weak compatibility:
+ * States with the same core are merged while generating the automaton, but only if this can't introduce reduce-reduce conflicts.
+ * The result has (almost) as few states as the LALR(1) automaton, but has conflicts only if the canonical LR(1) automaton has conflicts.
+ * <p>
+ * Kernels are stored as the IDs of their items in the {@link ItemNumbering} of the {@link ClosureCalculator},
+ * together with a lookahead bit vector per item, so that checking and merging kernels only needs bitwise operations.
+ */
+public class MinimalLRAutomatonGenerator
+{
+	private final ContextFreeGrammar	grammar;
+	private final ClosureCalculator		closureCalculator;
+	private final ItemNumbering			numbering;
+	private final int					lookaheadBitsLength;
+
+	// keyed by the IDs of the kernel items
+	private final Map<BitSet, List<MergeableState>>	statesByCore;
+	// states whose kernel lookaheads changed since their successors were last calculated
+	private final Set<MergeableState>				unfinishedStates;
+
+	private MinimalLRAutomatonGenerator(ContextFreeGrammar grammar, ClosureCalculator closureCalculator)
+	{
+		if(!grammar.isNormalized())
+			throw new IllegalArgumentException("The grammar has to be normalized");
+		this.grammar = grammar;
+		this.closureCalculator = closureCalculator;
+		this.numbering = closureCalculator.getNumbering();
+		this.lookaheadBitsLength = (numbering.getTerminalCount() + Long.SIZE - 1) / Long.SIZE;
+
+		this.statesByCore = new HashMap<>();
+		this.unfinishedStates = new LinkedHashSet<>();
+	}
+
+	/**
+	 * <code>concatKHelper</code> has to be for <code>k=1</code>.
+	 */
+	public static CanonicalAutomaton generate(ContextFreeGrammar grammar, ConcatKHelper concatKHelper)
+	{
+		return generate(grammar, new ClosureCalculator(grammar, concatKHelper));
+	}
+	/**
+	 * Allows reusing a {@link ClosureCalculator} and its cache, and querying its {@link ClosureCalculator#getCacheStatistics() cache statistics}.
+	 * <code>closureCalculator</code> has to be for <code>k=1</code>.
+	 */
+	public static CanonicalAutomaton generate(ContextFreeGrammar grammar, ClosureCalculator closureCalculator)
+	{
+		return new MinimalLRAutomatonGenerator(grammar, closureCalculator).generate();
+	}
+
+	private CanonicalAutomaton generate()
+	{
+		Production initialStateProduction = grammar.getProductionsForLhs(grammar.getStartSymbol()).iterator().next();
+		long[] initialLookaheads = new long[lookaheadBitsLength];
+		setBit(initialLookaheads, numbering.getTerminalId(Terminal.EOF));
+		MergeableState initialState = findOrAddState(new int[] {numbering.getInitialItemId(initialStateProduction)}, new long[][] {initialLookaheads});
+
+		while(!unfinishedStates.isEmpty())
+		{
+			MergeableState stateToExpand = unfinishedStates.iterator().next();
+			unfinishedStates.remove(stateToExpand);
+			expand(stateToExpand);
+		}
+
+		return buildAutomaton(initialState);
+	}
+
+	private void expand(MergeableState state)
+	{
+		// the lookaheads of the successor kernels, by next symbol and by the ID of the item with advanced marker
+		Map<Symbol, Map<Integer, long[]>> kernelsByNextSymbol = new HashMap<>();
+		for(LookaheadItem item : closureCalculator.calculateClosure(toLookaheadItems(state.itemIds, state.lookaheads)).getItems())
+			if(!item.getItem().isFinished())
+			{
+				long[] lookaheads = kernelsByNextSymbol
+						.computeIfAbsent(item.getItem().getNextSymbol(), s -> new HashMap<>())
+						.computeIfAbsent(numbering.getId(item.getItem()) + 1, i -> new long[lookaheadBitsLength]);
+				long[] itemLookaheads = ((TerminalWordSet) item.getAdmissibleLookaheads()).getBits();
+				for(int j = 0; j < itemLookaheads.length; j ++)
+					lookaheads[j] |= itemLookaheads[j];
+			}
+		for(Entry<Symbol, Map<Integer, long[]>> e : kernelsByNextSymbol.entrySet())
+		{
+			int[] itemIds = e.getValue().keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+			long[][] lookaheads = new long[itemIds.length][];
+			for(int i = 0; i < itemIds.length; i ++)
+				lookaheads[i] = e.getValue().get(itemIds[i]);
+			state.successors.put(e.getKey(), findOrAddState(itemIds, lookaheads));
+		}
+	}
+
+	/**
+	 * Prefers states which already contain all lookaheads of the given kernel,
+	 * then states which are weakly compatible to the given kernel, and only adds a new state if there is neither.
+	 * <code>itemIds</code> has to be sorted; <code>lookaheads</code> contains the lookaheads of the item with the same index.
+	 */
+	private MergeableState findOrAddState(int[] itemIds, long[][] lookaheads)
+	{
+		BitSet core = new BitSet(numbering.getItemCount());
+		for(int itemId : itemIds)
+			core.set(itemId);
+		List<MergeableState> statesWithSameCore = statesByCore.computeIfAbsent(core, c -> new ArrayList<>());
+		for(MergeableState state : statesWithSameCore)
+			if(containsAllLookaheads(state.lookaheads, lookaheads))
+				return state;
+		for(MergeableState state : statesWithSameCore)
+			if(isWeaklyCompatible(state.lookaheads, lookaheads))
+			{
+				for(int i = 0; i < lookaheads.length; i ++)
+					for(int j = 0; j < lookaheadBitsLength; j ++)
+						state.lookaheads[i][j] |= lookaheads[i][j];
+				// the successors have to be recalculated with the new lookaheads
+				unfinishedStates.add(state);
+				return state;
+			}
+		MergeableState newState = new MergeableState(itemIds, lookaheads);
+		statesWithSameCore.add(newState);
+		unfinishedStates.add(newState);
+		return newState;
+	}
+
+	private boolean containsAllLookaheads(long[][] lookaheads, long[][] other)
+	{
+		for(int i = 0; i < lookaheads.length; i ++)
+			for(int j = 0; j < lookaheadBitsLength; j ++)
+				if((other[i][j] & ~lookaheads[i][j]) != 0)
+					return false;
+		return true;
+	}
+
+	/**
+	 * Two kernels with the same core are weakly compatible iff for each pair of different items i and j,
+	 * merging doesn't let the lookaheads of i and j overlap, or the lookaheads of i and j already overlap in one of the two kernels.
+	 * Merging weakly compatible states can't introduce reduce-reduce conflicts which wouldn't exist in the canonical automaton.
+	 */
+	private boolean isWeaklyCompatible(long[][] lookaheads1, long[][] lookaheads2)
+	{
+		for(int i = 0; i < lookaheads1.length; i ++)
+			for(int j = i + 1; j < lookaheads1.length; j ++)
+			{
+				if(!intersect(lookaheads1[i], lookaheads2[j]) && !intersect(lookaheads2[i], lookaheads1[j]))
+					continue;
+				if(!intersect(lookaheads1[i], lookaheads1[j]) && !intersect(lookaheads2[i], lookaheads2[j]))
+					return false;
+			}
+		return true;
+	}
+
+	private boolean intersect(long[] a, long[] b)
+	{
+		for(int j = 0; j < lookaheadBitsLength; j ++)
+			if((a[j] & b[j]) != 0)
+				return true;
+		return false;
+	}
+
+	private CanonicalAutomaton buildAutomaton(MergeableState initialState)
+	{
+		// merging may have made states with the same core equal; the successors of all of them are equally valid,
+		// and their closures are equal as well
+		Map<MergeableState, State> builtStates = new HashMap<>();
+		Map<State, State> allStates = new HashMap<>();
+		List<MergeableState> reachableStates = new ArrayList<>();
+		getOrBuildState(initialState, builtStates, allStates, reachableStates);
+
+		Set<Transition> transitions = new HashSet<>();
+		for(int i = 0; i < reachableStates.size(); i ++)
+		{
+			MergeableState state = reachableStates.get(i);
+			State origin = builtStates.get(state);
+			for(Entry<Symbol, MergeableState> e : state.successors.entrySet())
+				transitions.add(new Transition(origin, e.getKey(), getOrBuildState(e.getValue(), builtStates, allStates, reachableStates)));
+		}
+
+		return new CanonicalAutomaton(builtStates.get(initialState), allStates.keySet(), transitions);
+	}
+
+	private State getOrBuildState(MergeableState state, Map<MergeableState, State> builtStates, Map<State, State> allStates,
+			List<MergeableState> reachableStates)
+	{
+		State builtState = builtStates.get(state);
+		if(builtState == null)
+		{
+			builtState = closureCalculator.calculateClosure(toLookaheadItems(state.itemIds, state.lookaheads));
+			State existingState = allStates.putIfAbsent(builtState, builtState);
+			if(existingState != null)
+				builtState = existingState;
+			else
+				reachableStates.add(state);
+			builtStates.put(state, builtState);
+		}
+		return builtState;
+	}
+
+	private Set<LookaheadItem> toLookaheadItems(int[] itemIds, long[][] lookaheads)
+	{
+		Set<LookaheadItem> lookaheadItems = new HashSet<>();
+		for(int i = 0; i < itemIds.length; i ++)
+			// the lookaheads may still change by merging, but TerminalWordSets have to be immutable
+			lookaheadItems.add(new LookaheadItem(numbering.getItem(itemIds[i]), new TerminalWordSet(numbering, lookaheads[i].clone())));
+		return lookaheadItems;
+	}
+
+	private static void setBit(long[] bits, int index)
+	{
+		bits[index / Long.SIZE] |= 1L << index;
+	}
+
+	private static class MergeableState
+	{
+		// sorted
+		private final int[]							itemIds;
+		// indexed like itemIds; modified when other kernels are merged into this one
+		private final long[][]						lookaheads;
+		private final Map<Symbol, MergeableState>	successors;
+
+		public MergeableState(int[] itemIds, long[][] lookaheads)
+		{
+			this.itemIds = itemIds;
+			this.lookaheads = lookaheads;
+			this.successors = new HashMap<>();
+		}
+	}
+}
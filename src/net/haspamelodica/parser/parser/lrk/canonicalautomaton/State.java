@@ -1,16 +1,43 @@
 package net.haspamelodica.parser.parser.lrk.canonicalautomaton;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Set;
 
+import net.haspamelodica.parser.parser.lrk.ItemNumbering;
 import net.haspamelodica.parser.parser.lrk.LookaheadItem;
 
 public class State
 {
 	private final Set<LookaheadItem> items;
 
+	// states are looked up in the parse tables for every parse step
+	private final int hashCode;
+
+	// optional compact representation for fast comparisons; only comparable between states with the same numbering
+	private final ItemNumbering	numbering;
+	// bit vector over the IDs of all items of this state
+	private final long[]		core;
+	// only for k=1: the lookahead bit vectors of all items in the order of their IDs, each padded to the same length
+	private final long[]		lookaheadBits;
+
+	/**
+	 * The given set must not be modified afterwards.
+	 */
 	public State(Set<LookaheadItem> items)
 	{
-		this.items = items;
+		this(items, null, null, null);
+	}
+	/**
+	 * The given set and arrays must not be modified afterwards.
+	 */
+	State(Set<LookaheadItem> items, ItemNumbering numbering, long[] core, long[] lookaheadBits)
+	{
+		this.items = Collections.unmodifiableSet(items);
+		this.hashCode = calculateHashCode();
+		this.numbering = numbering;
+		this.core = core;
+		this.lookaheadBits = lookaheadBits;
 	}
 
 	public Set<LookaheadItem> getItems()
@@ -32,6 +59,10 @@ public class State
 
 	@Override
 	public int hashCode()
+	{
+		return hashCode;
+	}
+	private int calculateHashCode()
 	{
 		final int prime = 31;
 		int result = 1;
@@ -48,6 +79,15 @@ public class State
 		if(getClass() != obj.getClass())
 			return false;
 		State other = (State) obj;
+		if(hashCode != other.hashCode)
+			return false;
+		if(numbering != null && numbering == other.numbering)
+		{
+			if(!Arrays.equals(core, other.core))
+				return false;
+			if(lookaheadBits != null && other.lookaheadBits != null)
+				return Arrays.equals(lookaheadBits, other.lookaheadBits);
+		}
 		if(items == null)
 		{
 			if(other.items != null)
@@ -0,0 +1,33 @@
+package net.haspamelodica.parser.parser.lrk.compiled;
+
+/**
+ * The action table of a {@link CompiledLRkParser}. Entries are encoded as described in {@link CompiledLRkParser}.
+ */
+public interface ActionTable
+{
+	public int getStateCount();
+	public int getLookaheadCount();
+
+	/**
+	 * <code>lookaheadId</code> has to be a valid lookahead ID.
+	 */
+	public int getAction(int state, int lookaheadId);
+	/**
+	 * Returns the action {@link #getAction(int, int)} returns for all lookaheads which have no action of their own in the given state,
+	 * or {@link CompiledLRkParser#ERROR} if the table contains all actions exactly.
+	 */
+	public default int getDefaultAction(int state)
+	{
+		return CompiledLRkParser.ERROR;
+	}
+	/**
+	 * Returns the entries of the given state whose action differs from its {@link #getDefaultAction(int) default action},
+	 * as alternating lookahead IDs and actions, sorted by lookahead ID.
+	 */
+	public int[] getRow(int state);
+
+	/**
+	 * An estimate of the memory used by the arrays of this table.
+	 */
+	public long getSizeInBytes();
+}
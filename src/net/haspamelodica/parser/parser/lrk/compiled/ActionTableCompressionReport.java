@@ -0,0 +1,14 @@
+package net.haspamelodica.parser.parser.lrk.compiled;
+
+public record ActionTableCompressionReport(long bytesBefore, long bytesAfter, int stateCount, int distinctRowCount, int defaultReductionCount,
+		int packedEntryCount, int packedLength)
+{
+	@Override
+	public String toString()
+	{
+		return String.format("Action table: %d bytes before, %d bytes after compression (%.1f%%); "
+				+ "%d states, %d distinct rows, %d default reductions, %d entries packed into %d slots",
+				bytesBefore, bytesAfter, bytesBefore == 0 ? 100. : 100. * bytesAfter / bytesBefore,
+				stateCount, distinctRowCount, defaultReductionCount, packedEntryCount, packedLength);
+	}
+}
@@ -0,0 +1,150 @@
+package net.haspamelodica.parser.parser.lrk.compiled;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+import net.haspamelodica.parser.grammar.Terminal;
+import net.haspamelodica.parser.parser.lrk.LookaheadDecisionTree;
+import net.haspamelodica.parser.parser.lrk.Word;
+
+/**
+ * The compiled form of {@link LookaheadDecisionTree}s: all nodes of the decision trees of all states, stored in a single int array.
+ * Each node consists of one entry per terminal ID. An entry is either an action, encoded like in the action table,
+ * or a reference to the child node for that terminal, encoded as {@link #encodeNode(int) a negative number}.
+ * Like in {@link LookaheadDecisionTree}, the roots are never leaves.
+ * <p>
+ * If the action table has {@link ActionTable#getDefaultAction(int) default actions}, the trees are built only from the other entries,
+ * and lookaheads not leading to any of these get the default action.
+ * With adaptive lookahead, the action table itself would also return the default action for lookaheads of the wrong length.
+ */
+class CompiledDecisionTrees
+{
+	private final int	terminalCount;
+	private final int[]	roots;
+	private int[]		nodes;
+	private int			nodeCount;
+
+	private CompiledDecisionTrees(int stateCount, int terminalCount)
+	{
+		this.terminalCount = terminalCount;
+		this.roots = new int[stateCount];
+		this.nodes = new int[terminalCount * 16];
+	}
+
+	public static CompiledDecisionTrees build(ActionTable actionTable, List<Word> lookaheadsById, ToIntFunction<Terminal<?>> terminalIds, int terminalCount)
+	{
+		CompiledDecisionTrees result = new CompiledDecisionTrees(actionTable.getStateCount(), terminalCount);
+		int[][] lookaheadTerminalIds = new int[lookaheadsById.size()][];
+		for(int lookaheadId = 0; lookaheadId < lookaheadsById.size(); lookaheadId ++)
+			lookaheadTerminalIds[lookaheadId] = lookaheadsById.get(lookaheadId).getTerminals().stream().mapToInt(terminalIds).toArray();
+		for(int state = 0; state < actionTable.getStateCount(); state ++)
+		{
+			int defaultAction = actionTable.getDefaultAction(state);
+			List<int[]> lookaheads = new ArrayList<>();
+			List<Integer> actions = new ArrayList<>();
+			int[] row = actionTable.getRow(state);
+			for(int i = 0; i < row.length; i += 2)
+				if(row[i + 1] != CompiledLRkParser.ERROR)
+				{
+					lookaheads.add(lookaheadTerminalIds[row[i]]);
+					actions.add(row[i + 1]);
+				}
+			result.roots[state] = lookaheads.isEmpty() && defaultAction == CompiledLRkParser.ERROR ? -1
+					: result.buildNode(lookaheads, actions, 0, defaultAction);
+		}
+		result.nodes = Arrays.copyOf(result.nodes, result.nodeCount * terminalCount);
+		return result;
+	}
+
+	private int buildNode(List<int[]> lookaheads, List<Integer> actions, int depth, int defaultAction)
+	{
+		int node = nodeCount ++;
+		if(nodes.length < nodeCount * terminalCount)
+			nodes = Arrays.copyOf(nodes, nodes.length * 2);
+
+		List<List<int[]>> lookaheadsPerTerminal = new ArrayList<>();
+		List<List<Integer>> actionsPerTerminal = new ArrayList<>();
+		for(int terminal = 0; terminal < terminalCount; terminal ++)
+		{
+			lookaheadsPerTerminal.add(null);
+			actionsPerTerminal.add(null);
+		}
+		for(int i = 0; i < lookaheads.size(); i ++)
+		{
+			int[] lookahead = lookaheads.get(i);
+			if(lookahead.length <= depth)
+				throw new IllegalArgumentException("Lookaheads aren't prefix-free");
+			int terminal = lookahead[depth];
+			if(lookaheadsPerTerminal.get(terminal) == null)
+			{
+				lookaheadsPerTerminal.set(terminal, new ArrayList<>());
+				actionsPerTerminal.set(terminal, new ArrayList<>());
+			}
+			lookaheadsPerTerminal.get(terminal).add(lookahead);
+			actionsPerTerminal.get(terminal).add(actions.get(i));
+		}
+
+		for(int terminal = 0; terminal < terminalCount; terminal ++)
+		{
+			List<Integer> actionsForTerminal = actionsPerTerminal.get(terminal);
+			int entry;
+			if(actionsForTerminal == null)
+				entry = defaultAction;
+			else if(isUniform(lookaheadsPerTerminal.get(terminal), actionsForTerminal, depth + 1, defaultAction))
+				entry = actionsForTerminal.get(0);
+			else
+				entry = encodeNode(buildNode(lookaheadsPerTerminal.get(terminal), actionsForTerminal, depth + 1, defaultAction));
+			nodes[node * terminalCount + terminal] = entry;
+		}
+		return node;
+	}
+
+	/**
+	 * Returns whether all continuations of a prefix of the given length have the same action,
+	 * given the lookaheads starting with that prefix and their actions.
+	 */
+	private static boolean isUniform(List<int[]> lookaheads, List<Integer> actions, int prefixLength, int defaultAction)
+	{
+		// lookaheads are prefix-free, so a lookahead equal to the prefix is the only one
+		if(lookaheads.get(0).length == prefixLength)
+			return true;
+		int action = actions.get(0);
+		if(defaultAction != CompiledLRkParser.ERROR && defaultAction != action)
+			return false;
+		for(int other : actions)
+			if(other != action)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns -1 if the given state has no actions at all.
+	 */
+	public int getRoot(int state)
+	{
+		return roots[state];
+	}
+	public int getEntry(int node, int terminalId)
+	{
+		return nodes[node * terminalCount + terminalId];
+	}
+	public int getNodeCount()
+	{
+		return nodeCount;
+	}
+
+	public static boolean isNode(int entry)
+	{
+		return entry < 0;
+	}
+	public static int encodeNode(int node)
+	{
+		return ~node;
+	}
+	public static int decodeNode(int entry)
+	{
+		return ~entry;
+	}
+}
@@ -0,0 +1,394 @@
+package net.haspamelodica.parser.parser.lrk.compiled;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.haspamelodica.parser.ast.InnerNode;
+import net.haspamelodica.parser.grammar.Nonterminal;
+import net.haspamelodica.parser.grammar.Production;
+import net.haspamelodica.parser.grammar.Terminal;
+import net.haspamelodica.parser.parser.ListenerParser;
+import net.haspamelodica.parser.parser.ParseException;
+import net.haspamelodica.parser.parser.ReductionListener;
+import net.haspamelodica.parser.parser.TreeBuildingListener;
+import net.haspamelodica.parser.parser.lrk.GenericLRkParser;
+import net.haspamelodica.parser.parser.lrk.Word;
+import net.haspamelodica.parser.tokenizer.TokenStream;
+
+/**
+ * An LR(k) parser whose states, terminals, nonterminals and productions are numbered
+ * and whose goto tables are stored as flat int arrays.
+ * The action table is either a {@link DenseActionTable} or a {@link CompressedActionTable}.
+ * Action table entries are encoded by {@link #shift(int)}, {@link #reduce(int)} and {@link #finish(int)};
+ * {@link #ERROR} means there is no action.
+ * <p>
+ * The initial state always has ID 0, and {@link Terminal#EOF} always has ID 0.
+ * Lookahead IDs are terminal IDs for k=1, the single ID 0 for k=0, and IDs of interned lookahead words for k&gt;1.
+ * <p>
+ * If the lookahead is {@link #isLookaheadPackable() packable}, a lookahead can also be identified by a single long
+ * which contains the terminal IDs of the lookahead, {@link #PACKED_TERMINAL_BITS} bits each, the first terminal in the highest bits.
+ * Terminals unknown to this parser are packed as {@link #PACKED_UNKNOWN_TERMINAL}.
+ * <p>
+ * For k&gt;1, the action table rows are additionally compiled into {@link CompiledDecisionTrees decision trees},
+ * so that the lookahead can be read one token at a time, and only as far as needed to decide the action.
+ */
+public class CompiledLRkParser implements ListenerParser
+{
+	public static final int	ERROR		= 0;
+	public static final int	KIND_ERROR	= 0;
+	public static final int	KIND_SHIFT	= 1;
+	public static final int	KIND_REDUCE	= 2;
+	public static final int	KIND_FINISH	= 3;
+
+	public static final int	PACKED_TERMINAL_BITS		= 16;
+	public static final int	PACKED_UNKNOWN_TERMINAL		= (1 << PACKED_TERMINAL_BITS) - 1;
+	public static final int	MAX_PACKED_LOOKAHEAD_SIZE	= Long.SIZE / PACKED_TERMINAL_BITS;
+
+	private static final int	KIND_BITS	= 2;
+	private static final int	KIND_MASK	= (1 << KIND_BITS) - 1;
+
+	private final int						stateCount;
+	private final List<Terminal<?>>			terminalsById;
+	private final Map<Terminal<?>, Integer>	idsByTerminal;
+	private final List<Nonterminal>			nonterminalsById;
+	private final List<Production>			productionsById;
+	private final int[]						productionLhsIds;
+	private final int[]						productionRhsSizes;
+	private final boolean[]					finishDontIncludeStartSymbol;
+	private final Nonterminal				generatedStartSymbolIfAny;
+
+	private final int					lookaheadSize;
+	private final List<Word>			lookaheadsById;
+	private final Map<Word, Integer>	idsByLookahead;
+	private final boolean				lookaheadPackable;
+	private final PackedLookaheadIndex	packedLookaheadIndex;
+
+	private final ActionTable			actionTable;
+	// indexed by state; the reduce action if the state is consistent, ERROR otherwise
+	private final int[]					consistentStateActions;
+	private final int[]					gotoTable;
+	private final int[]					terminalGotoTable;
+	// only for k>1
+	private final CompiledDecisionTrees	decisionTrees;
+
+	/**
+	 * <code>terminalGotoTable</code> is only needed for lookahead size 0,
+	 * because otherwise shift entries already contain their target state.
+	 */
+	public CompiledLRkParser(int stateCount, List<Terminal<?>> terminalsById, List<Nonterminal> nonterminalsById,
+			List<Production> productionsById, boolean[] finishDontIncludeStartSymbol, Nonterminal generatedStartSymbolIfAny,
+			int lookaheadSize, List<Word> lookaheadsById, int[] actionTable, int[] gotoTable, int[] terminalGotoTable)
+	{
+		this(stateCount, terminalsById, nonterminalsById, productionsById, finishDontIncludeStartSymbol, generatedStartSymbolIfAny,
+				lookaheadSize, lookaheadsById, new DenseActionTable(stateCount, lookaheadsById.size(), actionTable), gotoTable, terminalGotoTable);
+	}
+	public CompiledLRkParser(int stateCount, List<Terminal<?>> terminalsById, List<Nonterminal> nonterminalsById,
+			List<Production> productionsById, boolean[] finishDontIncludeStartSymbol, Nonterminal generatedStartSymbolIfAny,
+			int lookaheadSize, List<Word> lookaheadsById, ActionTable actionTable, int[] gotoTable, int[] terminalGotoTable)
+	{
+		this.stateCount = stateCount;
+		this.terminalsById = List.copyOf(terminalsById);
+		// a local variable, so that the lambdas below don't capture this during construction
+		Map<Terminal<?>, Integer> idsByTerminal = indexMap(this.terminalsById);
+		this.idsByTerminal = idsByTerminal;
+		this.nonterminalsById = List.copyOf(nonterminalsById);
+		this.productionsById = List.copyOf(productionsById);
+		Map<Nonterminal, Integer> idsByNonterminal = indexMap(this.nonterminalsById);
+		this.productionLhsIds = this.productionsById.stream().map(Production::getLhs).mapToInt(idsByNonterminal::get).toArray();
+		this.productionRhsSizes = this.productionsById.stream().mapToInt(p -> p.getRhs().getSymbols().size()).toArray();
+		this.finishDontIncludeStartSymbol = finishDontIncludeStartSymbol.clone();
+		this.generatedStartSymbolIfAny = generatedStartSymbolIfAny;
+
+		this.lookaheadSize = lookaheadSize;
+		this.lookaheadsById = List.copyOf(lookaheadsById);
+		this.idsByLookahead = indexMap(this.lookaheadsById);
+		this.lookaheadPackable = lookaheadSize > 0 && lookaheadSize <= MAX_PACKED_LOOKAHEAD_SIZE
+				&& this.terminalsById.size() < PACKED_UNKNOWN_TERMINAL
+				&& this.lookaheadsById.stream().allMatch(w -> w.getLength() == lookaheadSize);
+		this.packedLookaheadIndex = lookaheadSize > 1 && lookaheadPackable
+				? new PackedLookaheadIndex(this.lookaheadsById.stream().mapToLong(w -> packLookahead(w, idsByTerminal)).toArray())
+				: null;
+
+		if(actionTable.getStateCount() != stateCount || actionTable.getLookaheadCount() != this.lookaheadsById.size())
+			throw new IllegalArgumentException("Action table has wrong size");
+		if(gotoTable.length != stateCount * this.nonterminalsById.size())
+			throw new IllegalArgumentException("Goto table has wrong size");
+		if(lookaheadSize == 0 && (terminalGotoTable == null || terminalGotoTable.length != stateCount * this.terminalsById.size()))
+			throw new IllegalArgumentException("Terminal goto table is missing or has wrong size");
+		this.actionTable = actionTable;
+		this.consistentStateActions = findConsistentStateActions(actionTable);
+		this.gotoTable = gotoTable.clone();
+		this.terminalGotoTable = lookaheadSize == 0 ? terminalGotoTable.clone() : null;
+		this.decisionTrees = lookaheadSize > 1
+				? CompiledDecisionTrees.build(actionTable, this.lookaheadsById, t -> idsByTerminal.getOrDefault(t, -1), this.terminalsById.size())
+				: null;
+	}
+
+	private static <E> Map<E, Integer> indexMap(List<E> elements)
+	{
+		Map<E, Integer> result = new HashMap<>();
+		for(int i = 0; i < elements.size(); i ++)
+			if(result.put(elements.get(i), i) != null)
+				throw new IllegalArgumentException("Duplicate element: " + elements.get(i));
+		return Map.copyOf(result);
+	}
+
+	/**
+	 * A state is consistent if the only action in it is a single reduction,
+	 * meaning that the lookahead doesn't have to be known to decide what to do.
+	 */
+	private static int[] findConsistentStateActions(ActionTable actionTable)
+	{
+		int[] result = new int[actionTable.getStateCount()];
+		for(int state = 0; state < result.length; state ++)
+		{
+			// all lookaheads not contained in the row have the default action
+			int onlyAction = actionTable.getDefaultAction(state);
+			int[] row = actionTable.getRow(state);
+			for(int i = 1; i < row.length; i += 2)
+			{
+				if(row[i] == ERROR)
+					continue;
+				if(onlyAction == ERROR)
+					onlyAction = row[i];
+				else if(onlyAction != row[i])
+				{
+					onlyAction = ERROR;
+					break;
+				}
+			}
+			result[state] = getKind(onlyAction) == KIND_REDUCE ? onlyAction : ERROR;
+		}
+		return result;
+	}
+
+	public static CompiledLRkParser compile(GenericLRkParser<?> parser)
+	{
+		return LRkParserCompiler.compile(parser, false);
+	}
+	/**
+	 * Equivalent to <code>compile(parser).compressActionTable()</code>,
+	 * except that the action table is compressed directly from the action table of <code>parser</code>,
+	 * so the uncompressed table, which has one entry per state and lookahead, is never created.
+	 */
+	public static CompiledLRkParser compileCompressed(GenericLRkParser<?> parser)
+	{
+		return LRkParserCompiler.compile(parser, true);
+	}
+
+	@Override
+	public InnerNode parse(TokenStream tokens) throws ParseException
+	{
+		return (InnerNode) parse(tokens, TreeBuildingListener.INSTANCE);
+	}
+	@Override
+	public <V> V parse(TokenStream tokens, ReductionListener<V> listener) throws ParseException
+	{
+		return new CompiledLRkParserExecution<>(this, tokens, listener).parse();
+	}
+
+	/**
+	 * Returns a parser equivalent to this one, except that its action table is compressed.
+	 * See {@link CompressedActionTable} for how this affects error detection.
+	 */
+	public CompiledLRkParser compressActionTable()
+	{
+		return withActionTable(CompressedActionTable.compress(actionTable));
+	}
+	/**
+	 * Returns a parser equivalent to this one whose driver is generated code,
+	 * in which the actions of each state and the gotos of each symbol are switches instead of table lookups.
+	 * See {@link ParserClassGenerator} for requirements.
+	 */
+	public ListenerParser generateParser()
+	{
+		return ParserClassGenerator.generate(this);
+	}
+	public CompiledLRkParser withActionTable(ActionTable actionTable)
+	{
+		return new CompiledLRkParser(stateCount, terminalsById, nonterminalsById, productionsById, finishDontIncludeStartSymbol,
+				generatedStartSymbolIfAny, lookaheadSize, lookaheadsById, actionTable, gotoTable, terminalGotoTable);
+	}
+
+	/**
+	 * A negative <code>lookaheadId</code> stands for a lookahead unknown to this parser,
+	 * which, like any other lookahead without an entry of its own, gets the {@link ActionTable#getDefaultAction(int) default action}.
+	 */
+	public int getAction(int state, int lookaheadId)
+	{
+		if(lookaheadId < 0)
+			return actionTable.getDefaultAction(state);
+		return actionTable.getAction(state, lookaheadId);
+	}
+	/**
+	 * Returns the only action of the given state if it is consistent, {@link #ERROR} otherwise.
+	 * In consistent states, the lookahead doesn't have to be known to decide what to do.
+	 */
+	public int getConsistentStateAction(int state)
+	{
+		return consistentStateActions[state];
+	}
+	public int getGoto(int state, int nonterminalId)
+	{
+		return gotoTable[state * nonterminalsById.size() + nonterminalId];
+	}
+	public int getTerminalGoto(int state, int terminalId)
+	{
+		return terminalGotoTable[state * terminalsById.size() + terminalId];
+	}
+
+	/**
+	 * Returns whether this parser has {@link CompiledDecisionTrees decision trees}, which is the case iff k&gt;1.
+	 */
+	public boolean hasDecisionTrees()
+	{
+		return decisionTrees != null;
+	}
+	/**
+	 * Returns the root node of the decision tree of the given state, or -1 if the state has no actions.
+	 * May only be called if this parser {@link #hasDecisionTrees() has decision trees}.
+	 */
+	public int getDecisionTreeRoot(int state)
+	{
+		return decisionTrees.getRoot(state);
+	}
+	/**
+	 * Returns either an action or, if {@link CompiledDecisionTrees#isNode(int)} is true, a reference to the next node.
+	 */
+	public int getDecisionTreeEntry(int node, int terminalId)
+	{
+		return decisionTrees.getEntry(node, terminalId);
+	}
+
+	/**
+	 * Returns -1 if the given terminal is unknown to this parser.
+	 */
+	public int getTerminalId(Terminal<?> terminal)
+	{
+		return idsByTerminal.getOrDefault(terminal, -1);
+	}
+	/**
+	 * Returns -1 if the given word is no lookahead of this parser.
+	 */
+	public int getLookaheadId(Word lookahead)
+	{
+		return idsByLookahead.getOrDefault(lookahead, -1);
+	}
+	/**
+	 * Returns -1 if the given packed word is no lookahead of this parser.
+	 * May only be called if the lookahead is {@link #isLookaheadPackable() packable}.
+	 */
+	public int getLookaheadId(long packedLookahead)
+	{
+		if(packedLookaheadIndex != null)
+			return packedLookaheadIndex.get(packedLookahead);
+		return packedLookahead == PACKED_UNKNOWN_TERMINAL ? -1 : (int) packedLookahead;
+	}
+
+	/**
+	 * Returns whether lookaheads of this parser fit into a long. This is never the case for k=0.
+	 */
+	public boolean isLookaheadPackable()
+	{
+		return lookaheadPackable;
+	}
+	public long packLookahead(Word lookahead)
+	{
+		return packLookahead(lookahead, idsByTerminal);
+	}
+	private static long packLookahead(Word lookahead, Map<Terminal<?>, Integer> idsByTerminal)
+	{
+		long packed = 0;
+		for(Terminal<?> terminal : lookahead.getTerminals())
+		{
+			int terminalId = idsByTerminal.getOrDefault(terminal, -1);
+			packed = (packed << PACKED_TERMINAL_BITS) | (terminalId < 0 ? PACKED_UNKNOWN_TERMINAL : terminalId);
+		}
+		return packed;
+	}
+
+	/**
+	 * Returns the lookaheads of the entries of the given state which aren't replaced by a {@link ActionTable#getDefaultAction(int) default action}.
+	 * Syntax errors are only detected in states without a default action, where these are all lookaheads with an action.
+	 */
+	public List<Word> getExpectedLookaheads(int state)
+	{
+		List<Word> result = new ArrayList<>();
+		int[] row = actionTable.getRow(state);
+		for(int i = 0; i < row.length; i += 2)
+			if(row[i + 1] != ERROR)
+				result.add(lookaheadsById.get(row[i]));
+		return result;
+	}
+
+	public int getStateCount()
+	{
+		return stateCount;
+	}
+	public ActionTable getActionTable()
+	{
+		return actionTable;
+	}
+	public List<Terminal<?>> getTerminalsById()
+	{
+		return terminalsById;
+	}
+	public List<Nonterminal> getNonterminalsById()
+	{
+		return nonterminalsById;
+	}
+	public List<Production> getProductionsById()
+	{
+		return productionsById;
+	}
+	public int getProductionLhsId(int production)
+	{
+		return productionLhsIds[production];
+	}
+	public int getProductionRhsSize(int production)
+	{
+		return productionRhsSizes[production];
+	}
+	public boolean finishDontIncludeStartSymbol(int production)
+	{
+		return finishDontIncludeStartSymbol[production];
+	}
+	public Nonterminal getGeneratedStartSymbolIfAny()
+	{
+		return generatedStartSymbolIfAny;
+	}
+	public int getLookaheadSize()
+	{
+		return lookaheadSize;
+	}
+	public List<Word> getLookaheadsById()
+	{
+		return lookaheadsById;
+	}
+
+	public static int shift(int targetState)
+	{
+		return (targetState << KIND_BITS) | KIND_SHIFT;
+	}
+	public static int reduce(int production)
+	{
+		return (production << KIND_BITS) | KIND_REDUCE;
+	}
+	public static int finish(int production)
+	{
+		return (production << KIND_BITS) | KIND_FINISH;
+	}
+	public static int getKind(int action)
+	{
+		return action & KIND_MASK;
+	}
+	/**
+	 * The target state for shift actions, the production ID for reduce and finish actions.
+	 */
+	public static int getOperand(int action)
+	{
+		return action >>> KIND_BITS;
+	}
+}
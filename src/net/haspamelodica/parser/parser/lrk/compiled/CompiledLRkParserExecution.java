@@ -0,0 +1,249 @@
+package net.haspamelodica.parser.parser.lrk.compiled;
+
+import static net.haspamelodica.parser.parser.lrk.compiled.CompiledLRkParser.KIND_ERROR;
+import static net.haspamelodica.parser.parser.lrk.compiled.CompiledLRkParser.KIND_FINISH;
+import static net.haspamelodica.parser.parser.lrk.compiled.CompiledLRkParser.KIND_REDUCE;
+import static net.haspamelodica.parser.parser.lrk.compiled.CompiledLRkParser.KIND_SHIFT;
+
+import java.util.Arrays;
+
+import net.haspamelodica.parser.ast.Token;
+import net.haspamelodica.parser.parser.ParseException;
+import net.haspamelodica.parser.parser.ReductionListener;
+import net.haspamelodica.parser.parser.lrk.LookaheadBuffer;
+import net.haspamelodica.parser.tokenizer.TokenStream;
+import net.haspamelodica.parser.tokenizer.TokenizingException;
+
+public class CompiledLRkParserExecution<V>
+{
+	/**
+	 * Returned instead of a state once the parse is finished.
+	 */
+	static final int FINISHED = -1;
+
+	private static final int INITIAL_STACK_CAPACITY = 32;
+
+	private final CompiledLRkParser		parser;
+	private final TokenStream			tokens;
+	private final ReductionListener<V>	listener;
+
+	private final LookaheadBuffer	lookahead;
+	private final boolean			lookaheadPackable;
+	private final long				packedLookaheadMask;
+	// only maintained if the lookahead is packable; the packed form of the lookahead buffer, padded with zeroes
+	private long packedLookahead;
+
+	// the state stack and the value stack always have the same size
+	private int[]		stateStack;
+	private Object[]	valueStack;
+	private int			stackSize;
+
+	private final StackSlice<V>	reducedValues;
+	private final StackSlice<V>	valuesBelow;
+	private V					reducedValue;
+	private V					result;
+
+	public CompiledLRkParserExecution(CompiledLRkParser parser, TokenStream tokens, ReductionListener<V> listener)
+	{
+		this.parser = parser;
+		this.tokens = tokens;
+		this.listener = listener;
+
+		int lookaheadSize = parser.getLookaheadSize();
+		this.lookahead = new LookaheadBuffer(lookaheadSize);
+		// with decision trees, the lookahead is never needed as a whole
+		this.lookaheadPackable = parser.isLookaheadPackable() && !parser.hasDecisionTrees();
+		int packedBits = lookaheadSize * CompiledLRkParser.PACKED_TERMINAL_BITS;
+		this.packedLookaheadMask = packedBits >= Long.SIZE ? -1 : (1L << packedBits) - 1;
+
+		this.stateStack = new int[INITIAL_STACK_CAPACITY];
+		this.valueStack = new Object[INITIAL_STACK_CAPACITY];
+		this.reducedValues = new StackSlice<>();
+		this.valuesBelow = new StackSlice<>();
+		push(0, null);
+	}
+
+	public V parse() throws ParseException
+	{
+		for(;;)
+		{
+			int currentState = stateStack[stackSize - 1];
+			// consistent states don't need the lookahead, so don't read it yet
+			int action = parser.getConsistentStateAction(currentState);
+			if(action == CompiledLRkParser.ERROR)
+				action = parser.hasDecisionTrees() ? lookupDecisionTree(currentState) : parser.getAction(currentState, getLookaheadId());
+			switch(CompiledLRkParser.getKind(action))
+			{
+				case KIND_SHIFT:
+					shift(parser.getLookaheadSize() != 0 ? CompiledLRkParser.getOperand(action) : getLR0ShiftTarget(currentState));
+					break;
+				case KIND_REDUCE:
+					int production = CompiledLRkParser.getOperand(action);
+					pushReduced(parser.getGoto(reduce(production), parser.getProductionLhsId(production)));
+					break;
+				case KIND_FINISH:
+					finish(CompiledLRkParser.getOperand(action));
+					return result;
+				case KIND_ERROR:
+					throw syntaxError(currentState);
+				default:
+					throw new IllegalStateException("Unknown action kind: " + CompiledLRkParser.getKind(action));
+			}
+		}
+	}
+
+	private int getLR0ShiftTarget(int currentState) throws TokenizingException
+	{
+		int terminalId = getNextTerminalId();
+		return terminalId < 0 ? -1 : parser.getTerminalGoto(currentState, terminalId);
+	}
+
+	// The following methods are the steps of the parse, also used by the code of GeneratedLRkParsers.
+
+	/**
+	 * Consumes the next token and pushes the given state.
+	 * A negative state means that the token can't be shifted; this is only possible for k=0.
+	 */
+	int shift(int targetState) throws ParseException
+	{
+		Token<?> token = consumeToken();
+		if(targetState < 0)
+			throw new ParseException("Got " + (token == null ? "EOF" : token) + ", which can't be shifted here");
+		push(targetState, listener.onShift(token));
+		return targetState;
+	}
+	/**
+	 * Pops the right hand side of the given production and returns the state below it.
+	 * The value of the reduction is pushed by the following call to {@link #pushReduced(int)}.
+	 */
+	int reduce(int production)
+	{
+		int oldStackSize = stackSize;
+		int newStackSize = oldStackSize - parser.getProductionRhsSize(production);
+		reducedValues.set(valueStack, newStackSize, oldStackSize);
+		// the bottom value belongs to the initial state and is never passed to the listener
+		valuesBelow.set(valueStack, 1, newStackSize);
+		reducedValue = listener.onReduce(parser.getProductionsById().get(production), reducedValues, valuesBelow);
+		reducedValues.set(null, 0, 0);
+		valuesBelow.set(null, 0, 0);
+		Arrays.fill(valueStack, newStackSize, oldStackSize, null);
+		stackSize = newStackSize;
+		return stateStack[newStackSize - 1];
+	}
+	/**
+	 * Pushes the given state, which is the goto target for the last reduction, together with the value of the reduction.
+	 */
+	int pushReduced(int state)
+	{
+		push(state, reducedValue);
+		reducedValue = null;
+		return state;
+	}
+	/**
+	 * Sets the {@link #getResult() result} and returns {@link #FINISHED}.
+	 */
+	@SuppressWarnings("unchecked")
+	int finish(int production)
+	{
+		if(parser.finishDontIncludeStartSymbol(production))
+			result = (V) valueStack[stackSize - 1];
+		else
+		{
+			reduce(production);
+			result = reducedValue;
+			reducedValue = null;
+		}
+		return FINISHED;
+	}
+	V getResult()
+	{
+		return result;
+	}
+	ParseException syntaxError(int state) throws TokenizingException
+	{
+		String locDesc = tokens.getCurrentLocationDescription();
+		Token<?> token = consumeToken();
+		return new ParseException((locDesc != null ? "Near " + locDesc + ": " : "") +
+				"Got " + (token == null ? "EOF" : token) + ", expected any of " + parser.getExpectedLookaheads(state));
+	}
+
+	private void push(int state, V value)
+	{
+		if(stackSize == stateStack.length)
+		{
+			stateStack = Arrays.copyOf(stateStack, stackSize * 2);
+			valueStack = Arrays.copyOf(valueStack, stackSize * 2);
+		}
+		stateStack[stackSize] = state;
+		valueStack[stackSize] = value;
+		stackSize ++;
+	}
+
+	private Token<?> consumeToken() throws TokenizingException
+	{
+		enforceLookaheadSize(1);
+		if(lookaheadPackable)
+			packedLookahead = (packedLookahead << CompiledLRkParser.PACKED_TERMINAL_BITS) & packedLookaheadMask;
+		return lookahead.poll();
+	}
+
+	int getLookaheadId() throws TokenizingException
+	{
+		int lookaheadSize = parser.getLookaheadSize();
+		if(lookaheadSize == 0)
+			return 0;
+		enforceLookaheadSize(lookaheadSize);
+		if(lookaheadPackable)
+			return parser.getLookaheadId(packedLookahead);
+		if(lookaheadSize == 1)
+			return parser.getTerminalId(lookahead.getTerminal(0));
+		return parser.getLookaheadId(lookahead.toWord());
+	}
+
+	/**
+	 * Returns the ID of the terminal of the next token, or -1 if it is unknown to the parser.
+	 * Only needed for k=0, where shift actions don't contain their target state.
+	 */
+	int getNextTerminalId() throws TokenizingException
+	{
+		enforceLookaheadSize(1);
+		return parser.getTerminalId(lookahead.getTerminal(0));
+	}
+
+	/**
+	 * Reads only as many lookahead tokens as needed to decide the action.
+	 */
+	int lookupDecisionTree(int currentState) throws TokenizingException
+	{
+		int node = parser.getDecisionTreeRoot(currentState);
+		if(node < 0)
+			return CompiledLRkParser.ERROR;
+		for(int position = 0;; position ++)
+		{
+			enforceLookaheadSize(position + 1);
+			int terminalId = parser.getTerminalId(lookahead.getTerminal(position));
+			// unknown terminals lead to none of the entries the tree was built from
+			if(terminalId < 0)
+				return parser.getAction(currentState, -1);
+			int entry = parser.getDecisionTreeEntry(node, terminalId);
+			if(!CompiledDecisionTrees.isNode(entry))
+				return entry;
+			node = CompiledDecisionTrees.decodeNode(entry);
+		}
+	}
+
+	private void enforceLookaheadSize(int lookaheadSize) throws TokenizingException
+	{
+		while(lookahead.size() < lookaheadSize)
+		{
+			Token<?> nextToken = tokens.nextToken();
+			if(lookaheadPackable)
+			{
+				int terminalId = parser.getTerminalId(LookaheadBuffer.terminalOf(nextToken));
+				int shift = (parser.getLookaheadSize() - lookahead.size() - 1) * CompiledLRkParser.PACKED_TERMINAL_BITS;
+				packedLookahead |= (long) (terminalId < 0 ? CompiledLRkParser.PACKED_UNKNOWN_TERMINAL : terminalId) << shift;
+			}
+			lookahead.add(nextToken);
+		}
+	}
+}
@@ -0,0 +1,295 @@
+package net.haspamelodica.parser.parser.lrk.compiled;
+
+import static net.haspamelodica.parser.parser.lrk.compiled.CompiledLRkParser.ERROR;
+import static net.haspamelodica.parser.parser.lrk.compiled.CompiledLRkParser.KIND_REDUCE;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An action table compressed using three techniques:
+ * <ul>
+ * <li>Each state containing reduce actions gets the most frequent of them as its default action,
+ * which replaces both the entries for this reduction and the error entries of this state.
+ * Because of this, syntax errors may be detected only after some more reductions, but never after a shift.</li>
+ * <li>States whose remaining entries are identical share one row.</li>
+ * <li>The distinct rows are overlaid in one array, each row displaced by some offset such that no entries collide.
+ * A check array records which row each entry belongs to.</li>
+ * </ul>
+ */
+public class CompressedActionTable implements ActionTable
+{
+	private final int	stateCount;
+	private final int	lookaheadCount;
+
+	// indexed by state
+	private final int[]	defaultActions;
+	private final int[]	rowIds;
+	// indexed by row ID; the entries of a row lie between its start and end index
+	private final int[]	rowOffsets;
+	private final int[]	rowStarts;
+	private final int[]	rowEnds;
+	// indexed by row offset + lookahead ID
+	private final int[]	checks;
+	private final int[]	actions;
+
+	private final ActionTableCompressionReport report;
+
+	private CompressedActionTable(int stateCount, int lookaheadCount, int[] defaultActions, int[] rowIds, int[] rowOffsets,
+			int[] rowStarts, int[] rowEnds, int[] checks, int[] actions, long bytesBefore, int defaultReductionCount, int packedEntryCount)
+	{
+		this.stateCount = stateCount;
+		this.lookaheadCount = lookaheadCount;
+		this.defaultActions = defaultActions;
+		this.rowIds = rowIds;
+		this.rowOffsets = rowOffsets;
+		this.rowStarts = rowStarts;
+		this.rowEnds = rowEnds;
+		this.checks = checks;
+		this.actions = actions;
+		this.report = new ActionTableCompressionReport(bytesBefore, getSizeInBytes(), stateCount, rowOffsets.length,
+				defaultReductionCount, packedEntryCount, checks.length);
+	}
+
+	public static CompressedActionTable compress(ActionTable table)
+	{
+		int[][] rows = new int[table.getStateCount()][];
+		int[] row = new int[2 * table.getLookaheadCount()];
+		for(int state = 0; state < rows.length; state ++)
+		{
+			int length = 0;
+			for(int lookaheadId = 0; lookaheadId < table.getLookaheadCount(); lookaheadId ++)
+			{
+				int action = table.getAction(state, lookaheadId);
+				if(action != ERROR)
+				{
+					row[length ++] = lookaheadId;
+					row[length ++] = action;
+				}
+			}
+			rows[state] = Arrays.copyOf(row, length);
+		}
+		return compress(table.getLookaheadCount(), rows, table.getSizeInBytes());
+	}
+	/**
+	 * Compresses an action table given as one sparse row per state,
+	 * without ever creating the uncompressed table.
+	 * Each row consists of alternating lookahead IDs and actions, in any order.
+	 * Lookaheads not contained in the row of a state have the action {@link CompiledLRkParser#ERROR}.
+	 */
+	public static CompressedActionTable compress(int lookaheadCount, int[][] rows)
+	{
+		return compress(lookaheadCount, rows, (long) rows.length * lookaheadCount * Integer.BYTES);
+	}
+	private static CompressedActionTable compress(int lookaheadCount, int[][] rows, long bytesBefore)
+	{
+		int stateCount = rows.length;
+
+		int[] defaultActions = new int[stateCount];
+		int[] rowIds = new int[stateCount];
+		Map<Row, Integer> idsByRow = new HashMap<>();
+		// each row is an array of alternating lookahead IDs and actions, sorted by lookahead ID
+		List<int[]> rowsById = new ArrayList<>();
+		int defaultReductionCount = 0;
+		for(int state = 0; state < stateCount; state ++)
+		{
+			int[] fullRow = sortByLookaheadId(rows[state], lookaheadCount);
+			int defaultAction = findDefaultAction(fullRow);
+			if(defaultAction != ERROR)
+				defaultReductionCount ++;
+			defaultActions[state] = defaultAction;
+
+			int[] row = new int[fullRow.length];
+			int length = 0;
+			for(int i = 0; i < fullRow.length; i += 2)
+				if(fullRow[i + 1] != ERROR && fullRow[i + 1] != defaultAction)
+				{
+					row[length ++] = fullRow[i];
+					row[length ++] = fullRow[i + 1];
+				}
+			rowIds[state] = idsByRow.computeIfAbsent(new Row(Arrays.copyOf(row, length)), r ->
+			{
+				rowsById.add(r.entries());
+				return rowsById.size() - 1;
+			});
+		}
+
+		int[] rowOffsets = new int[rowsById.size()];
+		int[] rowStarts = new int[rowsById.size()];
+		int[] rowEnds = new int[rowsById.size()];
+		int[] checks = new int[lookaheadCount];
+		int[] actions = new int[lookaheadCount];
+		Arrays.fill(checks, -1);
+		BitSet usedSlots = new BitSet();
+		int length = 0;
+		int packedEntryCount = 0;
+		// placing big rows first leaves the small ones to fill the gaps
+		List<Integer> rowIdsBySize = new ArrayList<>();
+		for(int rowId = 0; rowId < rowsById.size(); rowId ++)
+			rowIdsBySize.add(rowId);
+		rowIdsBySize.sort(Comparator.comparing((Integer rowId) -> rowsById.get(rowId).length).reversed());
+		for(int rowId : rowIdsBySize)
+		{
+			int[] row = rowsById.get(rowId);
+			if(row.length == 0)
+				continue;
+			int offset = findOffset(row, usedSlots);
+			int end = offset + row[row.length - 2] + 1;
+			if(end > checks.length)
+			{
+				int oldLength = checks.length;
+				checks = Arrays.copyOf(checks, Math.max(end, oldLength * 2));
+				actions = Arrays.copyOf(actions, checks.length);
+				Arrays.fill(checks, oldLength, checks.length, -1);
+			}
+			for(int i = 0; i < row.length; i += 2)
+			{
+				checks[offset + row[i]] = rowId;
+				actions[offset + row[i]] = row[i + 1];
+				usedSlots.set(offset + row[i]);
+			}
+			rowOffsets[rowId] = offset;
+			rowStarts[rowId] = offset + row[0];
+			rowEnds[rowId] = end;
+			length = Math.max(length, end);
+			packedEntryCount += row.length / 2;
+		}
+
+		return new CompressedActionTable(stateCount, lookaheadCount, defaultActions, rowIds, rowOffsets, rowStarts, rowEnds,
+				Arrays.copyOf(checks, length), Arrays.copyOf(actions, length), bytesBefore, defaultReductionCount, packedEntryCount);
+	}
+
+	private static int[] sortByLookaheadId(int[] row, int lookaheadCount)
+	{
+		if(row.length % 2 != 0)
+			throw new IllegalArgumentException("Row has odd length");
+		// lookahead IDs are non-negative, so sorting by the high half sorts by lookahead ID
+		long[] entries = new long[row.length / 2];
+		for(int i = 0; i < entries.length; i ++)
+		{
+			if(row[2 * i] < 0 || row[2 * i] >= lookaheadCount)
+				throw new IllegalArgumentException("Invalid lookahead ID: " + row[2 * i]);
+			entries[i] = (long) row[2 * i] << Integer.SIZE | row[2 * i + 1] & 0xFFFFFFFFL;
+		}
+		Arrays.sort(entries);
+		int[] result = new int[row.length];
+		for(int i = 0; i < entries.length; i ++)
+		{
+			if(i > 0 && entries[i] >>> Integer.SIZE == entries[i - 1] >>> Integer.SIZE)
+				throw new IllegalArgumentException("Duplicate lookahead ID: " + (entries[i] >>> Integer.SIZE));
+			result[2 * i] = (int) (entries[i] >>> Integer.SIZE);
+			result[2 * i + 1] = (int) entries[i];
+		}
+		return result;
+	}
+
+	private static int findDefaultAction(int[] row)
+	{
+		Map<Integer, Integer> reductionCounts = new HashMap<>();
+		int defaultAction = ERROR;
+		int defaultActionCount = 0;
+		for(int i = 1; i < row.length; i += 2)
+			if(CompiledLRkParser.getKind(row[i]) == KIND_REDUCE)
+			{
+				int count = reductionCounts.merge(row[i], 1, Integer::sum);
+				if(count > defaultActionCount)
+				{
+					defaultAction = row[i];
+					defaultActionCount = count;
+				}
+			}
+		return defaultAction;
+	}
+
+	/**
+	 * Only offsets which put the first entry of the row onto a free slot are tried,
+	 * so each candidate offset is found by skipping directly to the next free slot.
+	 */
+	private static int findOffset(int[] row, BitSet usedSlots)
+	{
+		int firstLookaheadId = row[0];
+		for(int slot = usedSlots.nextClearBit(firstLookaheadId);; slot = usedSlots.nextClearBit(slot + 1))
+		{
+			int offset = slot - firstLookaheadId;
+			boolean fits = true;
+			for(int i = 2; i < row.length && fits; i += 2)
+				fits = !usedSlots.get(offset + row[i]);
+			if(fits)
+				return offset;
+		}
+	}
+
+	@Override
+	public int getStateCount()
+	{
+		return stateCount;
+	}
+	@Override
+	public int getLookaheadCount()
+	{
+		return lookaheadCount;
+	}
+	@Override
+	public int getAction(int state, int lookaheadId)
+	{
+		int rowId = rowIds[state];
+		int index = rowOffsets[rowId] + lookaheadId;
+		if(index < checks.length && checks[index] == rowId)
+			return actions[index];
+		return defaultActions[state];
+	}
+	@Override
+	public int getDefaultAction(int state)
+	{
+		return defaultActions[state];
+	}
+	/**
+	 * Only looks at the part of the overlaid array between the first and the last entry of the row of the given state.
+	 */
+	@Override
+	public int[] getRow(int state)
+	{
+		int rowId = rowIds[state];
+		int[] row = new int[2 * (rowEnds[rowId] - rowStarts[rowId])];
+		int length = 0;
+		for(int index = rowStarts[rowId]; index < rowEnds[rowId]; index ++)
+			if(checks[index] == rowId)
+			{
+				row[length ++] = index - rowOffsets[rowId];
+				row[length ++] = actions[index];
+			}
+		return Arrays.copyOf(row, length);
+	}
+	@Override
+	public long getSizeInBytes()
+	{
+		return (long) (defaultActions.length + rowIds.length + 3 * rowOffsets.length + checks.length + actions.length) * Integer.BYTES;
+	}
+
+	public ActionTableCompressionReport getReport()
+	{
+		return report;
+	}
+
+	/**
+	 * A row of alternating lookahead IDs and actions, compared by content.
+	 */
+	private record Row(int[] entries)
+	{
+		@Override
+		public int hashCode()
+		{
+			return Arrays.hashCode(entries);
+		}
+		@Override
+		public boolean equals(Object obj)
+		{
+			return obj instanceof Row other && Arrays.equals(entries, other.entries);
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package net.haspamelodica.parser.parser.lrk.compiled;
+
+import java.util.Arrays;
+
+public class DenseActionTable implements ActionTable
+{
+	private final int	stateCount;
+	private final int	lookaheadCount;
+	private final int[]	actions;
+
+	/**
+	 * <code>actions</code> contains the action for state <code>s</code> and lookahead <code>l</code>
+	 * at index <code>s * lookaheadCount + l</code>.
+	 */
+	public DenseActionTable(int stateCount, int lookaheadCount, int[] actions)
+	{
+		if(actions.length != stateCount * lookaheadCount)
+			throw new IllegalArgumentException("Action table has wrong size");
+		this.stateCount = stateCount;
+		this.lookaheadCount = lookaheadCount;
+		this.actions = actions.clone();
+	}
+
+	@Override
+	public int getStateCount()
+	{
+		return stateCount;
+	}
+	@Override
+	public int getLookaheadCount()
+	{
+		return lookaheadCount;
+	}
+	@Override
+	public int getAction(int state, int lookaheadId)
+	{
+		return actions[state * lookaheadCount + lookaheadId];
+	}
+	@Override
+	public int[] getRow(int state)
+	{
+		int[] row = new int[2 * lookaheadCount];
+		int length = 0;
+		for(int lookaheadId = 0, index = state * lookaheadCount; lookaheadId < lookaheadCount; lookaheadId ++, index ++)
+			if(actions[index] != CompiledLRkParser.ERROR)
+			{
+				row[length ++] = lookaheadId;
+				row[length ++] = actions[index];
+			}
+		return Arrays.copyOf(row, length);
+	}
+	@Override
+	public long getSizeInBytes()
+	{
+		return (long) actions.length * Integer.BYTES;
+	}
+}
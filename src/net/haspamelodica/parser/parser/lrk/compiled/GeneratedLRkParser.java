@@ -0,0 +1,46 @@
+package net.haspamelodica.parser.parser.lrk.compiled;
+
+import net.haspamelodica.parser.ast.InnerNode;
+import net.haspamelodica.parser.parser.ListenerParser;
+import net.haspamelodica.parser.parser.ParseException;
+import net.haspamelodica.parser.parser.ReductionListener;
+import net.haspamelodica.parser.parser.TreeBuildingListener;
+import net.haspamelodica.parser.tokenizer.TokenStream;
+
+/**
+ * The superclass of the parsers generated by {@link ParserSourceGenerator}.
+ * Subclasses contain the driver loop, in which the actions of each state and the gotos of each symbol are switches.
+ * The {@link CompiledLRkParserExecution} only provides the stacks, the lookahead and the calls to the listener.
+ */
+abstract class GeneratedLRkParser implements ListenerParser
+{
+	private final CompiledLRkParser parser;
+
+	protected GeneratedLRkParser(CompiledLRkParser parser)
+	{
+		this.parser = parser;
+	}
+
+	@Override
+	public InnerNode parse(TokenStream tokens) throws ParseException
+	{
+		return (InnerNode) parse(tokens, TreeBuildingListener.INSTANCE);
+	}
+	@Override
+	public <V> V parse(TokenStream tokens, ReductionListener<V> listener) throws ParseException
+	{
+		CompiledLRkParserExecution<V> execution = new CompiledLRkParserExecution<>(parser, tokens, listener);
+		run(execution);
+		return execution.getResult();
+	}
+
+	/**
+	 * Runs the given execution until the parse is finished.
+	 */
+	abstract void run(CompiledLRkParserExecution<?> execution) throws ParseException;
+
+	public CompiledLRkParser getParser()
+	{
+		return parser;
+	}
+}
@@ -0,0 +1,225 @@
+package net.haspamelodica.parser.parser.lrk.compiled;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import net.haspamelodica.parser.grammar.Nonterminal;
+import net.haspamelodica.parser.grammar.Production;
+import net.haspamelodica.parser.grammar.Symbol;
+import net.haspamelodica.parser.grammar.Terminal;
+import net.haspamelodica.parser.parser.lrk.GenericLRkParser;
+import net.haspamelodica.parser.parser.lrk.Word;
+import net.haspamelodica.parser.parser.lrk.action.Action;
+import net.haspamelodica.parser.parser.lrk.action.FinishAction;
+import net.haspamelodica.parser.parser.lrk.action.ReduceAction;
+
+class LRkParserCompiler<STATE>
+{
+	private final GenericLRkParser<STATE>	parser;
+	private final boolean					compressActionTable;
+
+	private final Map<STATE, Integer>		idsByState;
+	private final List<STATE>				statesById;
+	private final Map<Terminal<?>, Integer>	idsByTerminal;
+	private final List<Terminal<?>>			terminalsById;
+	private final Map<Nonterminal, Integer>	idsByNonterminal;
+	private final List<Nonterminal>			nonterminalsById;
+	private final Map<Production, Integer>	idsByProduction;
+	private final List<Production>			productionsById;
+	private final Map<Word, Integer>		idsByLookahead;
+	private final List<Word>				lookaheadsById;
+
+	private LRkParserCompiler(GenericLRkParser<STATE> parser, boolean compressActionTable)
+	{
+		this.parser = parser;
+		this.compressActionTable = compressActionTable;
+
+		this.idsByState = new HashMap<>();
+		this.statesById = new ArrayList<>();
+		this.idsByTerminal = new HashMap<>();
+		this.terminalsById = new ArrayList<>();
+		this.idsByNonterminal = new HashMap<>();
+		this.nonterminalsById = new ArrayList<>();
+		this.idsByProduction = new HashMap<>();
+		this.productionsById = new ArrayList<>();
+		this.idsByLookahead = new HashMap<>();
+		this.lookaheadsById = new ArrayList<>();
+	}
+
+	public static <STATE> CompiledLRkParser compile(GenericLRkParser<STATE> parser, boolean compressActionTable)
+	{
+		return new LRkParserCompiler<>(parser, compressActionTable).compile();
+	}
+
+	private CompiledLRkParser compile()
+	{
+		numberEverything();
+
+		int lookaheadSize = parser.getLookaheadSize();
+		int stateCount = statesById.size();
+		int terminalCount = terminalsById.size();
+		int nonterminalCount = nonterminalsById.size();
+		int lookaheadCount = lookaheadsById.size();
+
+		int[] gotoTable = new int[stateCount * nonterminalCount];
+		int[] terminalGotoTable = lookaheadSize == 0 ? new int[stateCount * terminalCount] : null;
+		Arrays.fill(gotoTable, -1);
+		if(terminalGotoTable != null)
+			Arrays.fill(terminalGotoTable, -1);
+		for(Entry<STATE, Map<Symbol, STATE>> gotoEntry : parser.getGotoTable().entrySet())
+		{
+			int state = idsByState.get(gotoEntry.getKey());
+			for(Entry<Symbol, STATE> e : gotoEntry.getValue().entrySet())
+			{
+				int target = idsByState.get(e.getValue());
+				switch(e.getKey().getType())
+				{
+					case NONTERMINAL -> gotoTable[state * nonterminalCount + idsByNonterminal.get(e.getKey())] = target;
+					case TERMINAL ->
+					{
+						if(terminalGotoTable != null)
+							terminalGotoTable[state * terminalCount + idsByTerminal.get(e.getKey())] = target;
+					}
+				}
+			}
+		}
+
+		boolean[] finishDontIncludeStartSymbol = new boolean[productionsById.size()];
+		// one sparse row per state of alternating lookahead IDs and actions, as expected by CompressedActionTable
+		int[][] actionRows = new int[stateCount][0];
+		for(Entry<STATE, Map<Word, Action>> actionEntry : parser.getActionTable().entrySet())
+		{
+			STATE state = actionEntry.getKey();
+			int[] row = new int[2 * actionEntry.getValue().size()];
+			int length = 0;
+			for(Entry<Word, Action> e : actionEntry.getValue().entrySet())
+			{
+				Word lookahead = e.getKey();
+				Action action = e.getValue();
+				int compiledAction = switch(action.getType())
+				{
+					case SHIFT -> CompiledLRkParser.shift(lookaheadSize == 0 ? 0 : findShiftTarget(state, lookahead));
+					case REDUCE -> CompiledLRkParser.reduce(idsByProduction.get(((ReduceAction) action).getProduction()));
+					case FINISH ->
+					{
+						FinishAction finishAction = (FinishAction) action;
+						int production = idsByProduction.get(finishAction.getProduction());
+						finishDontIncludeStartSymbol[production] = finishAction.dontIncludeStartSymbol();
+						yield CompiledLRkParser.finish(production);
+					}
+					case ERROR -> CompiledLRkParser.ERROR;
+				};
+				if(compiledAction != CompiledLRkParser.ERROR)
+				{
+					row[length ++] = idsByLookahead.get(lookahead);
+					row[length ++] = compiledAction;
+				}
+			}
+			actionRows[idsByState.get(state)] = Arrays.copyOf(row, length);
+		}
+
+		ActionTable actionTable;
+		if(compressActionTable)
+			actionTable = CompressedActionTable.compress(lookaheadCount, actionRows);
+		else
+		{
+			int[] actions = new int[stateCount * lookaheadCount];
+			for(int state = 0; state < stateCount; state ++)
+				for(int i = 0; i < actionRows[state].length; i += 2)
+					actions[state * lookaheadCount + actionRows[state][i]] = actionRows[state][i + 1];
+			actionTable = new DenseActionTable(stateCount, lookaheadCount, actions);
+		}
+
+		return new CompiledLRkParser(stateCount, terminalsById, nonterminalsById, productionsById, finishDontIncludeStartSymbol,
+				parser.getGeneratedStartSymbolIfAny(), lookaheadSize, lookaheadsById, actionTable, gotoTable, terminalGotoTable);
+	}
+
+	private int findShiftTarget(STATE state, Word lookahead)
+	{
+		STATE target = parser.getGotoTable().getOrDefault(state, Map.of()).get(lookahead.getTerminals().get(0));
+		if(target == null)
+			throw new IllegalArgumentException("Shift action without a goto table entry");
+		return idsByState.get(target);
+	}
+
+	private void numberEverything()
+	{
+		// the initial state always gets ID 0, EOF always gets ID 0
+		numberState(parser.getInitialState());
+		numberTerminal(Terminal.EOF);
+
+		for(Entry<STATE, Map<Symbol, STATE>> gotoEntry : parser.getGotoTable().entrySet())
+		{
+			numberState(gotoEntry.getKey());
+			for(Entry<Symbol, STATE> e : gotoEntry.getValue().entrySet())
+			{
+				numberSymbol(e.getKey());
+				numberState(e.getValue());
+			}
+		}
+		for(Entry<STATE, Map<Word, Action>> actionEntry : parser.getActionTable().entrySet())
+		{
+			numberState(actionEntry.getKey());
+			for(Entry<Word, Action> e : actionEntry.getValue().entrySet())
+			{
+				e.getKey().getTerminals().forEach(this::numberTerminal);
+				switch(e.getValue().getType())
+				{
+					case SHIFT, ERROR ->
+					{}
+					case REDUCE -> numberProduction(((ReduceAction) e.getValue()).getProduction());
+					case FINISH -> numberProduction(((FinishAction) e.getValue()).getProduction());
+				}
+			}
+		}
+
+		switch(parser.getLookaheadSize())
+		{
+			case 0 -> numberLookahead(Word.EPSILON);
+			// for k=1, lookahead IDs are the same as terminal IDs
+			case 1 -> terminalsById.forEach(t -> numberLookahead(new Word(t)));
+			default -> parser.getActionTable().values().forEach(m -> m.keySet().forEach(this::numberLookahead));
+		}
+	}
+
+	private void numberProduction(Production production)
+	{
+		if(number(production, idsByProduction, productionsById))
+		{
+			numberSymbol(production.getLhs());
+			production.getRhs().getSymbols().forEach(this::numberSymbol);
+		}
+	}
+	private void numberSymbol(Symbol symbol)
+	{
+		switch(symbol.getType())
+		{
+			case TERMINAL -> numberTerminal((Terminal<?>) symbol);
+			case NONTERMINAL -> number((Nonterminal) symbol, idsByNonterminal, nonterminalsById);
+		}
+	}
+	private void numberTerminal(Terminal<?> terminal)
+	{
+		number(terminal, idsByTerminal, terminalsById);
+	}
+	private void numberState(STATE state)
+	{
+		number(state, idsByState, statesById);
+	}
+	private void numberLookahead(Word lookahead)
+	{
+		number(lookahead, idsByLookahead, lookaheadsById);
+	}
+	private static <E> boolean number(E element, Map<E, Integer> ids, List<E> elementsById)
+	{
+		if(ids.containsKey(element))
+			return false;
+		ids.put(element, elementsById.size());
+		elementsById.add(element);
+		return true;
+	}
+}
@@ -0,0 +1,58 @@
+package net.haspamelodica.parser.parser.lrk.compiled;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash map from packed lookahead keys to lookahead IDs.
+ */
+public class PackedLookaheadIndex
+{
+	private static final long EMPTY = -1;
+
+	private final long[]	keys;
+	private final int[]		values;
+	private final int		mask;
+
+	public PackedLookaheadIndex(long[] packedLookaheadsById)
+	{
+		int capacity = Integer.highestOneBit(Math.max(packedLookaheadsById.length, 1) * 2 - 1) << 1;
+		this.keys = new long[capacity];
+		this.values = new int[capacity];
+		this.mask = capacity - 1;
+		Arrays.fill(keys, EMPTY);
+
+		for(int id = 0; id < packedLookaheadsById.length; id ++)
+		{
+			long key = packedLookaheadsById[id];
+			if(key == EMPTY)
+				throw new IllegalArgumentException("Illegal key: " + key);
+			int slot = slot(key);
+			for(; keys[slot] != EMPTY; slot = (slot + 1) & mask)
+				if(keys[slot] == key)
+					throw new IllegalArgumentException("Duplicate key: " + key);
+			keys[slot] = key;
+			values[slot] = id;
+		}
+	}
+
+	/**
+	 * Returns -1 if the given key is not contained.
+	 */
+	public int get(long key)
+	{
+		for(int slot = slot(key);; slot = (slot + 1) & mask)
+		{
+			long slotKey = keys[slot];
+			if(slotKey == key && slotKey != EMPTY)
+				return values[slot];
+			if(slotKey == EMPTY)
+				return -1;
+		}
+	}
+
+	private int slot(long key)
+	{
+		long hash = key * 0x9e3779b97f4a7c15L;
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+}
@@ -0,0 +1,151 @@
+package net.haspamelodica.parser.parser.lrk.compiled;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import net.haspamelodica.parser.ast.InnerNode;
+import net.haspamelodica.parser.parser.ListenerParser;
+import net.haspamelodica.parser.parser.ParseException;
+import net.haspamelodica.parser.parser.Parser;
+import net.haspamelodica.parser.parser.ReductionListener;
+import net.haspamelodica.parser.tokenizer.TokenStream;
+import net.haspamelodica.parser.tokenizer.TokenizingException;
+
+/**
+ * Turns a {@link CompiledLRkParser} into a hidden class generated by {@link ParserSourceGenerator}.
+ * This needs the system Java compiler, meaning it only works if running on a JDK.
+ * The generated class is compiled against the classes of this library it references as loaded by the class loader of this class,
+ * not against the class path, so this also works if this library isn't on the class path, for example in an OSGi framework.
+ */
+public class ParserClassGenerator
+{
+	// the classes of this library javac needs for compiling the generated class:
+	// the ones it references, their supertypes, and the ones javac looks at while checking the methods it overrides and calls
+	private static final List<Class<?>> LIBRARY_CLASSES = List.of(GeneratedLRkParser.class, ListenerParser.class, Parser.class,
+			CompiledLRkParser.class, CompiledLRkParserExecution.class, ParseException.class, TokenizingException.class,
+			InnerNode.class, ReductionListener.class, TokenStream.class);
+
+	private static final AtomicInteger nextClassId = new AtomicInteger();
+
+	private ParserClassGenerator()
+	{}
+
+	public static ListenerParser generate(CompiledLRkParser parser)
+	{
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if(compiler == null)
+			throw new IllegalStateException("No Java compiler available");
+
+		String className = "GeneratedParser" + nextClassId.getAndIncrement();
+		String source = ParserSourceGenerator.generateSource(parser, className);
+
+		ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+		StringWriter diagnostics = new StringWriter();
+		try(StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(null, null, null))
+		{
+			standardFileManager.setLocation(StandardLocation.CLASS_PATH, List.of());
+			Map<String, List<JavaFileObject>> libraryClassFilesByPackage = new HashMap<>();
+			Map<JavaFileObject, String> libraryClassNames = new HashMap<>();
+			for(Class<?> libraryClass : LIBRARY_CLASSES)
+			{
+				JavaFileObject classFile = libraryClassFile(libraryClass);
+				libraryClassFilesByPackage.computeIfAbsent(libraryClass.getPackageName(), p -> new ArrayList<>()).add(classFile);
+				libraryClassNames.put(classFile, libraryClass.getName());
+			}
+			JavaFileManager fileManager = new ForwardingJavaFileManager<>(standardFileManager)
+			{
+				@Override
+				public Iterable<JavaFileObject> list(Location location, String packageName, Set<Kind> kinds, boolean recurse) throws IOException
+				{
+					if(location == StandardLocation.CLASS_PATH && libraryClassFilesByPackage.containsKey(packageName))
+						return kinds.contains(Kind.CLASS) ? libraryClassFilesByPackage.get(packageName) : List.of();
+					return super.list(location, packageName, kinds, recurse);
+				}
+				@Override
+				public String inferBinaryName(Location location, JavaFileObject file)
+				{
+					String libraryClassName = libraryClassNames.get(file);
+					return libraryClassName != null ? libraryClassName : super.inferBinaryName(location, file);
+				}
+				@Override
+				public JavaFileObject getJavaFileForOutput(Location location, String name, Kind kind, FileObject sibling)
+				{
+					return new SimpleJavaFileObject(URI.create("mem:///" + name.replace('.', '/') + kind.extension), kind)
+					{
+						@Override
+						public OutputStream openOutputStream()
+						{
+							return classBytes;
+						}
+					};
+				}
+			};
+			JavaFileObject sourceFile = new SimpleJavaFileObject(URI.create("mem:///" + className + Kind.SOURCE.extension), Kind.SOURCE)
+			{
+				@Override
+				public CharSequence getCharContent(boolean ignoreEncodingErrors)
+				{
+					return source;
+				}
+			};
+			List<String> options = List.of("-proc:none");
+			if(!compiler.getTask(diagnostics, fileManager, null, options, null, List.of(sourceFile)).call())
+				throw new IllegalStateException("Couldn't compile generated parser: " + diagnostics);
+		} catch(IOException e)
+		{
+			throw new IllegalStateException("Couldn't set up Java compiler", e);
+		}
+
+		try
+		{
+			// the hidden class is in the package of this class, so it can access package-private members
+			Lookup lookup = MethodHandles.lookup().defineHiddenClass(classBytes.toByteArray(), true);
+			return (ListenerParser) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class, CompiledLRkParser.class))
+					.invoke(parser);
+		} catch(Throwable e)
+		{
+			throw new IllegalStateException("Couldn't load generated parser", e);
+		}
+	}
+
+	private static JavaFileObject libraryClassFile(Class<?> libraryClass)
+	{
+		String fileName = libraryClass.getSimpleName() + Kind.CLASS.extension;
+		return new SimpleJavaFileObject(URI.create("mem:///" + libraryClass.getName().replace('.', '/') + Kind.CLASS.extension), Kind.CLASS)
+		{
+			@Override
+			public InputStream openInputStream() throws IOException
+			{
+				InputStream in = libraryClass.getResourceAsStream(fileName);
+				if(in == null)
+					throw new FileNotFoundException("Class file of " + libraryClass.getName() + " not found");
+				return in;
+			}
+		};
+	}
+}
@@ -0,0 +1,267 @@
+package net.haspamelodica.parser.parser.lrk.compiled;
+
+import static net.haspamelodica.parser.parser.lrk.compiled.CompiledLRkParser.ERROR;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import net.haspamelodica.parser.parser.ParseException;
+
+/**
+ * Generates Java source code of a {@link GeneratedLRkParser} equivalent to a given {@link CompiledLRkParser}.
+ * The driver loop is a switch over states. The actions of each state are a switch over lookahead IDs,
+ * or for k&gt;1 over the action the decision tree of the state leads to, and the gotos of each symbol are a switch over states.
+ * States with identical actions share one method.
+ * Switches with too many cases for one method are split into several methods.
+ * <p>
+ * The generated class uses package-private methods of {@link CompiledLRkParserExecution}, so it is in the package of this class.
+ * It is public, final and has a public constructor taking the parser it was generated from.
+ */
+public class ParserSourceGenerator
+{
+	// keeps methods below HotSpot's limit of 8000 bytes of bytecode, above which methods aren't JIT-compiled
+	private static final int	MAX_CASES_PER_METHOD	= 256;
+	private static final String	INDENT					= "\t";
+	private static final String	EXECUTION_TYPE			= CompiledLRkParserExecution.class.getSimpleName() + "<?>";
+	private static final String	ROW_PARAMETERS			= EXECUTION_TYPE + " execution, int state";
+
+	private final CompiledLRkParser	parser;
+	private final String			className;
+
+	private final StringBuilder	source;
+	private int					chunkCount;
+
+	private ParserSourceGenerator(CompiledLRkParser parser, String className)
+	{
+		this.parser = parser;
+		this.className = className;
+
+		this.source = new StringBuilder();
+	}
+
+	public static String generateSource(CompiledLRkParser parser, String className)
+	{
+		return new ParserSourceGenerator(parser, className).generateSource();
+	}
+
+	private String generateSource()
+	{
+		List<Row> rowsById = new ArrayList<>();
+		int[] rowIds = numberRows(rowsById);
+
+		line(0, "package " + ParserSourceGenerator.class.getPackageName() + ";");
+		line(0, "");
+		line(0, "public final class " + className + " extends " + GeneratedLRkParser.class.getSimpleName());
+		line(0, "{");
+		line(1, "public " + className + "(" + CompiledLRkParser.class.getSimpleName() + " parser)");
+		line(1, "{");
+		line(2, "super(parser);");
+		line(1, "}");
+		line(0, "");
+		line(1, "@Override");
+		line(1, "void run(" + EXECUTION_TYPE + " execution) throws " + ParseException.class.getName());
+		line(1, "{");
+		line(2, "for(int state = 0; state != " + CompiledLRkParserExecution.FINISHED + ";)");
+		line(3, "state = step(execution, state);");
+		line(1, "}");
+
+		Map<Integer, String> rowCalls = new TreeMap<>();
+		for(int state = 0; state < rowIds.length; state ++)
+			rowCalls.put(state, "return row" + rowIds[state] + "(execution, state);");
+		generateSwitchMethod("step", ROW_PARAMETERS, "execution, state", "state", rowCalls, "throw new IndexOutOfBoundsException(state);");
+		for(int rowId = 0; rowId < rowsById.size(); rowId ++)
+			generateRow(rowId, rowsById.get(rowId));
+		generateGotos();
+		if(parser.getLookaheadSize() == 0)
+			generateTerminalGotos();
+		line(0, "}");
+		return source.toString();
+	}
+
+	private void generateRow(int rowId, Row row)
+	{
+		String name = "row" + rowId;
+		if(row.consistentAction() != ERROR)
+			// consistent states don't need the lookahead, so don't read it
+			generateMethod(name, ROW_PARAMETERS, action(row.consistentAction()));
+		else if(parser.getLookaheadSize() == 0)
+			generateMethod(name, ROW_PARAMETERS, action(row.entries().length == 0 ? row.defaultAction() : row.entries()[1]));
+		else if(!parser.hasDecisionTrees())
+		{
+			generateMethod(name, ROW_PARAMETERS, "return " + name + "Lookahead(execution, state, execution.getLookaheadId());");
+			Map<Integer, String> cases = new TreeMap<>();
+			for(int i = 0; i < row.entries().length; i += 2)
+				cases.put(row.entries()[i], action(row.entries()[i + 1]));
+			generateSwitchMethod(name + "Lookahead", ROW_PARAMETERS + ", int lookaheadId", "execution, state, lookaheadId", "lookaheadId",
+					cases, action(row.defaultAction()));
+		} else
+		{
+			// the decision tree already decides the action, so only the distinct actions of the row need a case
+			generateMethod(name, ROW_PARAMETERS, "return " + name + "Action(execution, state, execution.lookupDecisionTree(state));");
+			Map<Integer, String> cases = new TreeMap<>();
+			for(int i = 1; i < row.entries().length; i += 2)
+				cases.put(row.entries()[i], action(row.entries()[i]));
+			cases.put(row.defaultAction(), action(row.defaultAction()));
+			cases.remove(ERROR);
+			generateSwitchMethod(name + "Action", ROW_PARAMETERS + ", int action", "execution, state, action", "action",
+					cases, action(ERROR));
+		}
+	}
+
+	private String action(int action)
+	{
+		int operand = CompiledLRkParser.getOperand(action);
+		return switch(CompiledLRkParser.getKind(action))
+		{
+			case CompiledLRkParser.KIND_SHIFT -> parser.getLookaheadSize() != 0
+					? "return execution.shift(" + operand + ");"
+					// without lookahead, shift actions don't contain their target state
+					: "return execution.shift(terminalGoto(state, execution.getNextTerminalId()));";
+			case CompiledLRkParser.KIND_REDUCE -> "return execution.pushReduced(goto" + parser.getProductionLhsId(operand)
+					+ "(execution.reduce(" + operand + ")));";
+			case CompiledLRkParser.KIND_FINISH -> "return execution.finish(" + operand + ");";
+			case CompiledLRkParser.KIND_ERROR -> "throw execution.syntaxError(state);";
+			default -> throw new IllegalArgumentException("Unknown action kind: " + CompiledLRkParser.getKind(action));
+		};
+	}
+
+	private void generateGotos()
+	{
+		for(int nonterminalId = 0; nonterminalId < parser.getNonterminalsById().size(); nonterminalId ++)
+		{
+			Map<Integer, String> cases = new TreeMap<>();
+			for(int state = 0; state < parser.getStateCount(); state ++)
+			{
+				int target = parser.getGoto(state, nonterminalId);
+				if(target >= 0)
+					cases.put(state, "return " + target + ";");
+			}
+			generateSwitchMethod("goto" + nonterminalId, "int state", "state", "state", cases,
+					"throw new IllegalStateException(\"No goto from state \" + state);");
+		}
+	}
+
+	/**
+	 * A negative target state means that the terminal can't be shifted.
+	 */
+	private void generateTerminalGotos()
+	{
+		Map<Integer, String> terminalCalls = new TreeMap<>();
+		for(int terminalId = 0; terminalId < parser.getTerminalsById().size(); terminalId ++)
+		{
+			Map<Integer, String> cases = new TreeMap<>();
+			for(int state = 0; state < parser.getStateCount(); state ++)
+			{
+				int target = parser.getTerminalGoto(state, terminalId);
+				if(target >= 0)
+					cases.put(state, "return " + target + ";");
+			}
+			if(cases.isEmpty())
+				continue;
+			generateSwitchMethod("terminalGoto" + terminalId, "int state", "state", "state", cases, "return -1;");
+			terminalCalls.put(terminalId, "return terminalGoto" + terminalId + "(state);");
+		}
+		generateSwitchMethod("terminalGoto", "int state, int terminalId", "state, terminalId", "terminalId", terminalCalls, "return -1;");
+	}
+
+	/**
+	 * Cases with the same code share one case. If there are too many cases,
+	 * they are split into chunks of {@link #MAX_CASES_PER_METHOD} consecutive values of the selector,
+	 * each of which gets its own method, and the generated method switches over these chunks.
+	 */
+	private void generateSwitchMethod(String name, String parameters, String arguments, String selector, Map<Integer, String> cases, String defaultCase)
+	{
+		if(cases.size() > MAX_CASES_PER_METHOD)
+		{
+			Map<Integer, Map<Integer, String>> chunks = new TreeMap<>();
+			for(Entry<Integer, String> e : cases.entrySet())
+				chunks.computeIfAbsent(e.getKey() / MAX_CASES_PER_METHOD, c -> new TreeMap<>()).put(e.getKey(), e.getValue());
+			Map<Integer, String> chunkCalls = new TreeMap<>();
+			for(Entry<Integer, Map<Integer, String>> chunk : chunks.entrySet())
+			{
+				String chunkName = name + "Chunk" + chunkCount ++;
+				generateSwitchMethod(chunkName, parameters, arguments, selector, chunk.getValue(), defaultCase);
+				chunkCalls.put(chunk.getKey(), "return " + chunkName + "(" + arguments + ");");
+			}
+			generateSwitchMethod(name, parameters, arguments, "(" + selector + ") / " + MAX_CASES_PER_METHOD, chunkCalls, defaultCase);
+			return;
+		}
+
+		Map<String, List<Integer>> labelsByCode = new LinkedHashMap<>();
+		for(Entry<Integer, String> e : cases.entrySet())
+			labelsByCode.computeIfAbsent(e.getValue(), c -> new ArrayList<>()).add(e.getKey());
+		methodHeader(name, parameters);
+		line(1, "{");
+		line(2, "switch(" + selector + ")");
+		line(2, "{");
+		for(Entry<String, List<Integer>> e : labelsByCode.entrySet())
+		{
+			for(int label : e.getValue())
+				line(3, "case " + label + ":");
+			line(4, e.getKey());
+		}
+		line(3, "default:");
+		line(4, defaultCase);
+		line(2, "}");
+		line(1, "}");
+	}
+
+	private void generateMethod(String name, String parameters, String code)
+	{
+		methodHeader(name, parameters);
+		line(1, "{");
+		line(2, code);
+		line(1, "}");
+	}
+
+	private void methodHeader(String name, String parameters)
+	{
+		line(1, "private static int " + name + "(" + parameters + ") throws " + ParseException.class.getName());
+	}
+
+	/**
+	 * Rows are keyed by their {@link ActionTable#getRow(int) explicit entries} and their default action,
+	 * so states whose actions are equal share a row without the action table ever being expanded.
+	 */
+	private int[] numberRows(List<Row> rowsById)
+	{
+		ActionTable table = parser.getActionTable();
+		int[] rowIds = new int[parser.getStateCount()];
+		Map<Row, Integer> idsByRow = new HashMap<>();
+		for(int state = 0; state < rowIds.length; state ++)
+			rowIds[state] = idsByRow.computeIfAbsent(new Row(table.getRow(state), table.getDefaultAction(state), parser.getConsistentStateAction(state)), r ->
+			{
+				rowsById.add(r);
+				return rowsById.size() - 1;
+			});
+		return rowIds;
+	}
+
+	private void line(int indentation, String line)
+	{
+		source.append(INDENT.repeat(indentation)).append(line).append('\n');
+	}
+
+	/**
+	 * The consistent action is determined by the entries and the default action, but kept to not compute it again.
+	 */
+	private record Row(int[] entries, int defaultAction, int consistentAction)
+	{
+		@Override
+		public int hashCode()
+		{
+			return 31 * Arrays.hashCode(entries) + defaultAction;
+		}
+		@Override
+		public boolean equals(Object obj)
+		{
+			return obj instanceof Row other && Arrays.equals(entries, other.entries) && defaultAction == other.defaultAction;
+		}
+	}
+}
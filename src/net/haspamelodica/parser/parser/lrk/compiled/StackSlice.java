@@ -0,0 +1,53 @@
+package net.haspamelodica.parser.parser.lrk.compiled;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A reusable read-only view of a region of an array.
+ */
+class StackSlice<V> extends AbstractList<V> implements RandomAccess
+{
+	private Object[]	array;
+	private int			from;
+	private int			size;
+
+	public void set(Object[] array, int from, int to)
+	{
+		this.array = array;
+		this.from = from;
+		this.size = to - from;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(int index)
+	{
+		if(index < 0 || index >= size)
+			throw new IndexOutOfBoundsException(index);
+		return (V) array[from + index];
+	}
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public Object[] toArray()
+	{
+		return Arrays.copyOfRange(array, from, from + size);
+	}
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T[] toArray(T[] a)
+	{
+		if(a.length < size)
+			return (T[]) Arrays.copyOfRange(array, from, from + size, a.getClass());
+		System.arraycopy(array, from, a, 0, size);
+		if(a.length > size)
+			a[size] = null;
+		return a;
+	}
+}
@@ -0,0 +1,22 @@
+package net.haspamelodica.parser.parser.lrk.glr;
+
+import net.haspamelodica.parser.grammar.Symbol;
+
+/**
+ * A node of a shared packed parse forest. A node covers the tokens from <code>start</code> (inclusive) to <code>end</code> (exclusive).
+ * Forest nodes don't override {@link Object#equals(Object)}: two nodes are equal only if they are identical.
+ */
+public interface ForestNode
+{
+	public ForestNodeType getType();
+
+	public Symbol getSymbol();
+	public int getStart();
+	public int getEnd();
+
+	public enum ForestNodeType
+	{
+		SYMBOL_NODE,
+		TOKEN_NODE;
+	}
+}
@@ -0,0 +1,99 @@
+package net.haspamelodica.parser.parser.lrk.glr;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.stream.Collectors;
+
+import net.haspamelodica.parser.ast.InnerNode;
+import net.haspamelodica.parser.grammar.Symbol;
+import net.haspamelodica.parser.parser.ListenerParser;
+import net.haspamelodica.parser.parser.ParseException;
+import net.haspamelodica.parser.parser.ReductionListener;
+import net.haspamelodica.parser.parser.TreeBuildingListener;
+import net.haspamelodica.parser.parser.lrk.Word;
+import net.haspamelodica.parser.parser.lrk.action.Action;
+import net.haspamelodica.parser.tokenizer.TokenStream;
+
+/**
+ * A generalized LR parser. Its action table may contain more than one action per state and lookahead;
+ * all of them are explored in parallel on a graph-structured stack.
+ * As long as there are no conflicts, there is only one stack, so deterministic parts of the input are parsed like by an LR parser.
+ */
+public class GLRParser<STATE> implements ListenerParser
+{
+	private final STATE									initialState;
+	private final Map<STATE, Map<Symbol, STATE>>		gotoTable;
+	private final Map<STATE, Map<Word, List<Action>>>	actionTable;
+	private final int									lookaheadSize;
+
+	public GLRParser(STATE initialState, Map<STATE, Map<Symbol, STATE>> gotoTable, Map<STATE, Map<Word, List<Action>>> actionTable, int lookaheadSize)
+	{
+		this.initialState = initialState;
+		this.gotoTable = gotoTable.entrySet().stream().collect(Collectors.toUnmodifiableMap(Entry::getKey, e -> Map.copyOf(e.getValue())));
+		this.actionTable = actionTable.entrySet().stream().collect(Collectors.toUnmodifiableMap(Entry::getKey,
+				e -> e.getValue().entrySet().stream().collect(Collectors.toUnmodifiableMap(Entry::getKey, e2 -> List.copyOf(e2.getValue())))));
+		this.lookaheadSize = lookaheadSize;
+	}
+
+	public ParseForest parseForest(TokenStream tokens) throws ParseException
+	{
+		return new GLRParserExecution<>(this, tokens).parse();
+	}
+
+	/**
+	 * Fails with a {@link ParseException} if the input is ambiguous.
+	 */
+	@Override
+	public InnerNode parse(TokenStream tokens) throws ParseException
+	{
+		return (InnerNode) parse(tokens, TreeBuildingListener.INSTANCE);
+	}
+	/**
+	 * Fails with a {@link ParseException} if the input is ambiguous.
+	 */
+	@Override
+	public <V> V parse(TokenStream tokens, ReductionListener<V> listener) throws ParseException
+	{
+		ParseForest forest = parseForest(tokens);
+		SymbolNode ambiguousNode = forest.findAmbiguousNode();
+		if(ambiguousNode != null)
+			throw new ParseException("Ambiguous input: " + ambiguousNode + " can be derived in " + ambiguousNode.getAlternatives().size()
+					+ " ways: " + ambiguousNode.getAlternatives());
+		return forest.evaluate(listener);
+	}
+
+	public STATE getInitialState()
+	{
+		return initialState;
+	}
+	public Map<STATE, Map<Symbol, STATE>> getGotoTable()
+	{
+		return gotoTable;
+	}
+	public Map<STATE, Map<Word, List<Action>>> getActionTable()
+	{
+		return actionTable;
+	}
+	public int getLookaheadSize()
+	{
+		return lookaheadSize;
+	}
+	public List<Action> getActions(STATE state, Word lookahead)
+	{
+		return actionTable.getOrDefault(state, Collections.emptyMap()).getOrDefault(lookahead, List.of());
+	}
+	/**
+	 * The number of pairs of state and lookahead with more than one action.
+	 */
+	public int getConflictCount()
+	{
+		int conflictCount = 0;
+		for(Map<Word, List<Action>> actionsForState : actionTable.values())
+			for(List<Action> actions : actionsForState.values())
+				if(actions.size() > 1)
+					conflictCount ++;
+		return conflictCount;
+	}
+}
@@ -0,0 +1,268 @@
+package net.haspamelodica.parser.parser.lrk.glr;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.haspamelodica.parser.ast.Token;
+import net.haspamelodica.parser.grammar.Nonterminal;
+import net.haspamelodica.parser.grammar.Production;
+import net.haspamelodica.parser.grammar.Symbol;
+import net.haspamelodica.parser.parser.ParseException;
+import net.haspamelodica.parser.parser.lrk.LookaheadBuffer;
+import net.haspamelodica.parser.parser.lrk.Word;
+import net.haspamelodica.parser.parser.lrk.action.Action;
+import net.haspamelodica.parser.parser.lrk.action.Action.ActionType;
+import net.haspamelodica.parser.parser.lrk.action.FinishAction;
+import net.haspamelodica.parser.parser.lrk.action.ReduceAction;
+import net.haspamelodica.parser.tokenizer.TokenStream;
+
+/**
+ * Tomita-style GLR parsing on a graph-structured stack, with the correction by Rekers for epsilon reductions:
+ * if a new edge is added to a node which has already been processed, all reductions through that edge are done retroactively.
+ */
+public class GLRParserExecution<STATE>
+{
+	private final GLRParser<STATE>	parser;
+	private final TokenStream		tokens;
+	private final LookaheadBuffer	lookaheadTokens;
+
+	private int		position;
+	private Word	lookahead;
+	private boolean	atEOF;
+
+	// the GSS nodes at the current position, at most one per state; usually, there are only few, so they aren't hashed
+	private List<GSSNode<STATE>>	currentNodes;
+	private List<GSSNode<STATE>>	nextNodes;
+	// the first processedNodeCount nodes of currentNodes have already been processed
+	private int							processedNodeCount;
+	private final List<GSSNode<STATE>>	nodesToShift;
+	// the symbol nodes ending at the current position, by nonterminal and start position
+	private final Map<SymbolNodeKey, SymbolNode> currentSymbolNodes;
+
+	private SymbolNode	result;
+	// whether any symbol node, even one not reachable from the result, has more than one alternative
+	private boolean		ambiguousNodeCreated;
+
+	public GLRParserExecution(GLRParser<STATE> parser, TokenStream tokens)
+	{
+		this.parser = parser;
+		this.tokens = tokens;
+		// also for k=0, the next token has to be known to decide whether the input is finished
+		this.lookaheadTokens = new LookaheadBuffer(Math.max(parser.getLookaheadSize(), 1));
+
+		this.currentNodes = new ArrayList<>();
+		this.nextNodes = new ArrayList<>();
+		this.nodesToShift = new ArrayList<>();
+		this.currentSymbolNodes = new HashMap<>();
+	}
+
+	public ParseForest parse() throws ParseException
+	{
+		GSSNode<STATE> initialNode = new GSSNode<>(parser.getInitialState(), 0);
+		currentNodes.add(initialNode);
+		for(;;)
+		{
+			while(lookaheadTokens.size() < lookaheadTokens.capacity())
+				lookaheadTokens.add(lookaheadTokens.size() > 0 && lookaheadTokens.getToken(lookaheadTokens.size() - 1) == null ? null : tokens.nextToken());
+			lookahead = lookaheadTokens.toWord(parser.getLookaheadSize());
+			atEOF = lookaheadTokens.getToken(0) == null;
+
+			// reductions may add new nodes to currentNodes
+			for(processedNodeCount = 0; processedNodeCount < currentNodes.size();)
+			{
+				GSSNode<STATE> node = currentNodes.get(processedNodeCount ++);
+				for(Action action : parser.getActions(node.getState(), lookahead))
+					if(action.getType() == ActionType.SHIFT)
+						nodesToShift.add(node);
+					else
+						reduce(node, action, null);
+			}
+
+			if(atEOF)
+			{
+				if(result == null)
+					throw parseException(null);
+				return new ParseForest(result, position, ambiguousNodeCreated);
+			}
+			shift();
+		}
+	}
+
+	private void shift() throws ParseException
+	{
+		String locDesc = tokens.getCurrentLocationDescription();
+		Token<?> token = lookaheadTokens.poll();
+		TokenNode tokenNode = new TokenNode(token, position);
+		for(GSSNode<STATE> node : nodesToShift)
+		{
+			// without lookahead, the token isn't known to be shiftable yet
+			STATE target = lookupGoto(node.getState(), token.getSymbol());
+			if(target == null)
+				continue;
+			GSSNode<STATE> targetNode = findNode(nextNodes, target);
+			if(targetNode == null)
+			{
+				targetNode = new GSSNode<>(target, position + 1);
+				nextNodes.add(targetNode);
+			}
+			if(targetNode.getEdgeTo(node) == null)
+				targetNode.addEdge(node, tokenNode);
+		}
+		nodesToShift.clear();
+		if(nextNodes.isEmpty())
+			throw parseException(locDesc, token);
+
+		if(currentNodes.size() == 1)
+			currentNodes.get(0).setOnlyNodeAtPosition();
+		position ++;
+		List<GSSNode<STATE>> oldNodes = currentNodes;
+		currentNodes = nextNodes;
+		nextNodes = oldNodes;
+		nextNodes.clear();
+		currentSymbolNodes.clear();
+	}
+
+	/**
+	 * Does the given reduction along all paths starting at the given node.
+	 * If <code>requiredEdge</code> isn't null, only paths containing that edge are considered.
+	 */
+	private void reduce(GSSNode<STATE> node, Action action, GSSEdge<STATE> requiredEdge)
+	{
+		switch(action.getType())
+		{
+			case REDUCE -> reducePaths(node, action, ((ReduceAction) action).getRhsSize(), requiredEdge == null, requiredEdge,
+					new ForestNode[((ReduceAction) action).getRhsSize()]);
+			case FINISH ->
+			{
+				// without lookahead, finish actions are possible before EOF, but only the entire input counts
+				if(atEOF)
+					reducePaths(node, action, ((FinishAction) action).getRhsSize(), requiredEdge == null, requiredEdge,
+							new ForestNode[((FinishAction) action).getRhsSize()]);
+			}
+			case SHIFT, ERROR ->
+			{}
+		}
+	}
+
+	private void reducePaths(GSSNode<STATE> node, Action action, int remaining, boolean requiredEdgeUsed, GSSEdge<STATE> requiredEdge,
+			ForestNode[] children)
+	{
+		if(remaining == 0)
+		{
+			if(requiredEdgeUsed)
+				reducer(node, action, List.of(children));
+			return;
+		}
+		List<GSSEdge<STATE>> edges = node.getEdges();
+		for(int i = 0; i < edges.size(); i ++)
+		{
+			GSSEdge<STATE> edge = edges.get(i);
+			children[remaining - 1] = edge.label();
+			reducePaths(edge.target(), action, remaining - 1, requiredEdgeUsed || edge == requiredEdge, requiredEdge, children);
+		}
+	}
+
+	private void reducer(GSSNode<STATE> pathEnd, Action action, List<ForestNode> children)
+	{
+		if(action.getType() == ActionType.FINISH)
+		{
+			FinishAction finishAction = (FinishAction) action;
+			if(finishAction.dontIncludeStartSymbol())
+				result = (SymbolNode) children.get(0);
+			else
+			{
+				result = getSymbolNode(finishAction.getProduction().getLhs(), pathEnd.getPosition());
+				addAlternative(result, new PackedNode(finishAction.getProduction(), children));
+			}
+			return;
+		}
+
+		Production production = ((ReduceAction) action).getProduction();
+		PackedNode alternative = new PackedNode(production, children);
+		STATE target = lookupGoto(pathEnd.getState(), production.getLhs());
+		GSSNode<STATE> targetNode = findNode(currentNodes, target);
+		boolean newTargetNode = targetNode == null;
+		if(newTargetNode)
+		{
+			targetNode = new GSSNode<>(target, position);
+			currentNodes.add(targetNode);
+		} else
+		{
+			// all edges from the target node to pathEnd are labeled with the same symbol node
+			GSSEdge<STATE> existingEdge = targetNode.getEdgeTo(pathEnd);
+			if(existingEdge != null)
+			{
+				addAlternative((SymbolNode) existingEdge.label(), alternative);
+				return;
+			}
+		}
+
+		// If pathEnd is the only node at its position, all symbol nodes starting there label edges to it, so there's no need to look for one.
+		// This is always the case while there are no conflicts.
+		SymbolNode symbolNode;
+		if(pathEnd.isOnlyNodeAtPosition())
+			symbolNode = new SymbolNode(production.getLhs(), pathEnd.getPosition(), position);
+		else
+			symbolNode = getSymbolNode(production.getLhs(), pathEnd.getPosition());
+		addAlternative(symbolNode, alternative);
+		GSSEdge<STATE> newEdge = targetNode.addEdge(pathEnd, symbolNode);
+		// a new node will be processed later, including reductions using this edge
+		if(newTargetNode)
+			return;
+		// nodes processed already missed the new edge; this only happens with epsilon reductions
+		for(int i = 0; i < processedNodeCount; i ++)
+		{
+			GSSNode<STATE> processedNode = currentNodes.get(i);
+			for(Action processedNodeAction : parser.getActions(processedNode.getState(), lookahead))
+				reduce(processedNode, processedNodeAction, newEdge);
+		}
+	}
+
+	private void addAlternative(SymbolNode symbolNode, PackedNode alternative)
+	{
+		if(symbolNode.addAlternative(alternative) && symbolNode.isAmbiguous())
+			ambiguousNodeCreated = true;
+	}
+
+	private SymbolNode getSymbolNode(Nonterminal nonterminal, int start)
+	{
+		return currentSymbolNodes.computeIfAbsent(new SymbolNodeKey(nonterminal, start), k -> new SymbolNode(nonterminal, start, position));
+	}
+
+	private static <STATE> GSSNode<STATE> findNode(List<GSSNode<STATE>> nodes, STATE state)
+	{
+		for(int i = 0; i < nodes.size(); i ++)
+		{
+			GSSNode<STATE> node = nodes.get(i);
+			if(node.getState().equals(state))
+				return node;
+		}
+		return null;
+	}
+
+	private STATE lookupGoto(STATE state, Symbol symbol)
+	{
+		return parser.getGotoTable().getOrDefault(state, Collections.emptyMap()).get(symbol);
+	}
+
+	private ParseException parseException(String locDesc, Token<?> token)
+	{
+		Set<Word> expected = new LinkedHashSet<>();
+		for(GSSNode<STATE> node : currentNodes)
+			expected.addAll(parser.getActionTable().getOrDefault(node.getState(), Collections.emptyMap()).keySet());
+		return new ParseException((locDesc != null ? "Near " + locDesc + ": " : "") +
+				"Got " + (token == null ? "EOF" : token) + ", expected any of " + expected);
+	}
+	private ParseException parseException(Token<?> token)
+	{
+		return parseException(tokens.getCurrentLocationDescription(), token);
+	}
+
+	private static record SymbolNodeKey(Nonterminal nonterminal, int start)
+	{}
+}
@@ -0,0 +1,4 @@
+package net.haspamelodica.parser.parser.lrk.glr;
+
+record GSSEdge<STATE>(GSSNode<STATE> target, ForestNode label)
+{}
@@ -0,0 +1,79 @@
+package net.haspamelodica.parser.parser.lrk.glr;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A node of the graph-structured stack. Edges point from a node to the nodes below it and are labeled with forest nodes.
+ * Within one position, there is at most one node per state.
+ */
+class GSSNode<STATE>
+{
+	private final STATE	state;
+	private final int	position;
+
+	private final List<GSSEdge<STATE>> edges;
+
+	private boolean onlyNodeAtPosition;
+
+	public GSSNode(STATE state, int position)
+	{
+		this.state = state;
+		this.position = position;
+		this.edges = new ArrayList<>(1);
+	}
+
+	public STATE getState()
+	{
+		return state;
+	}
+	public int getPosition()
+	{
+		return position;
+	}
+	/**
+	 * Edges may be added while the returned list is being iterated over, so it should be iterated using indices.
+	 */
+	public List<GSSEdge<STATE>> getEdges()
+	{
+		return edges;
+	}
+
+	/**
+	 * Only set once all nodes at this position are known.
+	 */
+	public boolean isOnlyNodeAtPosition()
+	{
+		return onlyNodeAtPosition;
+	}
+	public void setOnlyNodeAtPosition()
+	{
+		this.onlyNodeAtPosition = true;
+	}
+
+	/**
+	 * Returns <code>null</code> if there is no such edge.
+	 */
+	public GSSEdge<STATE> getEdgeTo(GSSNode<STATE> target)
+	{
+		for(int i = 0; i < edges.size(); i ++)
+		{
+			GSSEdge<STATE> edge = edges.get(i);
+			if(edge.target() == target)
+				return edge;
+		}
+		return null;
+	}
+	public GSSEdge<STATE> addEdge(GSSNode<STATE> target, ForestNode label)
+	{
+		GSSEdge<STATE> edge = new GSSEdge<>(target, label);
+		edges.add(edge);
+		return edge;
+	}
+
+	@Override
+	public String toString()
+	{
+		return state + " [" + position + "]";
+	}
+}
@@ -0,0 +1,69 @@
+package net.haspamelodica.parser.parser.lrk.glr;
+
+import java.util.List;
+
+import net.haspamelodica.parser.grammar.Production;
+
+/**
+ * One derivation of a {@link SymbolNode}: the production used and the forest nodes for the symbols of its right-hand side.
+ */
+public class PackedNode
+{
+	private final Production		production;
+	private final List<ForestNode>	children;
+
+	public PackedNode(Production production, List<ForestNode> children)
+	{
+		this.production = production;
+		this.children = List.copyOf(children);
+	}
+
+	public Production getProduction()
+	{
+		return production;
+	}
+	public List<ForestNode> getChildren()
+	{
+		return children;
+	}
+
+	@Override
+	public String toString()
+	{
+		return production + " " + children;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((children == null) ? 0 : children.hashCode());
+		result = prime * result + ((production == null) ? 0 : production.hashCode());
+		return result;
+	}
+	@Override
+	public boolean equals(Object obj)
+	{
+		if(this == obj)
+			return true;
+		if(obj == null)
+			return false;
+		if(getClass() != obj.getClass())
+			return false;
+		PackedNode other = (PackedNode) obj;
+		if(children == null)
+		{
+			if(other.children != null)
+				return false;
+		} else if(!children.equals(other.children))
+			return false;
+		if(production == null)
+		{
+			if(other.production != null)
+				return false;
+		} else if(!production.equals(other.production))
+			return false;
+		return true;
+	}
+}
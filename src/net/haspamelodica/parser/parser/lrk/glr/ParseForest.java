@@ -0,0 +1,135 @@
+package net.haspamelodica.parser.parser.lrk.glr;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import net.haspamelodica.parser.ast.InnerNode;
+import net.haspamelodica.parser.parser.ReductionListener;
+import net.haspamelodica.parser.parser.TreeBuildingListener;
+
+/**
+ * The result of a GLR parse: a shared packed parse forest representing all parse trees of the input.
+ * Nodes for the same nonterminal and range of tokens are shared between all trees.
+ */
+public class ParseForest
+{
+	private final SymbolNode	root;
+	private final int			tokenCount;
+	private final boolean		mayBeAmbiguous;
+
+	/**
+	 * If <code>mayBeAmbiguous</code> is false, the forest is known not to contain any ambiguous nodes,
+	 * so it doesn't have to be searched for them.
+	 */
+	public ParseForest(SymbolNode root, int tokenCount, boolean mayBeAmbiguous)
+	{
+		this.root = root;
+		this.tokenCount = tokenCount;
+		this.mayBeAmbiguous = mayBeAmbiguous;
+	}
+
+	public SymbolNode getRoot()
+	{
+		return root;
+	}
+	public int getTokenCount()
+	{
+		return tokenCount;
+	}
+
+	public boolean isAmbiguous()
+	{
+		return findAmbiguousNode() != null;
+	}
+	/**
+	 * Returns an ambiguous node reachable from the root, or <code>null</code> if there is only one parse tree.
+	 */
+	public SymbolNode findAmbiguousNode()
+	{
+		if(!mayBeAmbiguous)
+			return null;
+		Set<SymbolNode> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+		Deque<SymbolNode> toVisit = new ArrayDeque<>();
+		toVisit.push(root);
+		seen.add(root);
+		while(!toVisit.isEmpty())
+		{
+			SymbolNode node = toVisit.pop();
+			if(node.isAmbiguous())
+				return node;
+			for(PackedNode alternative : node.getAlternatives())
+				for(ForestNode child : alternative.getChildren())
+					if(child.getType() == ForestNode.ForestNodeType.SYMBOL_NODE && seen.add((SymbolNode) child))
+						toVisit.push((SymbolNode) child);
+		}
+		return null;
+	}
+
+	/**
+	 * Only possible if the forest isn't ambiguous.
+	 */
+	public InnerNode toTree()
+	{
+		return (InnerNode) evaluate(TreeBuildingListener.INSTANCE);
+	}
+
+	/**
+	 * Calls the given listener as a deterministic parser would for the only parse tree in this forest.
+	 * Only possible if the forest isn't ambiguous.
+	 */
+	public <V> V evaluate(ReductionListener<V> listener)
+	{
+		// trees of long lists are very deep, so don't use recursion
+		Deque<EvaluationFrame> stack = new ArrayDeque<>();
+		List<V> values = new ArrayList<>();
+		stack.push(new EvaluationFrame(onlyAlternative(root), 0));
+		for(;;)
+		{
+			EvaluationFrame frame = stack.peek();
+			List<ForestNode> children = frame.alternative.getChildren();
+			if(frame.nextChild == children.size())
+			{
+				stack.pop();
+				List<V> childValues = values.subList(frame.valuesStart, values.size());
+				V value = listener.onReduce(frame.alternative.getProduction(), childValues, values.subList(0, frame.valuesStart));
+				if(stack.isEmpty())
+					return value;
+				childValues.clear();
+				values.add(value);
+				continue;
+			}
+			ForestNode child = children.get(frame.nextChild ++);
+			switch(child.getType())
+			{
+				case TOKEN_NODE -> values.add(listener.onShift(((TokenNode) child).getToken()));
+				case SYMBOL_NODE -> stack.push(new EvaluationFrame(onlyAlternative((SymbolNode) child), values.size()));
+			}
+		}
+	}
+
+	private static PackedNode onlyAlternative(SymbolNode node)
+	{
+		PackedNode alternative = node.getOnlyAlternative();
+		if(alternative == null)
+			throw new IllegalStateException("Forest is ambiguous at " + node + ": " + node.getAlternatives());
+		return alternative;
+	}
+
+	private static class EvaluationFrame
+	{
+		private final PackedNode	alternative;
+		private final int			valuesStart;
+		private int					nextChild;
+
+		public EvaluationFrame(PackedNode alternative, int valuesStart)
+		{
+			this.alternative = alternative;
+			this.valuesStart = valuesStart;
+		}
+	}
+}
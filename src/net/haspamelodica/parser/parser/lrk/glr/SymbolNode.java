@@ -0,0 +1,96 @@
+package net.haspamelodica.parser.parser.lrk.glr;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.haspamelodica.parser.grammar.Nonterminal;
+
+/**
+ * All derivations of a nonterminal for the same range of tokens. Each derivation is represented by a {@link PackedNode}.
+ * The node is ambiguous if there is more than one derivation.
+ */
+public class SymbolNode implements ForestNode
+{
+	private final Nonterminal	nonterminal;
+	private final int			start;
+	private final int			end;
+
+	// most nodes aren't ambiguous, so the list is only created for the second alternative
+	private PackedNode			firstAlternative;
+	private List<PackedNode>	alternatives;
+
+	public SymbolNode(Nonterminal nonterminal, int start, int end)
+	{
+		this.nonterminal = nonterminal;
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * Returns false if the given alternative already exists.
+	 */
+	boolean addAlternative(PackedNode alternative)
+	{
+		if(firstAlternative == null)
+		{
+			firstAlternative = alternative;
+			return true;
+		}
+		if(alternatives == null)
+		{
+			if(firstAlternative.equals(alternative))
+				return false;
+			alternatives = new ArrayList<>();
+			alternatives.add(firstAlternative);
+		} else if(alternatives.contains(alternative))
+			return false;
+		alternatives.add(alternative);
+		return true;
+	}
+
+	public List<PackedNode> getAlternatives()
+	{
+		if(alternatives != null)
+			return Collections.unmodifiableList(alternatives);
+		return firstAlternative == null ? List.of() : List.of(firstAlternative);
+	}
+	/**
+	 * Returns <code>null</code> if there isn't exactly one alternative.
+	 */
+	public PackedNode getOnlyAlternative()
+	{
+		return alternatives == null ? firstAlternative : null;
+	}
+	public boolean isAmbiguous()
+	{
+		return alternatives != null;
+	}
+
+	@Override
+	public ForestNodeType getType()
+	{
+		return ForestNodeType.SYMBOL_NODE;
+	}
+	@Override
+	public Nonterminal getSymbol()
+	{
+		return nonterminal;
+	}
+	@Override
+	public int getStart()
+	{
+		return start;
+	}
+	@Override
+	public int getEnd()
+	{
+		return end;
+	}
+
+	@Override
+	public String toString()
+	{
+		return nonterminal + " [" + start + "," + end + ")";
+	}
+}
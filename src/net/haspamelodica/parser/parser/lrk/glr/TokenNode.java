@@ -0,0 +1,48 @@
+package net.haspamelodica.parser.parser.lrk.glr;
+
+import net.haspamelodica.parser.ast.Token;
+import net.haspamelodica.parser.grammar.Terminal;
+
+public class TokenNode implements ForestNode
+{
+	private final Token<?>	token;
+	private final int		position;
+
+	public TokenNode(Token<?> token, int position)
+	{
+		this.token = token;
+		this.position = position;
+	}
+
+	public Token<?> getToken()
+	{
+		return token;
+	}
+
+	@Override
+	public ForestNodeType getType()
+	{
+		return ForestNodeType.TOKEN_NODE;
+	}
+	@Override
+	public Terminal<?> getSymbol()
+	{
+		return token.getSymbol();
+	}
+	@Override
+	public int getStart()
+	{
+		return position;
+	}
+	@Override
+	public int getEnd()
+	{
+		return position + 1;
+	}
+
+	@Override
+	public String toString()
+	{
+		return token + " [" + position + "]";
+	}
+}
@@ -0,0 +1,156 @@
+package net.haspamelodica.parser.parser.lrk.incremental;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import net.haspamelodica.parser.ast.ASTNode;
+import net.haspamelodica.parser.ast.ASTNode.ASTNodeType;
+import net.haspamelodica.parser.ast.InnerNode;
+import net.haspamelodica.parser.ast.Token;
+import net.haspamelodica.parser.parser.ParseException;
+import net.haspamelodica.parser.parser.lrk.GenericLRkParser;
+import net.haspamelodica.parser.tokenizer.TokenStream;
+
+/**
+ * Reparses a token sequence after an edit, reusing the subtrees of the previous parse tree which aren't affected by the edit.
+ * <p>
+ * A subtree is reused as a whole if the parser is in the same state as when the subtree was originally built
+ * and the tokens of the subtree and the <code>k</code> tokens after it are unchanged.
+ * Under these conditions, the deterministic LR(k) driver would build exactly the same subtree again.
+ * The previous tree is only broken down along the path to the edit, and only as far as the states don't match,
+ * so the cost of a reparse mostly depends on the size of the edit and the depth of the tree, not on the length of the input.
+ */
+public class IncrementalLRkParser<STATE>
+{
+	private final GenericLRkParser<STATE> lrkParser;
+
+	public IncrementalLRkParser(GenericLRkParser<STATE> lrkParser)
+	{
+		this.lrkParser = lrkParser;
+	}
+
+	public IncrementalParseResult<STATE> parse(TokenStream tokens) throws ParseException
+	{
+		Deque<ASTNode<?>> input = new ArrayDeque<>();
+		for(Token<?> token = tokens.nextToken(); token != null; token = tokens.nextToken())
+			input.add(token);
+		return new IncrementalParse<>(this, new NodeInfoTable<>(), input).parse();
+	}
+
+	/**
+	 * If reparsing fails, <code>previous</code> stays unchanged, so it can be reparsed again, for example with a corrected edit.
+	 */
+	public IncrementalParseResult<STATE> reparse(IncrementalParseResult<STATE> previous, TokenEdit edit) throws ParseException
+	{
+		if(edit.getEnd() > previous.getTokenCount())
+			throw new IllegalArgumentException("Edit " + edit + " exceeds the previous input of " + previous.getTokenCount() + " tokens");
+		NodeInfoTable<STATE> nodeInfos = previous.takeNodeInfos(this);
+		nodeInfos.beginChanges();
+		try
+		{
+			List<ASTNode<?>> before = new ArrayList<>();
+			List<ASTNode<?>> after = new ArrayList<>();
+			// the root is never reused; without a generated start symbol, it can't even be shifted
+			breakDown(previous.getTree(), edit, nodeInfos, before, after);
+
+			Deque<ASTNode<?>> input = new ArrayDeque<>(before.size() + edit.getInsertedTokens().size() + after.size());
+			input.addAll(before);
+			input.addAll(edit.getInsertedTokens());
+			input.addAll(after);
+			IncrementalParseResult<STATE> result = new IncrementalParse<>(this, nodeInfos, input).parse();
+			nodeInfos.commitChanges();
+			return result;
+		} catch(ParseException | RuntimeException | Error e)
+		{
+			nodeInfos.rollBackChanges();
+			previous.returnNodeInfos();
+			throw e;
+		}
+	}
+
+	/**
+	 * Splits the given node into the largest subtrees which can be reused and the tokens around the edit.
+	 * Subtrees before the edit are only reusable if the <code>k</code> tokens following them aren't affected by the edit either.
+	 * Doesn't use recursion because left- or right-recursive lists result in very deep trees.
+	 */
+	private void breakDown(InnerNode root, TokenEdit edit, NodeInfoTable<STATE> nodeInfos, List<ASTNode<?>> before, List<ASTNode<?>> after)
+	{
+		int lastReusableEndBeforeEdit = edit.getStart() - lrkParser.getLookaheadSize();
+		Deque<BreakDownFrame> stack = new ArrayDeque<>();
+		stack.push(new BreakDownFrame(root, 0));
+		nodeInfos.remove(root);
+		while(!stack.isEmpty())
+		{
+			BreakDownFrame frame = stack.peek();
+			List<ASTNode<?>> children = frame.node.getChildren();
+			if(frame.nextChild == children.size())
+			{
+				stack.pop();
+				continue;
+			}
+			ASTNode<?> child = children.get(frame.nextChild ++);
+			int childStart = frame.nextChildStart;
+			int childEnd = childStart + tokenCount(child, nodeInfos);
+			frame.nextChildStart = childEnd;
+
+			if(childEnd == childStart)
+				discard(child, nodeInfos);
+			else if(childEnd <= lastReusableEndBeforeEdit || childStart >= edit.getEnd())
+				(childStart < edit.getStart() ? before : after).add(child);
+			else if(childStart >= edit.getStart() && childEnd <= edit.getEnd())
+				discard(child, nodeInfos);
+			else if(child.getType() == ASTNodeType.TOKEN)
+				// a token before the edit, but within the lookahead of the edit
+				before.add(child);
+			else
+			{
+				nodeInfos.remove((InnerNode) child);
+				stack.push(new BreakDownFrame((InnerNode) child, childStart));
+			}
+		}
+	}
+
+	private static class BreakDownFrame
+	{
+		private final InnerNode	node;
+		private int				nextChild;
+		private int				nextChildStart;
+
+		public BreakDownFrame(InnerNode node, int start)
+		{
+			this.node = node;
+			this.nextChildStart = start;
+		}
+	}
+
+	private static <STATE> void discard(ASTNode<?> node, NodeInfoTable<STATE> nodeInfos)
+	{
+		Deque<ASTNode<?>> toDiscard = new ArrayDeque<>();
+		toDiscard.push(node);
+		while(!toDiscard.isEmpty())
+		{
+			ASTNode<?> next = toDiscard.pop();
+			if(next.getType() == ASTNodeType.INNER_NODE)
+			{
+				nodeInfos.remove((InnerNode) next);
+				((InnerNode) next).getChildren().forEach(toDiscard::push);
+			}
+		}
+	}
+
+	static <STATE> int tokenCount(ASTNode<?> node, NodeInfoTable<STATE> nodeInfos)
+	{
+		return switch(node.getType())
+		{
+			case TOKEN -> 1;
+			case INNER_NODE -> nodeInfos.get((InnerNode) node).tokenCount();
+		};
+	}
+
+	public GenericLRkParser<STATE> getLRkParser()
+	{
+		return lrkParser;
+	}
+}
@@ -0,0 +1,220 @@
+package net.haspamelodica.parser.parser.lrk.incremental;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Stack;
+
+import net.haspamelodica.parser.ast.ASTNode;
+import net.haspamelodica.parser.ast.ASTNode.ASTNodeType;
+import net.haspamelodica.parser.ast.InnerNode;
+import net.haspamelodica.parser.ast.Token;
+import net.haspamelodica.parser.grammar.Production;
+import net.haspamelodica.parser.grammar.Symbol;
+import net.haspamelodica.parser.grammar.Terminal;
+import net.haspamelodica.parser.parser.ParseException;
+import net.haspamelodica.parser.parser.lrk.GenericLRkParser;
+import net.haspamelodica.parser.parser.lrk.Word;
+import net.haspamelodica.parser.parser.lrk.action.Action;
+import net.haspamelodica.parser.parser.lrk.action.FinishAction;
+import net.haspamelodica.parser.parser.lrk.action.ReduceAction;
+
+/**
+ * The LR(k) driver for incremental parsing. The input consists of tokens and reusable subtrees of a previous parse tree.
+ * A subtree which can't be shifted as a whole is replaced by its children.
+ */
+class IncrementalParse<STATE>
+{
+	private final IncrementalLRkParser<STATE>	parser;
+	private final GenericLRkParser<STATE>		lrkParser;
+	private final NodeInfoTable<STATE>			nodeInfos;
+	private final Deque<ASTNode<?>>				input;
+
+	// the state stack and the value stack always have the same size
+	private final Stack<STATE>		stateStack;
+	private final Stack<ASTNode<?>>	valueStack;
+
+	// cached; null if it has to be recomputed from the input
+	private Word	lookahead;
+	private int		position;
+	private int		reusedSubtreeCount;
+	private int		shiftedTokenCount;
+
+	public IncrementalParse(IncrementalLRkParser<STATE> parser, NodeInfoTable<STATE> nodeInfos, Deque<ASTNode<?>> input)
+	{
+		this.parser = parser;
+		this.lrkParser = parser.getLRkParser();
+		this.nodeInfos = nodeInfos;
+		this.input = input;
+
+		this.stateStack = new Stack<>();
+		this.valueStack = new Stack<>();
+	}
+
+	public IncrementalParseResult<STATE> parse() throws ParseException
+	{
+		stateStack.push(lrkParser.getInitialState());
+		valueStack.push(null);
+		for(;;)
+		{
+			STATE currentState = stateStack.peek();
+			ASTNode<?> next = input.peekFirst();
+			if(next != null && next.getType() == ASTNodeType.INNER_NODE && isReusable((InnerNode) next, currentState))
+			{
+				shift(currentState, input.pollFirst());
+				reusedSubtreeCount ++;
+				continue;
+			}
+
+			// consistent states don't need the lookahead, so don't compute it
+			Action action = lrkParser.getConsistentStateReduction(currentState);
+			if(action == null)
+				action = lrkParser.lookupAction(currentState, getLookahead());
+			switch(action.getType())
+			{
+				case SHIFT:
+					// without lookahead, a shift can be attempted at EOF
+					if(next == null)
+						throw parseException(currentState, null);
+					if(next.getType() == ASTNodeType.INNER_NODE)
+						breakDownNext();
+					else
+					{
+						// without lookahead, the token isn't known to be shiftable yet
+						if(lookupGoto(currentState, next.getSymbol()) == null)
+							throw parseException(currentState, next);
+						shift(currentState, input.pollFirst());
+						shiftedTokenCount ++;
+					}
+					break;
+				case REDUCE:
+					ReduceAction reduceAction = (ReduceAction) action;
+					ASTNode<?> newNode = reduce(reduceAction.getProduction(), reduceAction.getRhsSize());
+					stateStack.push(lookupGoto(stateStack.peek(), reduceAction.getProduction().getLhs()));
+					valueStack.push(newNode);
+					break;
+				case FINISH:
+					// without lookahead, the parse may finish early, but the result has to cover the entire input
+					if(next != null)
+					{
+						if(next.getType() == ASTNodeType.INNER_NODE)
+							breakDownNext();
+						else
+							throw new ParseException("Near token #" + position + ": Got " + next + ", expected EOF");
+						break;
+					}
+					FinishAction finishAction = (FinishAction) action;
+					InnerNode tree = (InnerNode) (finishAction.dontIncludeStartSymbol() ? valueStack.peek()
+							: reduce(finishAction.getProduction(), finishAction.getRhsSize()));
+					return new IncrementalParseResult<>(parser, tree, nodeInfos, reusedSubtreeCount, shiftedTokenCount);
+				case ERROR:
+					// report a token, not a whole subtree
+					if(next != null && next.getType() == ASTNodeType.INNER_NODE)
+					{
+						breakDownNext();
+						break;
+					}
+					throw parseException(currentState, next);
+				default:
+					throw new IllegalStateException("Unknown enum constant: " + action.getType());
+			}
+		}
+	}
+
+	private ParseException parseException(STATE currentState, ASTNode<?> next)
+	{
+		return new ParseException("Near token #" + position + ": Got " + (next == null ? "EOF" : next) +
+				", expected any of " + lrkParser.getActionTable().get(currentState).keySet());
+	}
+
+	private boolean isReusable(InnerNode node, STATE currentState)
+	{
+		NodeInfo<STATE> info = nodeInfos.get(node);
+		return info != null && info.startState().equals(currentState) && lookupGoto(currentState, node.getSymbol()) != null;
+	}
+
+	private void shift(STATE currentState, ASTNode<?> node)
+	{
+		stateStack.push(lookupGoto(currentState, node.getSymbol()));
+		valueStack.push(node);
+		position += IncrementalLRkParser.tokenCount(node, nodeInfos);
+		lookahead = null;
+	}
+
+	private ASTNode<?> reduce(Production production, int rhsSize)
+	{
+		int oldStackSize = stateStack.size();
+		int newStackSize = oldStackSize - rhsSize;
+		List<ASTNode<?>> children = valueStack.subList(newStackSize, oldStackSize);
+		int tokenCount = 0;
+		for(ASTNode<?> child : children)
+			tokenCount += IncrementalLRkParser.tokenCount(child, nodeInfos);
+		InnerNode newNode = new InnerNode(production, children);
+		nodeInfos.put(newNode, new NodeInfo<>(stateStack.get(newStackSize - 1), tokenCount));
+		stateStack.setSize(newStackSize);
+		valueStack.setSize(newStackSize);
+		return newNode;
+	}
+
+	/**
+	 * Replaces the next input element, which has to be an inner node, by its children.
+	 * This doesn't change the input tokens, so the lookahead stays the same.
+	 */
+	private void breakDownNext()
+	{
+		InnerNode node = (InnerNode) input.pollFirst();
+		nodeInfos.remove(node);
+		List<ASTNode<?>> children = node.getChildren();
+		for(int i = children.size() - 1; i >= 0; i --)
+		{
+			ASTNode<?> child = children.get(i);
+			// empty subtrees are rebuilt by the driver, which is cheap
+			if(IncrementalLRkParser.tokenCount(child, nodeInfos) != 0)
+				input.addFirst(child);
+			else if(child.getType() == ASTNodeType.INNER_NODE)
+				nodeInfos.remove((InnerNode) child);
+		}
+	}
+
+	private STATE lookupGoto(STATE currentState, Symbol symbol)
+	{
+		return lrkParser.getGotoTable().getOrDefault(currentState, Collections.emptyMap()).get(symbol);
+	}
+
+	private Word getLookahead()
+	{
+		if(lookahead == null)
+		{
+			int lookaheadSize = lrkParser.getLookaheadSize();
+			List<Terminal<?>> terminals = new ArrayList<>(lookaheadSize);
+			// the next subtree may be very deep, so don't use recursion
+			Deque<ASTNode<?>> toVisit = new ArrayDeque<>();
+			for(Iterator<ASTNode<?>> inputIterator = input.iterator(); terminals.size() < lookaheadSize && inputIterator.hasNext();)
+			{
+				toVisit.push(inputIterator.next());
+				while(terminals.size() < lookaheadSize && !toVisit.isEmpty())
+				{
+					ASTNode<?> node = toVisit.pop();
+					switch(node.getType())
+					{
+						case TOKEN -> terminals.add(((Token<?>) node).getSymbol());
+						case INNER_NODE ->
+						{
+							List<ASTNode<?>> children = ((InnerNode) node).getChildren();
+							for(int i = children.size() - 1; i >= 0; i --)
+								toVisit.push(children.get(i));
+						}
+					}
+				}
+				toVisit.clear();
+			}
+			while(terminals.size() < lookaheadSize)
+				terminals.add(Terminal.EOF);
+			lookahead = new Word(terminals);
+		}
+		return lookahead;
+	}
+}
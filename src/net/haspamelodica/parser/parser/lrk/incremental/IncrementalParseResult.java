@@ -0,0 +1,75 @@
+package net.haspamelodica.parser.parser.lrk.incremental;
+
+import net.haspamelodica.parser.ast.InnerNode;
+
+/**
+ * A parse tree together with what {@link IncrementalLRkParser} needs to reuse its subtrees.
+ * A result can only be reparsed successfully once, because the bookkeeping is handed over to the new result
+ * instead of being copied. If reparsing fails, the result stays unchanged and can be reparsed again.
+ */
+public class IncrementalParseResult<STATE>
+{
+	private final IncrementalLRkParser<STATE>	parser;
+	private final InnerNode						tree;
+	private final NodeInfoTable<STATE>			nodeInfos;
+	private final int							tokenCount;
+	private final int							reusedSubtreeCount;
+	private final int							shiftedTokenCount;
+
+	private boolean reparsed;
+
+	IncrementalParseResult(IncrementalLRkParser<STATE> parser, InnerNode tree, NodeInfoTable<STATE> nodeInfos,
+			int reusedSubtreeCount, int shiftedTokenCount)
+	{
+		this.parser = parser;
+		this.tree = tree;
+		this.nodeInfos = nodeInfos;
+		this.tokenCount = nodeInfos.get(tree).tokenCount();
+		this.reusedSubtreeCount = reusedSubtreeCount;
+		this.shiftedTokenCount = shiftedTokenCount;
+	}
+
+	public InnerNode getTree()
+	{
+		return tree;
+	}
+	public int getTokenCount()
+	{
+		return tokenCount;
+	}
+	/**
+	 * The number of subtrees of the previous tree which were shifted as a whole.
+	 */
+	public int getReusedSubtreeCount()
+	{
+		return reusedSubtreeCount;
+	}
+	/**
+	 * The number of tokens which were shifted one by one.
+	 */
+	public int getShiftedTokenCount()
+	{
+		return shiftedTokenCount;
+	}
+	public boolean isReparsed()
+	{
+		return reparsed;
+	}
+
+	/**
+	 * The caller has to either hand the returned table over to a new result or roll its changes back and call {@link #returnNodeInfos()}.
+	 */
+	NodeInfoTable<STATE> takeNodeInfos(IncrementalLRkParser<STATE> parser)
+	{
+		if(parser != this.parser)
+			throw new IllegalArgumentException("This result was created by a different parser");
+		if(reparsed)
+			throw new IllegalStateException("This result has already been reparsed");
+		reparsed = true;
+		return nodeInfos;
+	}
+	void returnNodeInfos()
+	{
+		reparsed = false;
+	}
+}
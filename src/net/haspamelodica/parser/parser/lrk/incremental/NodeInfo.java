@@ -0,0 +1,7 @@
+package net.haspamelodica.parser.parser.lrk.incremental;
+
+/**
+ * <code>startState</code> is the state on top of the stack before the first token of a node was processed.
+ */
+record NodeInfo<STATE>(STATE startState, int tokenCount)
+{}
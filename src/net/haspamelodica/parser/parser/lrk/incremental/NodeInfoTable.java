@@ -0,0 +1,65 @@
+package net.haspamelodica.parser.parser.lrk.incremental;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import net.haspamelodica.parser.ast.InnerNode;
+
+/**
+ * The {@link NodeInfo}s of the inner nodes of a parse tree, by identity.
+ * While reparsing, changes are journaled, so that they can be rolled back if reparsing fails.
+ */
+class NodeInfoTable<STATE>
+{
+	private final Map<InnerNode, NodeInfo<STATE>> nodeInfos;
+
+	// both null if changes aren't journaled
+	private Map<InnerNode, NodeInfo<STATE>>	removedNodeInfos;
+	private Set<InnerNode>					addedNodes;
+
+	public NodeInfoTable()
+	{
+		this.nodeInfos = new IdentityHashMap<>();
+	}
+
+	public NodeInfo<STATE> get(InnerNode node)
+	{
+		return nodeInfos.get(node);
+	}
+	public void put(InnerNode node, NodeInfo<STATE> info)
+	{
+		NodeInfo<STATE> oldInfo = nodeInfos.put(node, info);
+		if(addedNodes != null)
+			if(oldInfo == null)
+				addedNodes.add(node);
+			else if(!addedNodes.contains(node))
+				removedNodeInfos.putIfAbsent(node, oldInfo);
+	}
+	public void remove(InnerNode node)
+	{
+		NodeInfo<STATE> oldInfo = nodeInfos.remove(node);
+		if(addedNodes != null && oldInfo != null && !addedNodes.remove(node))
+			removedNodeInfos.putIfAbsent(node, oldInfo);
+	}
+
+	public void beginChanges()
+	{
+		if(addedNodes != null)
+			throw new IllegalStateException("Changes have already begun");
+		removedNodeInfos = new IdentityHashMap<>();
+		addedNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+	}
+	public void commitChanges()
+	{
+		removedNodeInfos = null;
+		addedNodes = null;
+	}
+	public void rollBackChanges()
+	{
+		addedNodes.forEach(nodeInfos::remove);
+		nodeInfos.putAll(removedNodeInfos);
+		commitChanges();
+	}
+}
@@ -0,0 +1,60 @@
+package net.haspamelodica.parser.parser.lrk.incremental;
+
+import java.util.List;
+
+import net.haspamelodica.parser.ast.Token;
+
+/**
+ * Replaces <code>removedTokenCount</code> tokens starting at token index <code>start</code> with <code>insertedTokens</code>.
+ * The inserted tokens are the result of re-tokenizing the edited region.
+ */
+public class TokenEdit
+{
+	private final int				start;
+	private final int				removedTokenCount;
+	private final List<Token<?>>	insertedTokens;
+
+	public TokenEdit(int start, int removedTokenCount, List<Token<?>> insertedTokens)
+	{
+		if(start < 0 || removedTokenCount < 0)
+			throw new IllegalArgumentException("Negative start or removed token count");
+		this.start = start;
+		this.removedTokenCount = removedTokenCount;
+		this.insertedTokens = List.copyOf(insertedTokens);
+	}
+
+	public static TokenEdit insert(int start, List<Token<?>> insertedTokens)
+	{
+		return new TokenEdit(start, 0, insertedTokens);
+	}
+	public static TokenEdit remove(int start, int removedTokenCount)
+	{
+		return new TokenEdit(start, removedTokenCount, List.of());
+	}
+
+	public int getStart()
+	{
+		return start;
+	}
+	public int getRemovedTokenCount()
+	{
+		return removedTokenCount;
+	}
+	/**
+	 * The index of the first token after the removed tokens, before the edit.
+	 */
+	public int getEnd()
+	{
+		return start + removedTokenCount;
+	}
+	public List<Token<?>> getInsertedTokens()
+	{
+		return insertedTokens;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "[" + start + "," + getEnd() + ") -> " + insertedTokens;
+	}
+}
@@ -0,0 +1,71 @@
+package net.haspamelodica.parser.parser.lrk.instrumentation;
+
+import net.haspamelodica.parser.parser.lrk.AutomatonType;
+
+/**
+ * Emits the JFR events of one run of the LR parser generator.
+ * This is the only class referencing the event classes, so that jdk.jfr is only needed if JFR events are emitted.
+ */
+class GeneratorEvents
+{
+	private final int		lookaheadSize;
+	private final String	automatonType;
+
+	private final GeneratorFinishedEvent	finishedEvent;
+	private GeneratorPhaseEvent				currentPhaseEvent;
+
+	public GeneratorEvents(int lookaheadSize, AutomatonType automatonType)
+	{
+		this.lookaheadSize = lookaheadSize;
+		this.automatonType = automatonType.name();
+
+		this.finishedEvent = new GeneratorFinishedEvent();
+		finishedEvent.begin();
+	}
+
+	public void beginPhase()
+	{
+		currentPhaseEvent = new GeneratorPhaseEvent();
+		currentPhaseEvent.begin();
+	}
+	public void endPhase(GeneratorPhaseMetrics metrics)
+	{
+		currentPhaseEvent.end();
+		if(currentPhaseEvent.shouldCommit())
+		{
+			currentPhaseEvent.phase = metrics.phase().name();
+			currentPhaseEvent.lookaheadSize = lookaheadSize;
+			currentPhaseEvent.automatonType = automatonType;
+			currentPhaseEvent.allocatedBytes = metrics.allocatedBytes();
+			currentPhaseEvent.commit();
+		}
+		currentPhaseEvent = null;
+	}
+	public void abortPhase()
+	{
+		currentPhaseEvent = null;
+	}
+
+	/**
+	 * Returns whether the finished event should be committed.
+	 * Calculating its values is expensive, so that is only done if this returns <code>true</code>.
+	 */
+	public boolean endGeneration()
+	{
+		finishedEvent.end();
+		return finishedEvent.shouldCommit();
+	}
+	public void commitGeneration(GeneratorStatistics statistics)
+	{
+		finishedEvent.lookaheadSize = lookaheadSize;
+		finishedEvent.automatonType = automatonType;
+		finishedEvent.stateCount = statistics.stateCount();
+		finishedEvent.itemCount = statistics.itemCount();
+		finishedEvent.lookaheadWordCount = statistics.lookaheadWordCount();
+		finishedEvent.conflictCount = statistics.conflictCount();
+		finishedEvent.closureCacheHits = statistics.closureCacheStatistics() == null ? 0 : statistics.closureCacheStatistics().hits();
+		finishedEvent.closureCacheMisses = statistics.closureCacheStatistics() == null ? 0 : statistics.closureCacheStatistics().misses();
+		finishedEvent.allocatedBytes = statistics.totalAllocatedBytes();
+		finishedEvent.commit();
+	}
+}
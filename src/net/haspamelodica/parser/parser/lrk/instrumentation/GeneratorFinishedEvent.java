@@ -0,0 +1,36 @@
+package net.haspamelodica.parser.parser.lrk.instrumentation;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("net.haspamelodica.parser.GeneratorFinished")
+@Label("LR Generator Finished")
+@Category({"Parser", "LR Generator"})
+@Description("The result of generating an LR parser, see GeneratorStatistics")
+public class GeneratorFinishedEvent extends Event
+{
+	@Label("Lookahead Size")
+	public int		lookaheadSize;
+	@Label("Automaton Type")
+	public String	automatonType;
+	@Label("States")
+	public int		stateCount;
+	@Label("Items")
+	public long		itemCount;
+	@Label("Lookahead Words")
+	public long		lookaheadWordCount;
+	@Label("Conflicts")
+	public int		conflictCount;
+	@Label("Closure Cache Hits")
+	public long		closureCacheHits;
+	@Label("Closure Cache Misses")
+	public long		closureCacheMisses;
+	@Label("Allocated")
+	@Description("Bytes allocated during generation by the generating thread and its parallel tasks, or -1 if not supported")
+	@DataAmount
+	public long		allocatedBytes;
+}
@@ -0,0 +1,140 @@
+package net.haspamelodica.parser.parser.lrk.instrumentation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import net.haspamelodica.parser.parser.lrk.AutomatonType;
+import net.haspamelodica.parser.parser.lrk.LookaheadItem;
+import net.haspamelodica.parser.parser.lrk.canonicalautomaton.CanonicalAutomaton;
+import net.haspamelodica.parser.parser.lrk.canonicalautomaton.ClosureCacheStatistics;
+import net.haspamelodica.parser.parser.lrk.canonicalautomaton.State;
+import net.haspamelodica.parser.utils.AllocationCounter;
+
+/**
+ * Measures the phases of one run of the LR parser generator
+ * and reports them to a {@link GeneratorListener} and, if the module jdk.jfr is available, as JFR events.
+ * Phases can't be nested.
+ * All methods have to be called by the thread which created the instrumentation;
+ * allocations are counted for that thread and for the work it distributes with {@link net.haspamelodica.parser.utils.ParallelUtils}.
+ */
+public class GeneratorInstrumentation
+{
+	// jdk.jfr is an optional dependency; GeneratorEvents is only loaded if it's available
+	private static final boolean JFR_AVAILABLE = isClassAvailable("jdk.jfr.Event");
+
+	private final GeneratorListener	listener;
+	private final int				lookaheadSize;
+	private final AutomatonType		automatonType;
+
+	// null if JFR isn't available
+	private final GeneratorEvents				events;
+	private final List<GeneratorPhaseMetrics>	phases;
+	private final AllocationCounter				allocationCounter;
+
+	private GeneratorPhase	currentPhase;
+	private long			currentPhaseStartNanos;
+	private long			currentPhaseStartAllocatedBytes;
+
+	public GeneratorInstrumentation(GeneratorListener listener, int lookaheadSize, AutomatonType automatonType)
+	{
+		this.listener = listener;
+		this.lookaheadSize = lookaheadSize;
+		this.automatonType = automatonType;
+
+		this.events = JFR_AVAILABLE ? new GeneratorEvents(lookaheadSize, automatonType) : null;
+		this.phases = new ArrayList<>();
+		this.allocationCounter = new AllocationCounter();
+	}
+
+	public <R> R measure(GeneratorPhase phase, Supplier<R> action)
+	{
+		beginPhase(phase);
+		R result;
+		try
+		{
+			result = action.get();
+		} catch(RuntimeException | Error e)
+		{
+			abortPhase();
+			throw e;
+		}
+		endPhase();
+		return result;
+	}
+
+	public void beginPhase(GeneratorPhase phase)
+	{
+		if(currentPhase != null)
+			throw new IllegalStateException("Phase " + currentPhase + " hasn't ended yet");
+		currentPhase = phase;
+		if(events != null)
+			events.beginPhase();
+		allocationCounter.activate();
+		currentPhaseStartAllocatedBytes = allocationCounter.getAllocatedBytes();
+		currentPhaseStartNanos = System.nanoTime();
+	}
+	public void endPhase()
+	{
+		if(currentPhase == null)
+			throw new IllegalStateException("No phase has begun");
+		long wallTimeNanos = System.nanoTime() - currentPhaseStartNanos;
+		long allocatedBytes = currentPhaseStartAllocatedBytes < 0 ? -1 : allocationCounter.getAllocatedBytes() - currentPhaseStartAllocatedBytes;
+		allocationCounter.deactivate();
+		GeneratorPhaseMetrics metrics = new GeneratorPhaseMetrics(currentPhase, wallTimeNanos, allocatedBytes);
+		if(events != null)
+			events.endPhase(metrics);
+		currentPhase = null;
+		phases.add(metrics);
+		listener.phaseFinished(metrics);
+	}
+	/**
+	 * Ends the current phase without reporting it. Has to be called for phases which failed with an exception.
+	 */
+	public void abortPhase()
+	{
+		if(currentPhase == null)
+			throw new IllegalStateException("No phase has begun");
+		allocationCounter.deactivate();
+		if(events != null)
+			events.abortPhase();
+		currentPhase = null;
+	}
+
+	/**
+	 * <code>closureCacheStatistics</code> may be <code>null</code>.
+	 */
+	public void finish(CanonicalAutomaton automaton, int conflictCount, ClosureCacheStatistics closureCacheStatistics)
+	{
+		boolean commitEvent = events != null && events.endGeneration();
+		if(listener == GeneratorListener.NONE && !commitEvent)
+			return;
+
+		long itemCount = 0;
+		long lookaheadWordCount = 0;
+		for(State state : automaton.getStates())
+		{
+			itemCount += state.getItems().size();
+			for(LookaheadItem item : state.getItems())
+				lookaheadWordCount += item.getAdmissibleLookaheads().size();
+		}
+		GeneratorStatistics statistics = new GeneratorStatistics(lookaheadSize, automatonType, phases,
+				automaton.getStates().size(), itemCount, lookaheadWordCount, conflictCount, closureCacheStatistics);
+
+		if(commitEvent)
+			events.commitGeneration(statistics);
+		listener.generationFinished(statistics);
+	}
+
+	private static boolean isClassAvailable(String name)
+	{
+		try
+		{
+			Class.forName(name, false, GeneratorInstrumentation.class.getClassLoader());
+			return true;
+		} catch(ClassNotFoundException | LinkageError e)
+		{
+			return false;
+		}
+	}
+}
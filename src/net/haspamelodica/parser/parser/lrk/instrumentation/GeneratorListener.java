@@ -0,0 +1,20 @@
+package net.haspamelodica.parser.parser.lrk.instrumentation;
+
+/**
+ * Is notified about the progress of the LR parser generator.
+ * Independently of listeners, the generator also emits the JFR events {@link GeneratorPhaseEvent} and {@link GeneratorFinishedEvent}
+ * if the module jdk.jfr is available.
+ */
+public interface GeneratorListener
+{
+	public static final GeneratorListener NONE = new GeneratorListener()
+	{};
+
+	public default void phaseFinished(GeneratorPhaseMetrics metrics)
+	{}
+	/**
+	 * Is also called if generation fails because of conflicts, before the exception is thrown.
+	 */
+	public default void generationFinished(GeneratorStatistics statistics)
+	{}
+}
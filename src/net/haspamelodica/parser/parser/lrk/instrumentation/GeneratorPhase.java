@@ -0,0 +1,24 @@
+package net.haspamelodica.parser.parser.lrk.instrumentation;
+
+/**
+ * The phases of generating an LR parser, in the order they happen.
+ */
+public enum GeneratorPhase
+{
+	/**
+	 * Normalizing the grammar, see {@link net.haspamelodica.parser.grammar.ContextFreeGrammar#normalize()}.
+	 */
+	NORMALIZE,
+	/**
+	 * Calculating the nullable nonterminals and the FIRST_k sets, see {@link net.haspamelodica.parser.parser.lrk.ConcatKHelper}.
+	 */
+	FIRST_K,
+	/**
+	 * Generating the automaton by calculating closures and gotos.
+	 */
+	AUTOMATON,
+	/**
+	 * Calculating the action table from the automaton, including resolving conflicts with longer lookaheads for adaptive lookahead.
+	 */
+	ACTION_TABLE;
+}
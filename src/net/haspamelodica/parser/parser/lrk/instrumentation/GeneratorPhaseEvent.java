@@ -0,0 +1,26 @@
+package net.haspamelodica.parser.parser.lrk.instrumentation;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("net.haspamelodica.parser.GeneratorPhase")
+@Label("LR Generator Phase")
+@Category({"Parser", "LR Generator"})
+@Description("One phase of generating an LR parser")
+public class GeneratorPhaseEvent extends Event
+{
+	@Label("Phase")
+	public String	phase;
+	@Label("Lookahead Size")
+	public int		lookaheadSize;
+	@Label("Automaton Type")
+	public String	automatonType;
+	@Label("Allocated")
+	@Description("Bytes allocated during the phase by the generating thread and its parallel tasks, or -1 if not supported")
+	@DataAmount
+	public long		allocatedBytes;
+}
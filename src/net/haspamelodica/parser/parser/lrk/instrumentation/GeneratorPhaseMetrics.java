@@ -0,0 +1,9 @@
+package net.haspamelodica.parser.parser.lrk.instrumentation;
+
+/**
+ * <code>allocatedBytes</code> is the number of bytes allocated during the phase by the generating thread
+ * and by the work it distributed to other threads, or -1 if the JVM can't measure allocations per thread.
+ * Allocations of unrelated threads running at the same time aren't included.
+ */
+public record GeneratorPhaseMetrics(GeneratorPhase phase, long wallTimeNanos, long allocatedBytes)
+{}
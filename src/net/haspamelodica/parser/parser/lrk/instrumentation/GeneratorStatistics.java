@@ -0,0 +1,38 @@
+package net.haspamelodica.parser.parser.lrk.instrumentation;
+
+import java.util.List;
+
+import net.haspamelodica.parser.parser.lrk.AutomatonType;
+import net.haspamelodica.parser.parser.lrk.canonicalautomaton.ClosureCacheStatistics;
+
+/**
+ * Describes one run of the LR parser generator.
+ * <p>
+ * <code>itemCount</code> and <code>lookaheadWordCount</code> are summed over all states of the automaton.
+ * <code>conflictCount</code> is the number of pairs of a state and a lookahead with more than one possible action;
+ * only for deterministic parsers without adaptive lookahead, this means that generation failed.
+ * <code>closureCacheStatistics</code> is <code>null</code> for automaton types not using a
+ * {@link net.haspamelodica.parser.parser.lrk.canonicalautomaton.ClosureCalculator}.
+ */
+public record GeneratorStatistics(int lookaheadSize, AutomatonType automatonType, List<GeneratorPhaseMetrics> phases,
+		int stateCount, long itemCount, long lookaheadWordCount, int conflictCount, ClosureCacheStatistics closureCacheStatistics)
+{
+	public GeneratorStatistics
+	{
+		phases = List.copyOf(phases);
+	}
+
+	public long totalWallTimeNanos()
+	{
+		return phases.stream().mapToLong(GeneratorPhaseMetrics::wallTimeNanos).sum();
+	}
+	/**
+	 * Returns -1 if the JVM can't measure allocations per thread.
+	 */
+	public long totalAllocatedBytes()
+	{
+		if(phases.stream().anyMatch(p -> p.allocatedBytes() < 0))
+			return -1;
+		return phases.stream().mapToLong(GeneratorPhaseMetrics::allocatedBytes).sum();
+	}
+}
@@ -0,0 +1,143 @@
+package net.haspamelodica.parser.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Counts the bytes allocated by the thread which created the counter,
+ * and by the tasks {@link ParallelUtils#map(List, Function)} runs in other threads while the counter is {@linkplain #activate() active}.
+ * Allocations of unrelated threads aren't counted.
+ * <p>
+ * Measuring needs the JVM to support counting allocations per thread, which is only possible through <code>com.sun.management</code>.
+ * If that isn't available, {@link #getAllocatedBytes()} returns -1.
+ */
+public class AllocationCounter
+{
+	// com.sun.management is an optional dependency; ThreadAllocations is only loaded if it's available
+	private static final boolean SUPPORTED = isClassAvailable("com.sun.management.ThreadMXBean") && ThreadAllocations.isSupported();
+
+	private static final ThreadLocal<AllocationCounter> activeCounters = new ThreadLocal<>();
+
+	private final Thread		owner;
+	private final long			ownerStartAllocatedBytes;
+	private final LongAdder		otherThreadsAllocatedBytes;
+
+	/**
+	 * Has to be called by the thread whose allocations should be counted.
+	 */
+	public AllocationCounter()
+	{
+		this.owner = Thread.currentThread();
+		this.ownerStartAllocatedBytes = SUPPORTED ? ThreadAllocations.currentThreadAllocatedBytes() : -1;
+		this.otherThreadsAllocatedBytes = new LongAdder();
+	}
+
+	public static boolean isSupported()
+	{
+		return SUPPORTED;
+	}
+
+	/**
+	 * Starts counting tasks run for the owner thread in other threads. Has to be called by the owner thread.
+	 */
+	public void activate()
+	{
+		checkOwner();
+		activeCounters.set(this);
+	}
+	public void deactivate()
+	{
+		checkOwner();
+		activeCounters.remove();
+	}
+
+	/**
+	 * Returns the bytes allocated since this counter was created, or -1 if not {@linkplain #isSupported() supported}.
+	 * Has to be called by the owner thread; tasks running in other threads at the same time are only counted once they are finished.
+	 */
+	public long getAllocatedBytes()
+	{
+		checkOwner();
+		if(!SUPPORTED)
+			return -1;
+		return ThreadAllocations.currentThreadAllocatedBytes() - ownerStartAllocatedBytes + otherThreadsAllocatedBytes.sum();
+	}
+
+	private void checkOwner()
+	{
+		if(Thread.currentThread() != owner)
+			throw new IllegalStateException("Allocation counters can only be used by the thread which created them");
+	}
+
+	/**
+	 * Returns the counter active in the current thread, or <code>null</code> if there is none.
+	 */
+	static AllocationCounter current()
+	{
+		return SUPPORTED ? activeCounters.get() : null;
+	}
+
+	/**
+	 * Runs the given task for the given counter, which has to be the counter active in the thread which submitted the task.
+	 * If the task runs in another thread, its allocations are added to the counter.
+	 * A thread may run tasks of other counters while running a task; their allocations are only added to their own counter.
+	 */
+	static <R> R runCounted(AllocationCounter counter, Supplier<R> task)
+	{
+		if(counter == null)
+			return task.get();
+		AllocationCounter previous = activeCounters.get();
+		if(previous == counter)
+			// the owner thread, or a nested task of the same counter: already counted
+			return task.get();
+
+		activeCounters.set(counter);
+		long startAllocatedBytes = ThreadAllocations.currentThreadAllocatedBytes();
+		try
+		{
+			return task.get();
+		} finally
+		{
+			long allocatedBytes = ThreadAllocations.currentThreadAllocatedBytes() - startAllocatedBytes;
+			counter.otherThreadsAllocatedBytes.add(allocatedBytes);
+			if(previous == null)
+				activeCounters.remove();
+			else
+			{
+				// the task interrupted a task of another counter, which measures its thread as a whole
+				previous.otherThreadsAllocatedBytes.add(-allocatedBytes);
+				activeCounters.set(previous);
+			}
+		}
+	}
+
+	private static boolean isClassAvailable(String name)
+	{
+		try
+		{
+			Class.forName(name, false, AllocationCounter.class.getClassLoader());
+			return true;
+		} catch(ClassNotFoundException | LinkageError e)
+		{
+			return false;
+		}
+	}
+
+	private static class ThreadAllocations
+	{
+		private static final com.sun.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean b ? b : null;
+
+		public static boolean isSupported()
+		{
+			return threadMXBean != null && threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled();
+		}
+
+		public static long currentThreadAllocatedBytes()
+		{
+			return threadMXBean.getCurrentThreadAllocatedBytes();
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package net.haspamelodica.parser.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+public class ParallelUtils
+{
+	/**
+	 * Below this number of elements, {@link #map(List, Function)} doesn't bother to distribute the work.
+	 */
+	public static final int PARALLEL_THRESHOLD = 16;
+
+	private ParallelUtils()
+	{}
+
+	/**
+	 * Applies the given function to all elements, in parallel using the common fork-join pool if there are enough elements.
+	 * The function has to be thread-safe.
+	 * <p>
+	 * Unlike with parallel streams, exceptions thrown by the function are rethrown unchanged in the calling thread.
+	 * If the function throws for several elements, the exception for the first of them is thrown,
+	 * which is the same exception a sequential loop over the elements would throw. Elements after that one may be skipped.
+	 * <p>
+	 * If an {@link AllocationCounter} is active in the calling thread, allocations of the function in other threads are added to it.
+	 */
+	public static <E, R> List<R> map(List<E> elements, Function<? super E, ? extends R> function)
+	{
+		List<R> result = new ArrayList<>(elements.size());
+		if(elements.size() < PARALLEL_THRESHOLD)
+		{
+			for(E element : elements)
+				result.add(function.apply(element));
+			return result;
+		}
+
+		// elements after a failed one don't need to be processed anymore
+		AtomicInteger firstFailedIndex = new AtomicInteger(Integer.MAX_VALUE);
+		AllocationCounter allocationCounter = AllocationCounter.current();
+		List<Outcome<R>> outcomes = IntStream.range(0, elements.size()).parallel().mapToObj(i ->
+		{
+			if(i > firstFailedIndex.get())
+				return null;
+			Outcome<R> outcome = Outcome.of(() -> AllocationCounter.runCounted(allocationCounter, () -> function.apply(elements.get(i))));
+			if(outcome.exception() != null)
+				firstFailedIndex.accumulateAndGet(i, Math::min);
+			return outcome;
+		}).toList();
+		int firstFailedIndexValue = firstFailedIndex.get();
+		if(firstFailedIndexValue != Integer.MAX_VALUE)
+			throw outcomes.get(firstFailedIndexValue).exception();
+		for(Outcome<R> outcome : outcomes)
+			result.add(outcome.result());
+		return result;
+	}
+
+	private record Outcome<R>(R result, RuntimeException exception)
+	{
+		public static <R> Outcome<R> of(Supplier<? extends R> supplier)
+		{
+			try
+			{
+				return new Outcome<>(supplier.get(), null);
+			} catch(RuntimeException e)
+			{
+				return new Outcome<>(null, e);
+			}
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package net.haspamelodica.parser.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+public class StronglyConnectedComponents
+{
+	private StronglyConnectedComponents()
+	{}
+
+	/**
+	 * Calculates the strongly connected components of a graph using Tarjan's algorithm.
+	 * The components are returned in reverse topological order: each component comes after all components reachable from it.
+	 * Successors which aren't in the given node list are ignored.
+	 * Doesn't use recursion because graphs can contain very long chains.
+	 */
+	public static <N> List<List<N>> calculate(List<N> nodes, Function<? super N, ? extends Collection<? extends N>> successors)
+	{
+		int n = nodes.size();
+		Map<N, Integer> indices = new HashMap<>();
+		for(int i = 0; i < n; i ++)
+			indices.put(nodes.get(i), i);
+		int[][] successorIndices = new int[n][];
+		for(int i = 0; i < n; i ++)
+			successorIndices[i] = successors.apply(nodes.get(i)).stream().map(indices::get).filter(s -> s != null).mapToInt(s -> s).toArray();
+
+		List<List<N>> result = new ArrayList<>();
+		// the order in which nodes were visited, or -1 for unvisited nodes, or Integer.MAX_VALUE for finished nodes
+		int[] visitOrder = new int[n];
+		Arrays.fill(visitOrder, -1);
+		// the smallest visit order reachable from each node via nodes of unfinished components
+		int[] lowLinks = new int[n];
+		int[] componentStack = new int[n];
+		int componentStackSize = 0;
+		// the DFS stack: nodes and the index of the next successor to look at
+		int[] dfsNodes = new int[n];
+		int[] dfsSuccessorPositions = new int[n];
+		int visitCount = 0;
+		for(int root = 0; root < n; root ++)
+		{
+			if(visitOrder[root] >= 0)
+				continue;
+			int dfsSize = 0;
+			dfsNodes[dfsSize] = root;
+			dfsSuccessorPositions[dfsSize] = 0;
+			dfsSize ++;
+			visitOrder[root] = lowLinks[root] = visitCount ++;
+			componentStack[componentStackSize ++] = root;
+			while(dfsSize > 0)
+			{
+				int node = dfsNodes[dfsSize - 1];
+				int successorPosition = dfsSuccessorPositions[dfsSize - 1];
+				if(successorPosition < successorIndices[node].length)
+				{
+					dfsSuccessorPositions[dfsSize - 1] ++;
+					int successor = successorIndices[node][successorPosition];
+					if(visitOrder[successor] < 0)
+					{
+						visitOrder[successor] = lowLinks[successor] = visitCount ++;
+						componentStack[componentStackSize ++] = successor;
+						dfsNodes[dfsSize] = successor;
+						dfsSuccessorPositions[dfsSize] = 0;
+						dfsSize ++;
+					} else if(visitOrder[successor] != Integer.MAX_VALUE)
+						lowLinks[node] = Math.min(lowLinks[node], visitOrder[successor]);
+					continue;
+				}
+
+				dfsSize --;
+				if(dfsSize > 0)
+				{
+					int parent = dfsNodes[dfsSize - 1];
+					lowLinks[parent] = Math.min(lowLinks[parent], lowLinks[node]);
+				}
+				if(lowLinks[node] == visitOrder[node])
+				{
+					List<N> component = new ArrayList<>();
+					int member;
+					do
+					{
+						member = componentStack[-- componentStackSize];
+						visitOrder[member] = Integer.MAX_VALUE;
+						component.add(nodes.get(member));
+					} while(member != node);
+					result.add(component);
+				}
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,84 @@
+package net.haspamelodica.parser;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import net.haspamelodica.parser.grammar.ContextFreeGrammar;
+import net.haspamelodica.parser.grammar.Terminal;
+import net.haspamelodica.parser.grammar.parser.GrammarParser;
+import net.haspamelodica.parser.parser.ParseException;
+import net.haspamelodica.parser.parser.lrk.AutomatonType;
+import net.haspamelodica.parser.parser.lrk.LRkParser;
+import net.haspamelodica.parser.parser.lrk.LRkParserGenerator;
+import net.haspamelodica.parser.tokenizer.CharReader;
+
+/**
+ * Compares the number of states and the generation time of the different {@link AutomatonType}s for some example grammars.
+ */
+public class AutomatonTypeComparison
+{
+	private static final int REPETITIONS = 20;
+
+	public static void main(String[] args) throws ParseException
+	{
+		Map<String, String> grammars = new LinkedHashMap<>();
+		grammars.put("expressions", """
+				E -> T | E '+' T | E '-' T;
+				T -> F | T '*' F | T '/' F;
+				F -> '(' E ')' | 'name' | 'int' | '-' F | 'name' '(' Args ')';
+				Args -> | ArgList;
+				ArgList -> E | ArgList ',' E;
+				""");
+		grammars.put("statements", """
+				Prog -> | Prog Stmt;
+				Stmt -> 'name' '=' E ';' | 'if' '(' E ')' Block | 'if' '(' E ')' Block 'else' Block | 'while' '(' E ')' Block | Block
+				      | 'name' '(' Args ')' ';';
+				Block -> '{' Prog '}';
+				E -> T | E '+' T | E '==' T;
+				T -> F | T '*' F;
+				F -> '(' E ')' | 'name' | 'int' | 'name' '(' Args ')';
+				Args -> | ArgList;
+				ArgList -> E | ArgList ',' E;
+				""");
+		// LR(1), but not LALR(1)
+		grammars.put("not LALR(1)", """
+				S -> 'a' A 'd' | 'b' B 'd' | 'a' B 'e' | 'b' A 'e';
+				A -> 'c';
+				B -> 'c';
+				""");
+
+		Set<Terminal<?>> terminals = new HashSet<>();
+		for(String terminal : new String[] {"+", "-", "*", "/", "(", ")", ",", ";", "=", "==", "{", "}", "name", "int", "if", "else", "while",
+				"a", "b", "c", "d", "e"})
+			terminals.add(new Terminal<>(terminal));
+
+		System.out.printf("%-12s %-13s %8s %12s%n", "grammar", "automaton", "states", "time (ms)");
+		for(Map.Entry<String, String> e : grammars.entrySet())
+		{
+			ContextFreeGrammar grammar = GrammarParser.parseGrammar(CharReader.readString(e.getValue()), terminals);
+			for(AutomatonType automatonType : AutomatonType.values())
+			{
+				String states;
+				try
+				{
+					states = Integer.toString(LRkParserGenerator.generate(grammar, 1, automatonType).getActionTable().size());
+				} catch(IllegalArgumentException x)
+				{
+					System.out.printf("%-12s %-13s %8s %12s%n", e.getKey(), automatonType, "conflict", "-");
+					continue;
+				}
+				long start = System.nanoTime();
+				for(int i = 0; i < REPETITIONS; i ++)
+				{
+					LRkParser parser = LRkParserGenerator.generate(grammar, 1, automatonType);
+					if(parser.getActionTable().isEmpty())
+						throw new IllegalStateException();
+				}
+				double millis = (System.nanoTime() - start) / 1e6 / REPETITIONS;
+				System.out.printf("%-12s %-13s %8s %12.2f%n", e.getKey(), automatonType, states, millis);
+			}
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package net.haspamelodica.parser;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import net.haspamelodica.parser.ast.Token;
+import net.haspamelodica.parser.grammar.ContextFreeGrammar;
+import net.haspamelodica.parser.grammar.parser.GrammarParser;
+import net.haspamelodica.parser.parser.ParseException;
+import net.haspamelodica.parser.parser.lrk.LRkParserGenerator;
+import net.haspamelodica.parser.parser.lrk.glr.ForestNode;
+import net.haspamelodica.parser.parser.lrk.glr.GLRParser;
+import net.haspamelodica.parser.parser.lrk.glr.PackedNode;
+import net.haspamelodica.parser.parser.lrk.glr.ParseForest;
+import net.haspamelodica.parser.parser.lrk.glr.SymbolNode;
+import net.haspamelodica.parser.parser.lrk.glr.TokenNode;
+import net.haspamelodica.parser.tokenizer.CharReader;
+import net.haspamelodica.parser.tokenizer.Tokenizer;
+
+/**
+ * Parses sums with the ambiguous grammar <code>E -&gt; E '+' E | 'int'</code> using a {@link GLRParser}
+ * and reports the ambiguity found in the resulting {@link ParseForest}.
+ * The number of parse trees grows exponentially with the length of the sum, but the forest shares their common subtrees.
+ */
+public class GLRAmbiguityExample
+{
+	public static void main(String[] args) throws ParseException
+	{
+		//create the tokenizer of the tokenizer example and a GLR parser for the ambiguous grammar
+		Tokenizer<CharReader> tokenizer = ShortTokenizerExample.createTokenizer();
+		ContextFreeGrammar grammar = GrammarParser.parseGrammar(CharReader.readString("E -> E '+' E | 'int';"), tokenizer.allTerminals());
+		GLRParser<?> parser = LRkParserGenerator.generateGLR(grammar, 1);
+		System.out.println("conflicts in the action table: " + parser.getConflictCount());
+
+		//parse an ambiguous sum into a forest
+		ParseForest forest = parser.parseForest(tokenizer.tokenize(CharReader.readString("1 + 2 + 3")));
+		SymbolNode ambiguousNode = forest.findAmbiguousNode();
+		System.out.println("ambiguous: " + forest.isAmbiguous());
+		System.out.println(ambiguousNode + " has " + ambiguousNode.getAlternatives().size() + " alternatives:");
+		for(PackedNode alternative : ambiguousNode.getAlternatives())
+			System.out.println("    " + alternative + " = " + toString(alternative));
+
+		//parsing into a single tree is only possible if there is only one tree
+		try
+		{
+			parser.parse(tokenizer.tokenize(CharReader.readString("1 + 2 + 3")));
+		} catch(ParseException e)
+		{
+			System.out.println("parse: " + e.getMessage());
+		}
+
+		//longer sums have many more trees, but their forests stay small
+		StringBuilder sum = new StringBuilder("1");
+		for(int terms = 2; terms <= 12; terms ++)
+		{
+			sum.append(" + ").append(terms);
+			forest = parser.parseForest(tokenizer.tokenize(CharReader.readString(sum.toString())));
+			Map<SymbolNode, Long> treeCounts = new IdentityHashMap<>();
+			long trees = countTrees(forest.getRoot(), treeCounts);
+			System.out.printf("%2d terms: %6d trees, %3d symbol nodes%n", terms, trees, treeCounts.size());
+		}
+	}
+
+	/**
+	 * Renders the given alternative with parentheses. Only possible if its children aren't ambiguous.
+	 */
+	private static String toString(PackedNode alternative)
+	{
+		StringBuilder result = new StringBuilder();
+		for(ForestNode child : alternative.getChildren())
+		{
+			if(!result.isEmpty())
+				result.append(' ');
+			if(child.getType() == ForestNode.ForestNodeType.TOKEN_NODE)
+			{
+				Token<?> token = ((TokenNode) child).getToken();
+				result.append(token.getValue() != null ? token.getValue() : token.getSymbol());
+			} else
+			{
+				PackedNode childAlternative = ((SymbolNode) child).getOnlyAlternative();
+				boolean parenthesize = childAlternative.getChildren().size() > 1;
+				result.append(parenthesize ? "(" : "").append(toString(childAlternative)).append(parenthesize ? ")" : "");
+			}
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Shared nodes are counted only once, so this is fast even though the number of trees is exponential.
+	 */
+	private static long countTrees(SymbolNode node, Map<SymbolNode, Long> treeCounts)
+	{
+		Long cached = treeCounts.get(node);
+		if(cached != null)
+			return cached;
+		long trees = 0;
+		for(PackedNode alternative : node.getAlternatives())
+		{
+			long alternativeTrees = 1;
+			for(ForestNode child : alternative.getChildren())
+				if(child.getType() == ForestNode.ForestNodeType.SYMBOL_NODE)
+					alternativeTrees *= countTrees((SymbolNode) child, treeCounts);
+			trees += alternativeTrees;
+		}
+		treeCounts.put(node, trees);
+		return trees;
+	}
+}
@@ -0,0 +1,396 @@
+package net.haspamelodica.parser;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+import net.haspamelodica.parser.grammar.ContextFreeGrammar;
+import net.haspamelodica.parser.grammar.Terminal;
+import net.haspamelodica.parser.grammar.parser.GrammarParser;
+import net.haspamelodica.parser.parser.ParseException;
+import net.haspamelodica.parser.parser.lrk.AutomatonType;
+import net.haspamelodica.parser.parser.lrk.LRkParserGenerator;
+import net.haspamelodica.parser.parser.lrk.instrumentation.GeneratorListener;
+import net.haspamelodica.parser.parser.lrk.instrumentation.GeneratorPhase;
+import net.haspamelodica.parser.parser.lrk.instrumentation.GeneratorPhaseMetrics;
+import net.haspamelodica.parser.parser.lrk.instrumentation.GeneratorStatistics;
+import net.haspamelodica.parser.tokenizer.CharReader;
+
+/**
+ * Measures how {@link LRkParserGenerator} scales with the size of the grammar and the lookahead size.
+ * <p>
+ * Grammars are generated by families parameterized by a size: ladders of precedence levels, lists of statement kinds,
+ * grammars which are LR(j), but not LR(j-1), and ambiguous grammars. Each grammar is generated in each mode
+ * (deterministic, GLR and adaptive lookahead) with each {@link AutomatonType} and each lookahead size.
+ * For each combination, the median generation time of some repetitions is reported,
+ * together with the statistics of that run reported to a {@link GeneratorListener}, and the peak heap usage over all repetitions.
+ * <p>
+ * Sizes of a family are run in ascending order; once a combination takes longer than the time budget or runs out of memory,
+ * larger sizes of that combination are skipped.
+ * <p>
+ * Arguments, all optional:
+ * <code>--families a,b</code>, <code>--sizes 1,2</code> (instead of the default sizes of each family), <code>--k 1,2,3</code>,
+ * <code>--modes DETERMINISTIC,GLR,ADAPTIVE</code>, <code>--automata CANONICAL_LR,LALR,MINIMAL_LR</code>,
+ * <code>--repetitions n</code>, <code>--budget seconds</code>, <code>--csv file</code>, <code>--json file</code>.
+ * The CSV and JSON files contain one record per result with the same fields, so results of different versions can be compared.
+ */
+public class GeneratorScalingBenchmark
+{
+	private static final List<Family> FAMILIES = List.of(
+			new Family("expression-ladder", List.of(4, 16, 64, 256), GeneratorScalingBenchmark::expressionLadder),
+			new Family("statement-list", List.of(8, 64, 256, 1024), GeneratorScalingBenchmark::statementList),
+			new Family("lookahead-2", List.of(1, 16, 128, 512), n -> lookaheadFamily(n, 2)),
+			new Family("lookahead-3", List.of(1, 16, 128, 512), n -> lookaheadFamily(n, 3)),
+			new Family("ambiguous", List.of(1, 8, 32, 128), GeneratorScalingBenchmark::ambiguous));
+
+	private static final String[] FIELDS = {"family", "size", "productions", "terminals", "mode", "automaton", "k", "outcome",
+			"states", "items", "lookaheadWords", "conflicts", "timeMillis", "normalizeMillis", "firstKMillis", "automatonMillis", "actionTableMillis",
+			"allocatedMB", "peakHeapMB", "closureCacheHitRate"};
+
+	public static void main(String[] args) throws IOException
+	{
+		Map<String, String> options = new LinkedHashMap<>();
+		for(int i = 0; i < args.length; i += 2)
+		{
+			if(!args[i].startsWith("--") || i + 1 == args.length)
+				throw new IllegalArgumentException("Expected arguments of the form --option value, but got " + Arrays.toString(args));
+			options.put(args[i].substring(2), args[i + 1]);
+		}
+		List<String> families = options.containsKey("families") ? List.of(options.get("families").split(",")) : null;
+		List<Integer> sizes = options.containsKey("sizes") ? parseInts(options.get("sizes")) : null;
+		List<Integer> lookaheadSizes = parseInts(options.getOrDefault("k", "1,2,3"));
+		List<Mode> modes = Arrays.stream(options.getOrDefault("modes", "DETERMINISTIC,GLR,ADAPTIVE").split(",")).map(Mode::valueOf).toList();
+		List<AutomatonType> automatonTypes = Arrays.stream(options.getOrDefault("automata", "CANONICAL_LR,LALR,MINIMAL_LR").split(","))
+				.map(AutomatonType::valueOf).toList();
+		int repetitions = Integer.parseInt(options.getOrDefault("repetitions", "3"));
+		long budgetNanos = (long) (Double.parseDouble(options.getOrDefault("budget", "20")) * 1e9);
+
+		List<Result> results = new ArrayList<>();
+		System.out.printf("%-18s %5s %6s %-13s %-12s %2s %-14s %8s %10s %10s %12s %12s%n",
+				"family", "size", "prods", "mode", "automaton", "k", "outcome", "states", "conflicts", "time (ms)", "alloc (MB)", "peak (MB)");
+		for(Family family : FAMILIES)
+		{
+			if(families != null && !families.contains(family.name()))
+				continue;
+			List<Integer> familySizes = sizes != null ? sizes : family.defaultSizes();
+			for(Mode mode : modes)
+				for(AutomatonType automatonType : automatonTypes)
+					for(int k : lookaheadSizes)
+					{
+						if(automatonType != AutomatonType.CANONICAL_LR && k > 1)
+							continue;
+						boolean skipRest = false;
+						for(int size : familySizes)
+						{
+							Result result;
+							if(skipRest)
+								result = Result.skipped(family.name(), size, mode, automatonType, k);
+							else
+							{
+								result = measure(family, size, mode, automatonType, k, repetitions);
+								skipRest = result.timeNanos() > budgetNanos || result.outcome().equals("out of memory");
+							}
+							results.add(result);
+							System.out.printf("%-18s %5d %6d %-13s %-12s %2d %-14s %8d %10d %10.1f %12.1f %12.1f%n",
+									result.family(), result.size(), result.productions(), result.mode(), result.automatonType(), result.k(),
+									result.outcome(), result.stateCount(), result.conflictCount(), result.timeNanos() / 1e6,
+									result.allocatedBytes() / 1e6, result.peakHeapBytes() / 1e6);
+						}
+					}
+		}
+
+		if(options.containsKey("csv"))
+			writeCSV(Path.of(options.get("csv")), results);
+		if(options.containsKey("json"))
+			writeJSON(Path.of(options.get("json")), results);
+	}
+
+	private static Result measure(Family family, int size, Mode mode, AutomatonType automatonType, int k, int repetitions)
+	{
+		ContextFreeGrammar grammar = family.generator().apply(size);
+		List<Run> runs = new ArrayList<>();
+		long peakHeapBytes = 0;
+		// the first run is warmup
+		for(int i = 0; i <= repetitions; i ++)
+		{
+			System.gc();
+			List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+					.filter(p -> p.getType() == MemoryType.HEAP && p.isValid()).toList();
+			heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+			GeneratorStatistics[] statistics = new GeneratorStatistics[1];
+			GeneratorListener listener = new GeneratorListener()
+			{
+				@Override
+				public void generationFinished(GeneratorStatistics s)
+				{
+					statistics[0] = s;
+				}
+			};
+			String outcome = "ok";
+			long start = System.nanoTime();
+			try
+			{
+				switch(mode)
+				{
+					case DETERMINISTIC -> LRkParserGenerator.generate(grammar, k, automatonType, listener);
+					case GLR -> LRkParserGenerator.generateGLR(grammar, k, automatonType, listener);
+					case ADAPTIVE -> LRkParserGenerator.generateAdaptive(grammar, k, automatonType, listener);
+				}
+			} catch(IllegalArgumentException e)
+			{
+				outcome = statistics[0] != null && statistics[0].conflictCount() > 0 ? "conflicts" : "error";
+			} catch(OutOfMemoryError e)
+			{
+				statistics[0] = null;
+				outcome = "out of memory";
+			}
+			long timeNanos = System.nanoTime() - start;
+
+			long currentPeakHeapBytes = 0;
+			for(MemoryPoolMXBean pool : heapPools)
+				currentPeakHeapBytes += pool.getPeakUsage().getUsed();
+			peakHeapBytes = Math.max(peakHeapBytes, currentPeakHeapBytes);
+			if(statistics[0] == null)
+				return new Result(family.name(), size, grammar.getProductions().size(), grammar.getAllTerminals().size(), mode, automatonType, k,
+						outcome, null, timeNanos, peakHeapBytes);
+			if(i > 0)
+				runs.add(new Run(outcome, statistics[0], timeNanos));
+		}
+
+		runs.sort(Comparator.comparingLong(Run::timeNanos));
+		Run median = runs.get(runs.size() / 2);
+		return new Result(family.name(), size, grammar.getProductions().size(), grammar.getAllTerminals().size(), mode, automatonType, k,
+				median.outcome(), median.statistics(), median.timeNanos(), peakHeapBytes);
+	}
+
+	/**
+	 * <code>levels</code> levels of left-associative binary operators with two operators each.
+	 */
+	private static ContextFreeGrammar expressionLadder(int levels)
+	{
+		Set<String> terminals = new HashSet<>(Set.of("(", ")", "name", "int"));
+		StringBuilder text = new StringBuilder();
+		for(int i = 0; i < levels; i ++)
+		{
+			text.append("E").append(i).append(" -> E").append(i + 1);
+			for(String operator : new String[] {"op" + i + "a", "op" + i + "b"})
+			{
+				text.append(" | E").append(i).append(" '").append(operator).append("' E").append(i + 1);
+				terminals.add(operator);
+			}
+			text.append(";\n");
+		}
+		text.append("E").append(levels).append(" -> '(' E0 ')' | 'name' | 'int';\n");
+		return parseGrammar(text, terminals);
+	}
+
+	/**
+	 * <code>kinds</code> kinds of statements, each with its own keyword and four forms sharing prefixes,
+	 * so that large sizes result in thousands of productions.
+	 */
+	private static ContextFreeGrammar statementList(int kinds)
+	{
+		Set<String> terminals = new HashSet<>(Set.of("(", ")", "{", "}", ";", "=", "+", "*", "name", "int", "else"));
+		StringBuilder text = new StringBuilder();
+		text.append("Prog -> | Prog Stmt;\n");
+		text.append("Block -> '{' Prog '}';\n");
+		text.append("E -> T | E '+' T;\nT -> F | T '*' F;\nF -> '(' E ')' | 'name' | 'int';\n");
+		text.append("Stmt -> Block");
+		for(int i = 0; i < kinds; i ++)
+			text.append(" | S").append(i);
+		text.append(";\n");
+		for(int i = 0; i < kinds; i ++)
+		{
+			String keyword = "kw" + i;
+			terminals.add(keyword);
+			text.append("S").append(i).append(" -> '").append(keyword).append("' '(' E ')' Block")
+					.append(" | '").append(keyword).append("' '(' E ')' Block 'else' Block")
+					.append(" | '").append(keyword).append("' 'name' '=' E ';'")
+					.append(" | '").append(keyword).append("' E ';';\n");
+		}
+		return parseGrammar(text, terminals);
+	}
+
+	/**
+	 * <code>copies</code> copies of a grammar which is LR(j), but not LR(j-1):
+	 * after <code>p a</code>, reducing <code>a</code> to <code>A</code> or <code>B</code> depends on the j-th next token.
+	 */
+	private static ContextFreeGrammar lookaheadFamily(int copies, int j)
+	{
+		Set<String> terminals = new HashSet<>(Set.of("a", "b", "c", "d"));
+		StringBuilder text = new StringBuilder();
+		String bs = " 'b'".repeat(j - 1);
+		text.append("S -> X0");
+		for(int i = 1; i < copies; i ++)
+			text.append(" | X").append(i);
+		text.append(";\n");
+		for(int i = 0; i < copies; i ++)
+		{
+			String prefix = "p" + i;
+			terminals.add(prefix);
+			text.append("X").append(i).append(" -> '").append(prefix).append("' A").append(i).append(bs).append(" 'c'")
+					.append(" | '").append(prefix).append("' B").append(i).append(bs).append(" 'd';\n");
+			text.append("A").append(i).append(" -> 'a';\nB").append(i).append(" -> 'a';\n");
+		}
+		return parseGrammar(text, terminals);
+	}
+
+	/**
+	 * <code>operators</code> binary operators without precedence or associativity, so that the grammar is ambiguous for every k.
+	 */
+	private static ContextFreeGrammar ambiguous(int operators)
+	{
+		Set<String> terminals = new HashSet<>(Set.of("(", ")", "name"));
+		StringBuilder text = new StringBuilder();
+		text.append("E -> '(' E ')' | 'name'");
+		for(int i = 0; i < operators; i ++)
+		{
+			String operator = "op" + i;
+			terminals.add(operator);
+			text.append(" | E '").append(operator).append("' E");
+		}
+		text.append(";\n");
+		return parseGrammar(text, terminals);
+	}
+
+	private static ContextFreeGrammar parseGrammar(CharSequence text, Set<String> terminalNames)
+	{
+		Set<Terminal<?>> terminals = new HashSet<>();
+		for(String terminalName : terminalNames)
+			terminals.add(new Terminal<>(terminalName));
+		try
+		{
+			return GrammarParser.parseGrammar(CharReader.readString(text.toString()), terminals);
+		} catch(ParseException e)
+		{
+			throw new IllegalStateException("Generated grammar is invalid", e);
+		}
+	}
+
+	private static List<Integer> parseInts(String list)
+	{
+		return Arrays.stream(list.split(",")).map(Integer::valueOf).toList();
+	}
+
+	private static void writeCSV(Path file, List<Result> results) throws IOException
+	{
+		try(PrintWriter out = new PrintWriter(Files.newBufferedWriter(file)))
+		{
+			out.println(String.join(",", FIELDS));
+			for(Result result : results)
+			{
+				List<String> values = new ArrayList<>();
+				for(Object value : result.values())
+					values.add(value == null ? "" : value.toString());
+				out.println(String.join(",", values));
+			}
+		}
+	}
+
+	private static void writeJSON(Path file, List<Result> results) throws IOException
+	{
+		try(PrintWriter out = new PrintWriter(Files.newBufferedWriter(file)))
+		{
+			out.println("[");
+			for(int i = 0; i < results.size(); i ++)
+			{
+				StringBuilder line = new StringBuilder("  {");
+				List<Object> values = results.get(i).values();
+				for(int f = 0; f < FIELDS.length; f ++)
+				{
+					if(f > 0)
+						line.append(", ");
+					line.append('"').append(FIELDS[f]).append("\": ");
+					Object value = values.get(f);
+					if(value == null || value instanceof Number)
+						line.append(value);
+					else
+						line.append('"').append(value.toString().replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+				}
+				line.append(i == results.size() - 1 ? "}" : "},");
+				out.println(line);
+			}
+			out.println("]");
+		}
+	}
+
+	private static enum Mode
+	{
+		DETERMINISTIC,
+		GLR,
+		ADAPTIVE;
+	}
+
+	private static record Family(String name, List<Integer> defaultSizes, IntFunction<ContextFreeGrammar> generator)
+	{}
+
+	private static record Run(String outcome, GeneratorStatistics statistics, long timeNanos)
+	{}
+
+	/**
+	 * <code>statistics</code> is <code>null</code> if generation didn't finish.
+	 */
+	private static record Result(String family, int size, int productions, int terminals, Mode mode, AutomatonType automatonType, int k,
+			String outcome, GeneratorStatistics statistics, long timeNanos, long peakHeapBytes)
+	{
+		public static Result skipped(String family, int size, Mode mode, AutomatonType automatonType, int k)
+		{
+			return new Result(family, size, -1, -1, mode, automatonType, k, "skipped", null, -1, -1);
+		}
+
+		public int stateCount()
+		{
+			return statistics == null ? -1 : statistics.stateCount();
+		}
+		public int conflictCount()
+		{
+			return statistics == null ? -1 : statistics.conflictCount();
+		}
+		public long allocatedBytes()
+		{
+			return statistics == null ? -1 : statistics.totalAllocatedBytes();
+		}
+
+		/**
+		 * Returns the values of all {@link GeneratorScalingBenchmark#FIELDS}; values which weren't measured are <code>null</code>.
+		 */
+		public List<Object> values()
+		{
+			List<Object> values = new ArrayList<>(Arrays.<Object> asList(family, size, productions, terminals, mode, automatonType, k, outcome));
+			if(statistics == null)
+				values.addAll(Arrays.asList(null, null, null, null));
+			else
+				values.addAll(List.of(statistics.stateCount(), statistics.itemCount(), statistics.lookaheadWordCount(), statistics.conflictCount()));
+			values.add(timeNanos < 0 ? null : timeNanos / 1e6);
+			for(GeneratorPhase phase : GeneratorPhase.values())
+				values.add(statistics == null ? null : phaseMillis(phase));
+			values.add(statistics == null || statistics.totalAllocatedBytes() < 0 ? null : statistics.totalAllocatedBytes() / 1e6);
+			values.add(peakHeapBytes < 0 ? null : peakHeapBytes / 1e6);
+			values.add(statistics == null || statistics.closureCacheStatistics() == null ? null : statistics.closureCacheStatistics().hitRate());
+			return values;
+		}
+
+		private double phaseMillis(GeneratorPhase phase)
+		{
+			long nanos = 0;
+			for(GeneratorPhaseMetrics metrics : statistics.phases())
+				if(metrics.phase() == phase)
+					nanos += metrics.wallTimeNanos();
+			return nanos / 1e6;
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package net.haspamelodica.parser;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import net.haspamelodica.parser.ast.Token;
+import net.haspamelodica.parser.grammar.ContextFreeGrammar;
+import net.haspamelodica.parser.grammar.parser.GrammarParser;
+import net.haspamelodica.parser.parser.ParseException;
+import net.haspamelodica.parser.parser.lrk.LRkParser;
+import net.haspamelodica.parser.parser.lrk.LRkParserGenerator;
+import net.haspamelodica.parser.parser.lrk.incremental.IncrementalLRkParser;
+import net.haspamelodica.parser.parser.lrk.incremental.IncrementalParseResult;
+import net.haspamelodica.parser.parser.lrk.incremental.TokenEdit;
+import net.haspamelodica.parser.tokenizer.CharReader;
+import net.haspamelodica.parser.tokenizer.TokenStream;
+import net.haspamelodica.parser.tokenizer.Tokenizer;
+
+/**
+ * Parses a long expression, edits a few tokens of it and reparses it with {@link IncrementalLRkParser}.
+ * Subtrees which don't contain the edit are reused as a whole. The tokens which are shifted one by one are the edited tokens
+ * and the tokens directly below the nodes on the path from the root to the edit; for the left-recursive sums of this example,
+ * these are the <code>+</code> after the edit, so edits near the end of the input are cheaper than edits near its beginning.
+ */
+public class IncrementalReparsingExample
+{
+	private static final int TERMS = 1000;
+
+	public static void main(String[] args) throws ParseException
+	{
+		//create the tokenizer of the tokenizer example and a parser for expressions
+		Tokenizer<CharReader> tokenizer = ShortTokenizerExample.createTokenizer();
+		ContextFreeGrammar grammar = GrammarParser.parseGrammar(CharReader.readString("""
+				E -> T | E '+' T;
+				T -> F | T '*' F;
+				F -> '(' E ')' | 'name' | 'int';
+				"""), tokenizer.allTerminals());
+		LRkParser lrkParser = LRkParserGenerator.generate(grammar, 1);
+		IncrementalLRkParser<?> parser = new IncrementalLRkParser<>(lrkParser);
+
+		//create some long input: x0 * 0 + x1 * 1 + ...
+		StringBuilder input = new StringBuilder();
+		for(int i = 0; i < TERMS; i ++)
+			input.append(i == 0 ? "" : " + ").append('x').append(i).append(" * ").append(i);
+		run(parser, lrkParser, input.toString(), tokenizer);
+	}
+
+	private static <STATE> void run(IncrementalLRkParser<STATE> parser, LRkParser lrkParser, String input, Tokenizer<CharReader> tokenizer)
+			throws ParseException
+	{
+		List<Token<?>> tokens = tokenize(tokenizer, input);
+		IncrementalParseResult<STATE> result = parser.parse(stream(tokens));
+		print("initial parse", result);
+
+		//replace the "500" in the middle of the input by "(a + 1)"; tokens are edited by index
+		int start = tokens.size() / 2;
+		while(!tokens.get(start).getSymbol().getName().equals("int"))
+			start ++;
+		TokenEdit edit = new TokenEdit(start, 1, tokenize(tokenizer, "(a + 1)"));
+		result = parser.reparse(result, edit);
+		print("replaced 500 by (a + 1)", result);
+		tokens.subList(start, start + 1).clear();
+		tokens.addAll(start, edit.getInsertedTokens());
+
+		//remove the "+ x998 * 998" near the end of the input
+		start = tokens.size() - 8;
+		edit = TokenEdit.remove(start, 4);
+		result = parser.reparse(result, edit);
+		print("removed + x998 * 998", result);
+		tokens.subList(start, start + 4).clear();
+
+		//the reparsed tree is the same as the tree of parsing the edited input from scratch
+		System.out.println("same tree as a full parse: " + result.getTree().toString().equals(lrkParser.parse(stream(tokens)).toString()));
+	}
+
+	private static void print(String description, IncrementalParseResult<?> result)
+	{
+		System.out.printf("%-30s %6d tokens, %4d subtrees reused, %6d tokens shifted%n", description + ":",
+				result.getTokenCount(), result.getReusedSubtreeCount(), result.getShiftedTokenCount());
+	}
+
+	private static List<Token<?>> tokenize(Tokenizer<CharReader> tokenizer, String input) throws ParseException
+	{
+		List<Token<?>> tokens = new ArrayList<>();
+		TokenStream stream = tokenizer.tokenize(CharReader.readString(input));
+		for(Token<?> token = stream.nextToken(); token != null; token = stream.nextToken())
+			tokens.add(token);
+		return tokens;
+	}
+
+	private static TokenStream stream(List<Token<?>> tokens)
+	{
+		Iterator<Token<?>> iterator = tokens.iterator();
+		return () -> iterator.hasNext() ? iterator.next() : null;
+	}
+}